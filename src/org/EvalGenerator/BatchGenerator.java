@@ -0,0 +1,662 @@
+/**
+ * Headless batch generation of comment sheets and OIT scan sheets. Records are
+ * read from a roster file (see DocInfoCsv) or any other source of DocInfo objects
+ * and the documents are generated in parallel on all available cores. No dialogs
+ * are shown and no documents are opened, failures are collected in a BatchReport.
+ *
+ * Can be run from the command line:
+ * BatchGenerator roster.csv outputDir [--no-comments] [--oit] [--merge-oit] [--print] [--force]
+ *                [--threads n] [--questions file] [--question-dir dir] [--spreadsheet file.csv]
+ *                [--renderer docx4j|precompiled|streaming]
+ * Documents are rendered with Docx4j unless another renderer is requested.
+ * The precompiled and streaming renderers are much faster and produce the
+ * same documents, see RendererComparison. Documents whose course info and
+ * questions have not changed since the last run in the same directory are
+ * skipped, unless --force is given.
+ *
+ * With --spreadsheet every class whose documents were generated is added to
+ * the tracking spreadsheet. The rows are appended in groups, one lock and
+ * one fsync per group, see SpreadsheetAppender.
+ *
+ * Each comment sheet uses the questions for its course or subject from the
+ * question directory, falling back to the default questions, see QuestionSetIndex.
+ *
+ * With --merge-oit the OIT scan sheets are written to a single document with
+ * one sheet per page, in roster order, instead of one file per class. Printing
+ * a file goes through the desktop's Word handler and spools a separate job
+ * every time, so --print (which implies --merge-oit) prints the merged
+ * document once.
+ */
+
+package org.EvalGenerator;
+
+import java.awt.Desktop;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchGenerator {
+	// Number of records queued per worker thread. Keeps memory bounded when
+	// reading large rosters while making sure workers never wait for input.
+	private static final int QUEUED_RECORDS_PER_THREAD = 4;
+	public static final String MERGED_OIT_FILE_NAME = "OIT Scan Sheets.docx";
+	private static final String USAGE = "Usage: BatchGenerator roster.csv outputDir [--no-comments] [--oit] "
+			+ "[--merge-oit] [--print] [--force] [--threads n] [--questions file] [--question-dir dir] "
+			+ "[--spreadsheet file.csv] [--check] "
+			+ "[--renderer docx4j|precompiled|streaming]";
+
+	//******************* DATA MEMBERS *******************
+	private final File outputDir;
+	// Each run uses the questions current when it starts
+	private final QuestionBank questions;
+	private final boolean commentSheets;
+	private final boolean oitSheets;
+	private final boolean mergeOITSheets;
+	private final int threads;
+	// Records with missing or malformed fields are reported instead of generated
+	private final DocInfoValidator validator;
+	// Every OIT sheet in a batch shows the same date of request
+	private final Date requestDate = new Date();
+
+	// Keeps no per-document state, so all worker threads share it
+	private final DocumentRenderer renderer;
+	private volatile boolean regenerateAll;
+	private volatile File spreadsheet;
+
+	//******************* CONSTRUCTORS *******************
+	/**
+	 * @param outputDir Directory the documents are saved in
+	 * @param questions Evaluation questions for the comment sheets
+	 * @param commentSheets If true, a comment sheet is generated for each record
+	 * @param oitSheets If true, an OIT scan sheet is generated for each record
+	 * @param threads Number of worker threads
+	 */
+	public BatchGenerator(File outputDir, QuestionSet questions, boolean commentSheets,
+			boolean oitSheets, int threads){
+		this(new Docx4jRenderer(), outputDir, questions, commentSheets, oitSheets, threads);
+	}
+
+	/**
+	 * @param renderer Renderer shared by all worker threads
+	 * @param outputDir Directory the documents are saved in
+	 * @param questions Evaluation questions for the comment sheets
+	 * @param commentSheets If true, a comment sheet is generated for each record
+	 * @param oitSheets If true, an OIT scan sheet is generated for each record
+	 * @param threads Number of worker threads
+	 */
+	public BatchGenerator(DocumentRenderer renderer, File outputDir, QuestionSet questions,
+			boolean commentSheets, boolean oitSheets, int threads){
+		this(renderer, outputDir, questions, commentSheets, oitSheets, false, threads);
+	}
+
+	/**
+	 * @param renderer Renderer shared by all worker threads
+	 * @param outputDir Directory the documents are saved in
+	 * @param questions Evaluation questions for the comment sheets
+	 * @param commentSheets If true, a comment sheet is generated for each record
+	 * @param oitSheets If true, an OIT scan sheet is generated for each record
+	 * @param mergeOITSheets If true, the OIT scan sheets are written to one document,
+	 * see getMergedOITFile(), instead of a file per record
+	 * @param threads Number of worker threads
+	 */
+	public BatchGenerator(DocumentRenderer renderer, File outputDir, QuestionSet questions,
+			boolean commentSheets, boolean oitSheets, boolean mergeOITSheets, int threads){
+		this(renderer, outputDir, new QuestionBank(questions), commentSheets, oitSheets,
+				mergeOITSheets, threads);
+	}
+
+	/**
+	 * @param renderer Renderer shared by all worker threads
+	 * @param outputDir Directory the documents are saved in
+	 * @param questions Evaluation questions for the comment sheets. A long running
+	 * process can keep the bank watching its file, every run takes a snapshot.
+	 * @param commentSheets If true, a comment sheet is generated for each record
+	 * @param oitSheets If true, an OIT scan sheet is generated for each record
+	 * @param mergeOITSheets If true, the OIT scan sheets are written to one document,
+	 * see getMergedOITFile(), instead of a file per record
+	 * @param threads Number of worker threads
+	 */
+	public BatchGenerator(DocumentRenderer renderer, File outputDir, QuestionBank questions,
+			boolean commentSheets, boolean oitSheets, boolean mergeOITSheets, int threads){
+		this.renderer       = renderer;
+		this.outputDir      = outputDir;
+		this.questions      = questions;
+		this.commentSheets  = commentSheets;
+		this.oitSheets      = oitSheets;
+		this.mergeOITSheets = mergeOITSheets;
+		this.threads        = Math.max(1, threads);
+		this.validator      = new DocInfoValidator(oitSheets);
+	}
+
+	//******************* PUBLIC METHODS *******************
+	/**
+	 * Command line entry point. Prints a summary and any failures when done.
+	 */
+	public static void main(String[] args) {
+		if(args.length < 2){
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+
+		File roster = new File(args[0]);
+		File outputDir = new File(args[1]);
+		boolean comments = true;
+		boolean oit = false;
+		boolean merge = false;
+		boolean print = false;
+		boolean force = false;
+		boolean check = false;
+		int threads = Runtime.getRuntime().availableProcessors();
+		File questionFile = new File(WordTemplateGenerator.COMMENT_SHEET_QUESTION_SAVE_PATH);
+		File questionDir = new File(QuestionSetIndex.QUESTION_DIRECTORY);
+		File spreadsheet = null;
+		DocumentRenderer renderer = new Docx4jRenderer();
+
+		for(int i = 2; i < args.length; i++){
+			if(args[i].equals("--no-comments")){
+				comments = false;
+			}
+			else if(args[i].equals("--oit")){
+				oit = true;
+			}
+			else if(args[i].equals("--merge-oit")){
+				oit = true;
+				merge = true;
+			}
+			else if(args[i].equals("--print")){
+				oit = true;
+				merge = true;
+				print = true;
+			}
+			else if(args[i].equals("--force")){
+				force = true;
+			}
+			else if(args[i].equals("--check")){
+				check = true;
+			}
+			else if(args[i].equals("--threads") && i + 1 < args.length){
+				try {
+					threads = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException e) {
+					System.err.println("Not a number: " + e.getMessage());
+					System.err.println(USAGE);
+					System.exit(2);
+				}
+			}
+			else if(args[i].equals("--questions") && i + 1 < args.length){
+				questionFile = new File(args[++i]);
+			}
+			else if(args[i].equals("--question-dir") && i + 1 < args.length){
+				questionDir = new File(args[++i]);
+			}
+			else if(args[i].equals("--spreadsheet") && i + 1 < args.length){
+				spreadsheet = new File(args[++i]);
+			}
+			else if(args[i].equals("--renderer") && i + 1 < args.length){
+				String name = args[++i];
+				if(name.equals("precompiled")){
+					renderer = new PrecompiledRenderer();
+				}
+				else if(name.equals("streaming")){
+					renderer = new StreamingDocxRenderer();
+				}
+				else if(!name.equals("docx4j")){
+					System.err.println("Unknown renderer: " + name);
+					System.exit(2);
+				}
+			}
+			else{
+				System.err.println("Unknown option: " + args[i]);
+				System.exit(2);
+			}
+		}
+
+		// Printing needs the desktop
+		if(!print){
+			System.setProperty("java.awt.headless", "true");
+		}
+
+		try {
+			if(check){
+				BatchReport report = new BatchGenerator(renderer, outputDir, new QuestionBank(questionFile, questionDir),
+						comments, oit, merge, threads).checkRoster(roster);
+				System.out.println(report.getRecords() + " records checked, " + report.getFailures().size() + " invalid");
+				for(BatchReport.Failure failure:report.getFailures()){
+					System.out.println("INVALID " + failure);
+				}
+				System.exit(report.getFailures().isEmpty() ? 0 : 1);
+			}
+
+			outputDir.mkdirs();
+			int recovered = SpreadsheetJournal.recoverAll();
+			if(recovered > 0){
+				System.out.println("Recovered " + recovered + " classes from spreadsheet journals");
+			}
+			QuestionBank questions = new QuestionBank(questionFile, questionDir);
+			questions.reload();
+			BatchGenerator generator = new BatchGenerator(renderer, outputDir,
+					questions, comments, oit, merge, threads);
+			generator.setRegenerateAll(force);
+			generator.setSpreadsheet(spreadsheet);
+			BatchReport report = generator.generateRoster(roster);
+
+			System.out.println(report);
+			for(BatchReport.Failure failure:report.getFailures()){
+				System.out.println("FAILED " + failure);
+			}
+
+			File merged = generator.getMergedOITFile();
+			if(print && merged.exists()){
+				System.out.println("Printing " + merged);
+				Desktop.getDesktop().print(merged);
+			}
+			System.exit(report.getFailures().isEmpty() ? 0 : 1);
+		} catch (IOException e) {
+			System.err.println("Unable to run batch: " + e.getMessage());
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Checks every line of a roster file without generating anything. The
+	 * lines are read first and then validated on the worker threads.
+	 * @param roster CSV file with one class per line
+	 * @return Report of the check, with a failure for each line that cannot
+	 * be parsed or has invalid fields
+	 * @throws IOException If the roster cannot be read
+	 */
+	public BatchReport checkRoster(File roster) throws IOException{
+		long start = System.nanoTime();
+		// Keyed by line number, so failures are listed in roster order
+		TreeMap<Integer, BatchReport.Failure> failures = new TreeMap<Integer, BatchReport.Failure>();
+		ArrayList<DocInfo> infos = new ArrayList<DocInfo>();
+		ArrayList<RosterLine> lines = new ArrayList<RosterLine>();
+		int records = 0;
+
+		BufferedReader reader = new BufferedReader(new FileReader(roster));
+		try{
+			String line;
+			int lineNumber = 0;
+			while((line = reader.readLine()) != null){
+				lineNumber++;
+				if(line.trim().isEmpty() || DocInfoCsv.isHeader(line)){
+					continue;
+				}
+				records++;
+				RosterLine record = new RosterLine(line, lineNumber);
+				try {
+					DocInfo info = DocInfoCsv.parse(line);
+					DocInfoValidator.normalizeCase(info);
+					infos.add(info);
+					lines.add(record);
+				} catch (IllegalArgumentException e) {
+					failures.put(lineNumber, new BatchReport.Failure(record.toString(), e.getMessage()));
+				}
+			}
+		}
+		finally{
+			reader.close();
+		}
+
+		for(ValidationReport invalid:validator.validateAll(infos, threads)){
+			RosterLine record = lines.get(invalid.getRecord());
+			failures.put(record.lineNumber, new BatchReport.Failure(record.toString(), join(invalid.getProblems())));
+		}
+		return new BatchReport(records, 0, System.nanoTime() - start,
+				new ArrayList<BatchReport.Failure>(failures.values()));
+	}
+
+	/**
+	 * Generates documents for every line of a roster file. A malformed line is
+	 * reported as a failure instead of stopping the batch. A header line and
+	 * blank lines are skipped.
+	 * @param roster CSV file with one class per line
+	 * @return Report of the run
+	 * @throws IOException If the roster cannot be read
+	 */
+	public BatchReport generateRoster(File roster) throws IOException{
+		final BufferedReader reader = new BufferedReader(new FileReader(roster));
+		try{
+			return run(new Iterator<Object>(){
+				// Declared before next so it is initialized first
+				private int lineNumber;
+				private String next = advance();
+
+				public boolean hasNext(){
+					return next != null;
+				}
+
+				public Object next(){
+					Object record = new RosterLine(next, lineNumber);
+					next = advance();
+					return record;
+				}
+
+				public void remove(){
+					throw new UnsupportedOperationException();
+				}
+
+				private String advance(){
+					try {
+						String line;
+						while((line = reader.readLine()) != null){
+							lineNumber++;
+							if(!line.trim().isEmpty() && !DocInfoCsv.isHeader(line)){
+								return line;
+							}
+						}
+						return null;
+					} catch (IOException e) {
+						throw new IllegalStateException("Unable to read roster", e);
+					}
+				}
+			});
+		}
+		finally{
+			reader.close();
+		}
+	}
+
+	/**
+	 * Generates documents for every DocInfo object. The records are consumed as
+	 * they are generated, so the iterator may be backed by a stream.
+	 * @param records Classes to generate documents for
+	 * @return Report of the run
+	 */
+	public BatchReport generate(Iterator<DocInfo> records){
+		return run(records);
+	}
+
+	/**
+	 * Documents whose inputs have not changed since they were last generated
+	 * are skipped, see GenerationManifest. Setting this regenerates them anyway.
+	 * @param regenerateAll If true, every document is generated
+	 */
+	public void setRegenerateAll(boolean regenerateAll){
+		this.regenerateAll = regenerateAll;
+	}
+
+	/**
+	 * Sets the tracking spreadsheet every generated class is added to.
+	 * @param spreadsheet CSV file, or null to not add classes to a spreadsheet
+	 */
+	public void setSpreadsheet(File spreadsheet){
+		this.spreadsheet = spreadsheet;
+	}
+
+	/**
+	 * Returns the document the OIT scan sheets are merged into when merging
+	 * is enabled. It is replaced by every run.
+	 */
+	public File getMergedOITFile(){
+		return new File(outputDir, MERGED_OIT_FILE_NAME);
+	}
+
+	//******************* PRIVATE METHODS *******************
+	/**
+	 * Joins the problems of an invalid record into one failure message.
+	 */
+	private static String join(List<ValidationReport.Problem> problems){
+		StringBuilder message = new StringBuilder();
+		for(ValidationReport.Problem part:problems){
+			if(message.length() > 0){
+				message.append("; ");
+			}
+			message.append(part.getMessage());
+		}
+		return message.toString();
+	}
+
+	/**
+	 * Runs every record through a fixed size pool. The reading thread parses,
+	 * normalizes, and validates each record and drops a record whose documents have the same file
+	 * names as an earlier one, so two workers never write the same file. The
+	 * queue is bounded and the reading thread renders the record itself when the
+	 * queue is full, which keeps the number of records held in memory
+	 * independent of the roster size. When
+	 * the OIT scan sheets are merged, the parsed records are kept, keyed by their
+	 * position so the sheets are in roster order, and written once all records
+	 * are done. The manifest is saved once at the end of the run.
+	 */
+	private BatchReport run(Iterator<?> records){
+		File target = spreadsheet;
+		final Run run = new Run(questions.getIndex(), loadManifest(),
+				target != null ? new SpreadsheetAppender(target) : null);
+		int count = 0;
+		// Description of the record each file name was first used by
+		HashMap<String, String> fileNames = new HashMap<String, String>();
+
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(threads * QUEUED_RECORDS_PER_THREAD),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+
+		long start = System.nanoTime();
+		try{
+			while(records.hasNext()){
+				Object record = records.next();
+				final int position = count++;
+				final String description;
+				final DocInfo info;
+				if(record instanceof RosterLine){
+					description = record.toString();
+					try {
+						info = DocInfoCsv.parse(((RosterLine) record).line);
+					} catch (IllegalArgumentException e) {
+						run.failures.add(new BatchReport.Failure(description, e.getMessage()));
+						continue;
+					}
+				}
+				else{
+					info = (DocInfo) record;
+					description = DocInfoCsv.format(info);
+				}
+
+				// As the form does, so a class gets the same files either way
+				DocInfoValidator.normalizeCase(info);
+				List<ValidationReport.Problem> problems = validator.check(info);
+				if(!problems.isEmpty()){
+					run.failures.add(new BatchReport.Failure(description, join(problems)));
+					continue;
+				}
+				String fileName = WordTemplateGenerator.generateSaveFileName(info);
+				if(fileNames.containsKey(fileName)){
+					run.failures.add(new BatchReport.Failure(description, "Same documents as " + fileNames.get(fileName)));
+					continue;
+				}
+				fileNames.put(fileName, description);
+
+				pool.execute(new Runnable(){
+					public void run(){
+						generateRecord(info, description, position, run);
+					}
+				});
+			}
+		}
+		finally{
+			pool.shutdown();
+			try {
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if(oitSheets && mergeOITSheets && !run.merged.isEmpty()){
+			writeMergedOITSheets(new ArrayList<DocInfo>(run.merged.values()), run);
+		}
+		if(run.spreadsheet != null){
+			try {
+				run.spreadsheet.close();
+				System.out.println(target.getName() + ": " + run.spreadsheet.getWritten() + " classes added, "
+						+ run.spreadsheet.getDuplicates() + " already present");
+			} catch (IOException e) {
+				run.failures.add(new BatchReport.Failure(target.getName(), e.getMessage()));
+			}
+		}
+		try {
+			run.manifest.save();
+		} catch (IOException e) {
+			run.failures.add(new BatchReport.Failure(GenerationManifest.FILE_NAME, e.getMessage()));
+		}
+		long elapsed = System.nanoTime() - start;
+
+		return new BatchReport(count, run.documents.get(), run.skipped.get(), elapsed,
+				new ArrayList<BatchReport.Failure>(run.failures));
+	}
+
+	/**
+	 * Generates the selected documents for one valid record, skipping any that
+	 * are already current, then queues the record for the spreadsheet. Any
+	 * exception is recorded as a failure of that record.
+	 */
+	private void generateRecord(DocInfo info, String description, int position, Run run){
+		try {
+			if(commentSheets){
+				File file = new File(outputDir, WordTemplateGenerator.generateSaveFileName(info));
+				QuestionSet courseQuestions = run.questions.resolve(info);
+				String hash = GenerationManifest.commentSheetHash(info, courseQuestions);
+				if(isCurrent(run, file, hash)){
+					run.skipped.incrementAndGet();
+				}
+				else{
+					OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+					try{
+						renderer.renderCommentSheet(info, courseQuestions, out);
+					}
+					finally{
+						out.close();
+					}
+					run.manifest.record(file, hash);
+					run.documents.incrementAndGet();
+				}
+			}
+			if(oitSheets && mergeOITSheets){
+				run.merged.put(position, info);
+			}
+			else if(oitSheets){
+				File file = new File(outputDir, WordTemplateGenerator.generateOITSaveFileName(info));
+				String hash = GenerationManifest.oitSheetHash(info);
+				if(isCurrent(run, file, hash)){
+					run.skipped.incrementAndGet();
+				}
+				else{
+					OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+					try{
+						renderer.renderOITSheet(info, requestDate, out);
+					}
+					finally{
+						out.close();
+					}
+					run.manifest.record(file, hash);
+					run.documents.incrementAndGet();
+				}
+			}
+
+			if(run.spreadsheet != null){
+				run.spreadsheet.add(info);
+			}
+		} catch (Exception e) {
+			String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+			run.failures.add(new BatchReport.Failure(description, message));
+		}
+	}
+
+	/**
+	 * Writes the OIT scan sheets of all records to the merged document, unless
+	 * it already holds the same sheets in the same order. A failure here is
+	 * recorded as a failure of the whole merged document.
+	 */
+	private void writeMergedOITSheets(List<DocInfo> infos, Run run){
+		File file = getMergedOITFile();
+		String hash = GenerationManifest.oitSheetsHash(infos);
+		if(isCurrent(run, file, hash)){
+			run.skipped.incrementAndGet();
+			return;
+		}
+
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+			try{
+				renderer.renderOITSheets(infos, requestDate, out);
+			}
+			finally{
+				out.close();
+			}
+			run.manifest.record(file, hash);
+			run.documents.incrementAndGet();
+		} catch (Exception e) {
+			String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+			run.failures.add(new BatchReport.Failure(file.getName() + " (" + infos.size() + " OIT scan sheets)", message));
+		}
+	}
+
+	private boolean isCurrent(Run run, File file, String hash){
+		return !regenerateAll && run.manifest.isCurrent(file, hash);
+	}
+
+	/**
+	 * Reads the manifest of the output directory. If it cannot be read, every
+	 * document is generated again and a new manifest is written.
+	 */
+	private GenerationManifest loadManifest(){
+		try {
+			return GenerationManifest.load(outputDir);
+		} catch (IOException e) {
+			System.err.println("Unable to read manifest, regenerating all documents: " + e.getMessage());
+			return new GenerationManifest(outputDir);
+		}
+	}
+
+	/**
+	 * State shared by the worker threads during one run.
+	 */
+	private static class Run {
+		private final QuestionSetIndex questions;
+		private final GenerationManifest manifest;
+		// Null if classes are not added to a spreadsheet
+		private final SpreadsheetAppender spreadsheet;
+		private final ConcurrentLinkedQueue<BatchReport.Failure> failures = new ConcurrentLinkedQueue<BatchReport.Failure>();
+		private final AtomicInteger documents = new AtomicInteger();
+		private final AtomicInteger skipped = new AtomicInteger();
+		private final ConcurrentSkipListMap<Integer, DocInfo> merged = new ConcurrentSkipListMap<Integer, DocInfo>();
+
+		private Run(QuestionSetIndex questions, GenerationManifest manifest,
+				SpreadsheetAppender spreadsheet){
+			this.questions   = questions;
+			this.manifest    = manifest;
+			this.spreadsheet = spreadsheet;
+		}
+	}
+
+	/**
+	 * Unparsed roster line along with its line number for failure reports.
+	 */
+	private static class RosterLine {
+		private final String line;
+		private final int lineNumber;
+
+		private RosterLine(String line, int lineNumber){
+			this.line       = line;
+			this.lineNumber = lineNumber;
+		}
+
+		public String toString(){
+			return "line " + lineNumber + " (" + line + ")";
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ * Result of a batch generation run. Holds the number of records processed,
+ * the number of documents written and skipped as unchanged, the time taken,
+ * and a description of every record that failed.
+ */
+
+package org.EvalGenerator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class BatchReport {
+	//******************* DATA MEMBERS *******************
+	private final int records;
+	private final int documents;
+	private final int skipped;
+	private final long elapsedNanos;
+	private final List<Failure> failures;
+
+	/**
+	 * A record that could not be generated. The record is stored as text
+	 * because it may not have been parsable into a DocInfo object.
+	 */
+	public static class Failure {
+		private final String record;
+		private final String message;
+
+		public Failure(String record, String message){
+			this.record  = record;
+			this.message = message;
+		}
+
+		public String getRecord(){
+			return record;
+		}
+		public String getMessage(){
+			return message;
+		}
+
+		public String toString(){
+			return record + ": " + message;
+		}
+	}
+
+	//******************* CONSTRUCTORS *******************
+	/**
+	 * @param records Number of records read
+	 * @param documents Number of documents written
+	 * @param elapsedNanos Wall clock time of the run
+	 * @param failures Records that could not be generated
+	 */
+	public BatchReport(int records, int documents, long elapsedNanos, List<Failure> failures){
+		this(records, documents, 0, elapsedNanos, failures);
+	}
+
+	/**
+	 * @param records Number of records read
+	 * @param documents Number of documents written
+	 * @param skipped Number of documents that were already current and not written
+	 * @param elapsedNanos Wall clock time of the run
+	 * @param failures Records that could not be generated
+	 */
+	public BatchReport(int records, int documents, int skipped, long elapsedNanos, List<Failure> failures){
+		this.records      = records;
+		this.documents    = documents;
+		this.skipped      = skipped;
+		this.elapsedNanos = elapsedNanos;
+		this.failures     = Collections.unmodifiableList(new ArrayList<Failure>(failures));
+	}
+
+	//******************* PUBLIC METHODS *******************
+	public int getRecords(){
+		return records;
+	}
+	public int getDocuments(){
+		return documents;
+	}
+	public int getSkipped(){
+		return skipped;
+	}
+	public long getElapsedMillis(){
+		return elapsedNanos / 1000000L;
+	}
+	public List<Failure> getFailures(){
+		return failures;
+	}
+
+	/**
+	 * Returns the number of documents written per second.
+	 */
+	public double getThroughput(){
+		if(elapsedNanos == 0){
+			return 0;
+		}
+		return documents / (elapsedNanos / 1000000000.0);
+	}
+
+	public String toString(){
+		return String.format("%d records, %d documents, %d unchanged, %d failures in %d ms (%.1f documents/s)",
+				records, documents, skipped, failures.size(), getElapsedMillis(), getThroughput());
+	}
+}
@@ -0,0 +1,210 @@
+/**
+ * A comment sheet compiled once for a list of questions and rendered many
+ * times. Every comment sheet has the same title and question tables, only the
+ * values in the header table change. Compiling renders the main document part
+ * once with placeholders in the header values and splits it into byte
+ * segments around them. Rendering a document then only has to XML escape the
+ * header values and write the segments and values into a zip.
+ *
+ * A compiled template is immutable and can be shared by any number of threads.
+ */
+
+package org.EvalGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+public class CompiledCommentTemplate {
+	private static final String PLACEHOLDER_PREFIX = "{{EvalGenerator.header.";
+	private static final String PLACEHOLDER_SUFFIX = "}}";
+
+	//******************* DATA MEMBERS *******************
+	private final QuestionSet questions;
+
+	// Document part split around the header values. There is one more
+	// segment than there are header values.
+	private final byte[][] segments;
+
+	// Parts that are the same in every package, and their CRCs so they can be
+	// stored without being compressed or checked again for every document
+	private final StreamingDocxRenderer.PackageDefaults defaults;
+	private final long[] staticPartCrcs;
+
+	//******************* CONSTRUCTORS *******************
+	private CompiledCommentTemplate(QuestionSet questions, byte[][] segments,
+			StreamingDocxRenderer.PackageDefaults defaults){
+		this.questions = questions;
+		this.segments  = segments;
+		this.defaults  = defaults;
+
+		staticPartCrcs = new long[defaults.parts.length];
+		for(int i = 0; i < staticPartCrcs.length; i++){
+			CRC32 crc = new CRC32();
+			crc.update(defaults.parts[i]);
+			staticPartCrcs[i] = crc.getValue();
+		}
+	}
+
+	//******************* PUBLIC METHODS *******************
+	/**
+	 * Compiles the comment sheet for a list of questions.
+	 * @param questions Evaluation questions, one table each
+	 * @return Template that renders comment sheets with these questions
+	 * @throws IOException If the document part could not be rendered
+	 */
+	public static CompiledCommentTemplate compile(QuestionSet questions) throws IOException{
+		// Header table with a placeholder in place of each value
+		List<SheetLayout.Row> rows = new ArrayList<SheetLayout.Row>();
+		for(SheetLayout.Row row:SheetLayout.commentHeaderRows(placeholderInfo())){
+			rows.add(new SheetLayout.Row(row.getLabel(), placeholder(rows.size()), row.getLabelWidth()));
+		}
+
+		// The question tables are written directly rather than through
+		// questionSection(), which would cache a copy on the question set
+		StreamingDocxRenderer streaming = new StreamingDocxRenderer();
+		ByteArrayOutputStream document = new ByteArrayOutputStream(64 * 1024);
+		try {
+			XMLStreamWriter xml = streaming.createWriter(document);
+			streaming.startDocument(xml);
+			streaming.writeParagraph(xml, SheetLayout.COMMENT_SHEET_TITLE);
+			streaming.writeInfoTable(xml, rows);
+			streaming.writeQuestions(xml, questions.getQuestions());
+			streaming.endDocument(xml);
+		} catch (XMLStreamException e) {
+			throw new IOException("Unable to compile comment sheet", e);
+		}
+
+		return new CompiledCommentTemplate(questions, split(document.toByteArray(), rows.size()),
+				StreamingDocxRenderer.packageDefaults());
+	}
+
+	/**
+	 * Returns the questions the template was compiled with.
+	 */
+	public QuestionSet getQuestions(){
+		return questions;
+	}
+
+	/**
+	 * Writes a comment sheet for a DocInfo object. The stream is not closed.
+	 * @param info Course info for the header table
+	 * @param out Stream the .docx is written to
+	 * @throws IOException If the document could not be written
+	 */
+	public void render(DocInfo info, OutputStream out) throws IOException{
+		List<SheetLayout.Row> rows = SheetLayout.commentHeaderRows(info);
+
+		ZipOutputStream zip = new ZipOutputStream(out);
+		zip.setLevel(Deflater.BEST_SPEED);
+
+		for(int i = 0; i < defaults.parts.length; i++){
+			byte[] part = defaults.parts[i];
+			ZipEntry entry = new ZipEntry(defaults.partNames[i]);
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(part.length);
+			entry.setCompressedSize(part.length);
+			entry.setCrc(staticPartCrcs[i]);
+			zip.putNextEntry(entry);
+			zip.write(part);
+			zip.closeEntry();
+		}
+
+		zip.putNextEntry(new ZipEntry(StreamingDocxRenderer.DOCUMENT_PART));
+		for(int i = 0; i < segments.length; i++){
+			zip.write(segments[i]);
+			if(i < rows.size()){
+				zip.write(escape(rows.get(i).getValue()));
+			}
+		}
+		zip.closeEntry();
+		zip.finish();
+	}
+
+	//******************* PRIVATE METHODS *******************
+	private static String placeholder(int index){
+		return PLACEHOLDER_PREFIX + index + PLACEHOLDER_SUFFIX;
+	}
+
+	/**
+	 * DocInfo used only to get the labels and widths of the header rows.
+	 */
+	private static DocInfo placeholderInfo(){
+		return new DocInfo("", "", "", "", "", "", "", "", "", DocInfo.Semester.Fall);
+	}
+
+	/**
+	 * Splits the document around each placeholder. The placeholders are ASCII,
+	 * so they are found as is in the UTF-8 bytes. The header table comes before
+	 * the questions, so a question containing placeholder text is never matched.
+	 */
+	private static byte[][] split(byte[] document, int placeholders){
+		byte[][] segments = new byte[placeholders + 1][];
+		int start = 0;
+		for(int i = 0; i < placeholders; i++){
+			byte[] token = placeholder(i).getBytes(StreamingDocxRenderer.UTF_8);
+			int index = indexOf(document, token, start);
+			if(index < 0){
+				throw new IllegalStateException("Placeholder " + i + " not found in compiled document");
+			}
+			segments[i] = copyRange(document, start, index);
+			start = index + token.length;
+		}
+		segments[placeholders] = copyRange(document, start, document.length);
+		return segments;
+	}
+
+	private static int indexOf(byte[] data, byte[] token, int from){
+		outer:
+		for(int i = from; i <= data.length - token.length; i++){
+			for(int j = 0; j < token.length; j++){
+				if(data[i + j] != token[j]){
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	private static byte[] copyRange(byte[] data, int from, int to){
+		byte[] copy = new byte[to - from];
+		System.arraycopy(data, from, copy, 0, copy.length);
+		return copy;
+	}
+
+	/**
+	 * Escapes a header value for use as element text and encodes it as UTF-8,
+	 * the same way StreamingDocxRenderer writes text: characters not allowed
+	 * in XML are dropped and a carriage return is written as a reference.
+	 */
+	private static byte[] escape(String value){
+		StringBuilder escaped = new StringBuilder(value.length() + 16);
+		for(int i = 0; i < value.length(); i++){
+			char c = value.charAt(i);
+			switch(c){
+			case '&':	escaped.append("&amp;");
+						break;
+			case '<':	escaped.append("&lt;");
+						break;
+			case '>':	escaped.append("&gt;");
+						break;
+			case '\r':	escaped.append("&#13;");
+						break;
+			default:	if(StreamingDocxRenderer.isXmlChar(c)){
+							escaped.append(c);
+						}
+			}
+		}
+		return escaped.toString().getBytes(StreamingDocxRenderer.UTF_8);
+	}
+}
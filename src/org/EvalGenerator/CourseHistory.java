@@ -0,0 +1,180 @@
+/**
+ * Every class generated before, indexed by the start of the fields the form
+ * suggests, so a class can be suggested as the user types. For each field
+ * the classes are kept in one sorted map, keyed by the lower case value
+ * followed by when the class was added, newest first. The classes starting
+ * with what was typed are then one range of that map, in order of value and
+ * most recent first for the same value.
+ *
+ * A class is identified by its instructor and course, the same name the
+ * profile store uses, and only its most recently added version is kept, so
+ * each class is suggested once with the semester and support staff it was
+ * last generated with. Classes can be added from several threads while the
+ * form asks for suggestions.
+ */
+
+package org.EvalGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.EvalGenerator.DocInfoValidator.Field;
+
+public class CourseHistory {
+	/**
+	 * The fields classes can be suggested for.
+	 */
+	public static final EnumSet<Field> SUGGESTED_FIELDS = EnumSet.of(Field.INSTRUCTOR_FIRST_NAME,
+			Field.INSTRUCTOR_LAST_NAME, Field.SUBJECT, Field.COURSE_NUMBER, Field.SECTION,
+			Field.FACULTY_SUPPORT_NAME);
+
+	// Separates the value from the sequence in an index key, and sorts before
+	// any character of a value
+	private static final char SEPARATOR = '\0';
+
+	/**
+	 * The most recent version of a class and when it was added.
+	 */
+	private static final class Entry {
+		final DocInfo info;
+		final long sequence;
+
+		Entry(DocInfo info, long sequence){
+			this.info     = info;
+			this.sequence = sequence;
+		}
+	}
+
+	//******************* DATA MEMBERS *******************
+	// By profile name
+	private final HashMap<String, Entry> classes = new HashMap<String, Entry>();
+	private long sequence;
+	// For each suggested field, index key to profile name
+	private final EnumMap<Field, TreeMap<String, String>> index = new EnumMap<Field, TreeMap<String, String>>(Field.class);
+
+	//******************* CONSTRUCTORS *******************
+	public CourseHistory(){
+		for(Field field:SUGGESTED_FIELDS){
+			index.put(field, new TreeMap<String, String>());
+		}
+	}
+
+	//******************* PUBLIC METHODS *******************
+	/**
+	 * Adds a class, replacing the version added before if there is one.
+	 */
+	public synchronized void add(DocInfo info){
+		String name = ProfileStore.nameOf(info);
+		Entry entry = new Entry(info, ++sequence);
+		Entry previous = classes.put(name, entry);
+		for(Map.Entry<Field, TreeMap<String, String>> field:index.entrySet()){
+			if(previous != null){
+				field.getValue().remove(key(field.getKey().get(previous.info), previous.sequence));
+			}
+			String value = field.getKey().get(info);
+			if(value != null && !value.trim().isEmpty()){
+				field.getValue().put(key(value, entry.sequence), name);
+			}
+		}
+	}
+
+	/**
+	 * Adds every class of a list, in order.
+	 */
+	public synchronized void addAll(List<DocInfo> infos){
+		for(DocInfo info:infos){
+			add(info);
+		}
+	}
+
+	/**
+	 * Adds the classes of an older history that are not in this one. Used to
+	 * bring in a history loaded in the background without replacing the
+	 * classes added while it loaded.
+	 */
+	public void merge(CourseHistory older){
+		List<Entry> olderClasses;
+		synchronized(older){
+			olderClasses = new ArrayList<Entry>(older.classes.values());
+		}
+		synchronized(this){
+			for(Entry entry:olderClasses){
+				if(!classes.containsKey(ProfileStore.nameOf(entry.info))){
+					add(entry.info);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds every class of a tracking spreadsheet, in spreadsheet order, so the
+	 * last row of each class is the version kept.
+	 * @return Number of rows read
+	 * @throws IOException If the spreadsheet cannot be read
+	 */
+	public int addSpreadsheet(File spreadsheet) throws IOException{
+		return new SpreadsheetQuery().visit(spreadsheet, new SpreadsheetQuery.Visitor(){
+			public void visit(DocInfo info){
+				add(info);
+			}
+		});
+	}
+
+	/**
+	 * Returns the classes with a field that starts with a prefix, ignoring
+	 * case. They are in order of the field's value, and the classes with the
+	 * same value are most recently added first. The classes are shared and
+	 * must not be changed.
+	 * @param field One of SUGGESTED_FIELDS, other fields have no suggestions
+	 * @param limit Maximum number of classes returned
+	 */
+	public synchronized List<DocInfo> suggest(Field field, String prefix, int limit){
+		ArrayList<DocInfo> found = new ArrayList<DocInfo>();
+		String start = normalize(prefix);
+		if(start.isEmpty() || !index.containsKey(field)){
+			return found;
+		}
+
+		for(String name:index.get(field).subMap(start, start + Character.MAX_VALUE).values()){
+			if(found.size() == limit){
+				break;
+			}
+			found.add(classes.get(name).info);
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the number of different classes.
+	 */
+	public synchronized int size(){
+		return classes.size();
+	}
+
+	//******************* PRIVATE METHODS *******************
+	private static String normalize(String value){
+		return value != null ? value.trim().toLowerCase(Locale.ENGLISH) : "";
+	}
+
+	/**
+	 * Returns the index key of a value. The sequence is counted down in fixed
+	 * width hex, so newer classes sort first.
+	 */
+	private static String key(String value, long sequence){
+		String countdown = Long.toHexString(Long.MAX_VALUE - sequence);
+		StringBuilder key = new StringBuilder(value.length() + 17);
+		key.append(normalize(value)).append(SEPARATOR);
+		for(int i = countdown.length(); i < 16; i++){
+			key.append('0');
+		}
+		return key.append(countdown).toString();
+	}
+}
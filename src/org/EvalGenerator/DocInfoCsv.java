@@ -0,0 +1,154 @@
+/**
+ * Converts DocInfo objects to and from single lines of comma separated
+ * values. Used to read class rosters for batch generation. Columns are in
+ * the order given by HEADER. Fields containing commas or quotes are wrapped
+ * in double quotes, with embedded quotes doubled.
+ */
+
+package org.EvalGenerator;
+
+import java.util.ArrayList;
+
+import org.EvalGenerator.DocInfo.Semester;
+
+public class DocInfoCsv {
+	public static final String HEADER = "Instructor First Name,Instructor Last Name,Subject,"
+			+ "Course Number,Section,Semester,Year,Faculty Support Name,"
+			+ "Faculty Support Extension,Mailbox";
+	public static final int COLUMN_COUNT = 10;
+
+	//******************* CONSTRUCTORS *******************
+	private DocInfoCsv(){
+	}
+
+	//******************* PUBLIC METHODS *******************
+	/**
+	 * Returns true if the line is the column header rather than a record.
+	 */
+	public static boolean isHeader(String line){
+		return line.startsWith("Instructor First Name");
+	}
+
+	/**
+	 * Parses one line of a roster into a DocInfo object. Only checks that
+	 * the line has the correct number of columns and a known semester, the
+	 * remaining fields are not validated.
+	 * @param line Line of comma separated values in the HEADER order
+	 * @return DocInfo containing the values on the line
+	 * @throws IllegalArgumentException If the line cannot be parsed
+	 */
+	public static DocInfo parse(String line){
+		ArrayList<String> fields = split(line);
+		if(fields.size() != COLUMN_COUNT){
+			throw new IllegalArgumentException("Expected " + COLUMN_COUNT
+					+ " columns but found " + fields.size());
+		}
+
+		return new DocInfo(fields.get(0),
+				fields.get(1),
+				fields.get(2),
+				fields.get(3),
+				fields.get(4),
+				fields.get(6),
+				fields.get(7),
+				fields.get(8),
+				fields.get(9),
+				parseSemester(fields.get(5)));
+	}
+
+	/**
+	 * Converts a DocInfo object to a line in the HEADER order. The returned
+	 * string does not include a line terminator.
+	 */
+	public static String format(DocInfo info){
+		StringBuilder line = new StringBuilder(128);
+		appendField(line, info.getInstFName());
+		line.append(',');
+		appendField(line, info.getInstLName());
+		line.append(',');
+		appendField(line, info.getSubject());
+		line.append(',');
+		appendField(line, info.getCourseNum());
+		line.append(',');
+		appendField(line, info.getSection());
+		line.append(',');
+		appendField(line, String.valueOf(info.getSemester()));
+		line.append(',');
+		appendField(line, info.getYear());
+		line.append(',');
+		appendField(line, info.getFacSuppName());
+		line.append(',');
+		appendField(line, info.getFacSuppExten());
+		line.append(',');
+		appendField(line, info.getMailbox());
+		return line.toString();
+	}
+
+	/**
+	 * Matches a semester name ignoring case and surrounding whitespace.
+	 * @throws IllegalArgumentException If the name is not a semester
+	 */
+	public static Semester parseSemester(String name){
+		String trimmed = name.trim();
+		for(Semester sem:Semester.values()){
+			if(sem.name().equalsIgnoreCase(trimmed)){
+				return sem;
+			}
+		}
+		throw new IllegalArgumentException("Unknown semester: " + name);
+	}
+
+	//******************* PRIVATE METHODS *******************
+	/**
+	 * Splits a line into fields, removing the quotes around quoted fields.
+	 */
+	private static ArrayList<String> split(String line){
+		ArrayList<String> fields = new ArrayList<String>(COLUMN_COUNT);
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+
+		for(int i = 0; i < line.length(); i++){
+			char c = line.charAt(i);
+			if(quoted){
+				if(c == '"'){
+					// Doubled quote is an escaped quote, otherwise the field ends
+					if(i + 1 < line.length() && line.charAt(i + 1) == '"'){
+						field.append('"');
+						i++;
+					}
+					else{
+						quoted = false;
+					}
+				}
+				else{
+					field.append(c);
+				}
+			}
+			else if(c == '"'){
+				quoted = true;
+			}
+			else if(c == ','){
+				fields.add(field.toString().trim());
+				field.setLength(0);
+			}
+			else if(c != '\r'){
+				field.append(c);
+			}
+		}
+		fields.add(field.toString().trim());
+		return fields;
+	}
+
+	private static void appendField(StringBuilder line, String value){
+		if(value == null){
+			return;
+		}
+		if(value.indexOf(',') < 0 && value.indexOf('"') < 0){
+			line.append(value);
+			return;
+		}
+		line.append('"');
+		line.append(value.replace("\"", "\"\""));
+		line.append('"');
+	}
+}
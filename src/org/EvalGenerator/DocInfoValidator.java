@@ -0,0 +1,285 @@
+/**
+ * Checks that a class has everything its documents need, with the same rules
+ * the form has always used: names, subject, course number, section, and year
+ * must be filled in, the subject must not contain numbers, and the course
+ * number and year must not contain letters. The faculty support fields are
+ * also required when OIT scan sheets are generated. normalizeCase() puts
+ * a class in the form its documents show, call it before checking a class
+ * and naming its files.
+ *
+ * The rules are compiled once per validator into an array per field and only
+ * the first failing rule of a field is reported, so a blank field is not also
+ * reported as containing letters. Characters are classified with lookup
+ * tables for ASCII, which covers nearly every field. A validator holds no
+ * state while checking, so one can be shared by many threads, and
+ * validateAll() checks a large list of classes on several threads at once.
+ */
+
+package org.EvalGenerator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class DocInfoValidator {
+	// Lists shorter than this are not worth splitting between threads
+	private static final int PARALLEL_THRESHOLD = 2048;
+
+	private static final boolean[] ASCII_LETTERS = new boolean[128];
+	private static final boolean[] ASCII_DIGITS = new boolean[128];
+	static {
+		for(char c = 0; c < 128; c++){
+			ASCII_LETTERS[c] = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+			ASCII_DIGITS[c]  = c >= '0' && c <= '9';
+		}
+	}
+
+	/**
+	 * The fields of a class that rules check.
+	 */
+	public enum Field {
+		INSTRUCTOR_FIRST_NAME("Instructor first name"){
+			String get(DocInfo info){ return info.getInstFName(); }
+		},
+		INSTRUCTOR_LAST_NAME("Instructor last name"){
+			String get(DocInfo info){ return info.getInstLName(); }
+		},
+		SUBJECT("Subject"){
+			String get(DocInfo info){ return info.getSubject(); }
+		},
+		COURSE_NUMBER("Course number"){
+			String get(DocInfo info){ return info.getCourseNum(); }
+		},
+		SECTION("Section"){
+			String get(DocInfo info){ return info.getSection(); }
+		},
+		YEAR("Year"){
+			String get(DocInfo info){ return info.getYear(); }
+		},
+		FACULTY_SUPPORT_NAME("Faculty support name"){
+			String get(DocInfo info){ return info.getFacSuppName(); }
+		},
+		FACULTY_SUPPORT_EXTENSION("Extension"){
+			String get(DocInfo info){ return info.getFacSuppExten(); }
+		},
+		MAILBOX("Mailbox"){
+			String get(DocInfo info){ return info.getMailbox(); }
+		};
+
+		private final String label;
+
+		Field(String label){
+			this.label = label;
+		}
+
+		/**
+		 * Returns the name of the field as shown to the user.
+		 */
+		public String getLabel(){
+			return label;
+		}
+
+		abstract String get(DocInfo info);
+	}
+
+	/**
+	 * What a rule checks.
+	 */
+	private enum Check {
+		NOT_BLANK("blank"),
+		NO_LETTERS("contains letters"),
+		NO_DIGITS("contains numbers");
+
+		final String failure;
+
+		Check(String failure){
+			this.failure = failure;
+		}
+
+		boolean passes(String value){
+			switch(this){
+			case NOT_BLANK:  return value != null && !value.isEmpty();
+			case NO_LETTERS: return !containsLetters(value);
+			case NO_DIGITS:  return !containsDigits(value);
+			default:         return true;
+			}
+		}
+	}
+
+	/**
+	 * The rules of one field, in the order they are checked.
+	 */
+	private static final class FieldRules {
+		final Field field;
+		final Check[] checks;
+		final String[] messages;
+
+		FieldRules(Field field, Check... checks){
+			this.field    = field;
+			this.checks   = checks;
+			this.messages = new String[checks.length];
+			for(int i = 0; i < checks.length; i++){
+				messages[i] = field.getLabel() + " field " + checks[i].failure;
+			}
+		}
+	}
+
+	//******************* DATA MEMBERS *******************
+	private final FieldRules[] rules;
+
+	//******************* CONSTRUCTORS *******************
+	/**
+	 * Creates a validator for the fields every document needs.
+	 */
+	public DocInfoValidator(){
+		this(false);
+	}
+
+	/**
+	 * @param oitSheet True to also require the fields of the OIT scan sheet
+	 */
+	public DocInfoValidator(boolean oitSheet){
+		ArrayList<FieldRules> compiled = new ArrayList<FieldRules>();
+		compiled.add(new FieldRules(Field.INSTRUCTOR_FIRST_NAME, Check.NOT_BLANK));
+		compiled.add(new FieldRules(Field.INSTRUCTOR_LAST_NAME, Check.NOT_BLANK));
+		compiled.add(new FieldRules(Field.SUBJECT, Check.NOT_BLANK, Check.NO_DIGITS));
+		compiled.add(new FieldRules(Field.COURSE_NUMBER, Check.NOT_BLANK, Check.NO_LETTERS));
+		compiled.add(new FieldRules(Field.SECTION, Check.NOT_BLANK));
+		compiled.add(new FieldRules(Field.YEAR, Check.NOT_BLANK, Check.NO_LETTERS));
+		if(oitSheet){
+			compiled.add(new FieldRules(Field.FACULTY_SUPPORT_NAME, Check.NOT_BLANK));
+			compiled.add(new FieldRules(Field.FACULTY_SUPPORT_EXTENSION, Check.NOT_BLANK));
+			compiled.add(new FieldRules(Field.MAILBOX, Check.NOT_BLANK));
+		}
+		rules = compiled.toArray(new FieldRules[compiled.size()]);
+	}
+
+	//******************* PUBLIC METHODS *******************
+	/**
+	 * Upper-cases the subject and section, as they are shown in the documents.
+	 */
+	public static void normalizeCase(DocInfo info){
+		info.setSubject(info.getSubject().toUpperCase());
+		info.setSection(info.getSection().toUpperCase());
+	}
+
+	/**
+	 * Returns the problems of a class, in field order, or an empty list if
+	 * it is valid.
+	 */
+	public List<ValidationReport.Problem> check(DocInfo info){
+		List<ValidationReport.Problem> problems = null;
+		for(FieldRules field:rules){
+			String value = field.field.get(info);
+			for(int i = 0; i < field.checks.length; i++){
+				if(!field.checks[i].passes(value)){
+					if(problems == null){
+						problems = new ArrayList<ValidationReport.Problem>(2);
+					}
+					problems.add(new ValidationReport.Problem(field.field, field.messages[i]));
+					break;
+				}
+			}
+		}
+		return problems != null ? problems : Collections.<ValidationReport.Problem>emptyList();
+	}
+
+	/**
+	 * Returns the report of a single class.
+	 */
+	public ValidationReport validate(DocInfo info){
+		return new ValidationReport(0, info, check(info));
+	}
+
+	/**
+	 * Checks every class of a list, splitting long lists between threads.
+	 * @param infos Classes to check
+	 * @param threads Number of threads to use
+	 * @return Reports of the classes that have problems, in list order. A
+	 * report's record number is the class's index in the list.
+	 */
+	public List<ValidationReport> validateAll(final List<DocInfo> infos, int threads){
+		int parts = Math.max(1, Math.min(threads, infos.size() / (PARALLEL_THRESHOLD / 2)));
+		if(parts == 1){
+			return validateRange(infos, 0, infos.size());
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(parts);
+		try{
+			ArrayList<Future<List<ValidationReport>>> results = new ArrayList<Future<List<ValidationReport>>>(parts);
+			int size = (infos.size() + parts - 1) / parts;
+			for(int start = 0; start < infos.size(); start += size){
+				final int from = start;
+				final int to = Math.min(infos.size(), start + size);
+				results.add(pool.submit(new Callable<List<ValidationReport>>(){
+					public List<ValidationReport> call(){
+						return validateRange(infos, from, to);
+					}
+				}));
+			}
+
+			ArrayList<ValidationReport> reports = new ArrayList<ValidationReport>();
+			for(Future<List<ValidationReport>> result:results){
+				reports.addAll(result.get());
+			}
+			return reports;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while validating", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Unable to validate", e.getCause());
+		}
+		finally{
+			pool.shutdownNow();
+		}
+	}
+
+	//******************* PRIVATE METHODS *******************
+	private List<ValidationReport> validateRange(List<DocInfo> infos, int from, int to){
+		ArrayList<ValidationReport> reports = new ArrayList<ValidationReport>();
+		for(int i = from; i < to; i++){
+			List<ValidationReport.Problem> problems = check(infos.get(i));
+			if(!problems.isEmpty()){
+				reports.add(new ValidationReport(i, infos.get(i), problems));
+			}
+		}
+		return reports;
+	}
+
+	/**
+	 * Returns true if a string contains any letters.
+	 */
+	private static boolean containsLetters(String value){
+		if(value == null){
+			return false;
+		}
+		for(int i = 0; i < value.length(); i++){
+			char c = value.charAt(i);
+			if(c < 128 ? ASCII_LETTERS[c] : Character.isAlphabetic(c)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if a string contains any digits.
+	 */
+	private static boolean containsDigits(String value){
+		if(value == null){
+			return false;
+		}
+		for(int i = 0; i < value.length(); i++){
+			char c = value.charAt(i);
+			if(c < 128 ? ASCII_DIGITS[c] : Character.isDigit(c)){
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,65 @@
+/**
+ * Renders the comment sheet and OIT scan sheet for a DocInfo object as .docx
+ * bytes. Implementations keep no per-document state, so a single renderer can
+ * be shared by any number of threads. The caller decides where the bytes go.
+ */
+
+package org.EvalGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.List;
+
+public interface DocumentRenderer {
+	/**
+	 * Writes a comment sheet with a header table for the course info and a
+	 * table for each evaluation question. The stream is not closed.
+	 * @param info Course info for the header table
+	 * @param questions Evaluation questions, one table each
+	 * @param out Stream the .docx is written to
+	 * @throws IOException If the document could not be created or written
+	 */
+	void renderCommentSheet(DocInfo info, QuestionSet questions, OutputStream out) throws IOException;
+
+	/**
+	 * Writes an OIT scan sheet. The stream is not closed.
+	 * @param info Course and support info for the table
+	 * @param requestDate Date shown as the date of request
+	 * @param out Stream the .docx is written to
+	 * @throws IOException If the document could not be created or written
+	 */
+	void renderOITSheet(DocInfo info, Date requestDate, OutputStream out) throws IOException;
+
+	/**
+	 * Writes the OIT scan sheets of several classes into one document, each
+	 * starting on a new page, so they can be printed as a single job. The
+	 * stream is not closed.
+	 * @param infos Course and support info, one sheet each in this order
+	 * @param requestDate Date shown as the date of request on every sheet
+	 * @param out Stream the .docx is written to
+	 * @throws IOException If the document could not be created or written
+	 */
+	void renderOITSheets(List<DocInfo> infos, Date requestDate, OutputStream out) throws IOException;
+
+	/**
+	 * Renders a comment sheet into memory.
+	 * @return Contents of the .docx file
+	 */
+	default byte[] renderCommentSheet(DocInfo info, QuestionSet questions) throws IOException{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+		renderCommentSheet(info, questions, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Renders an OIT scan sheet into memory.
+	 * @return Contents of the .docx file
+	 */
+	default byte[] renderOITSheet(DocInfo info, Date requestDate) throws IOException{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(8 * 1024);
+		renderOITSheet(info, requestDate, out);
+		return out.toByteArray();
+	}
+}
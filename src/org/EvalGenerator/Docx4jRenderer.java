@@ -0,0 +1,311 @@
+/**
+ * Renders the documents with Docx4j by building the WordprocessingML object
+ * tree and saving the package. Every document is built in local variables, so
+ * one instance can be used from several threads at once.
+ *
+ * Some of the table generation code was taken from:
+ * http://blog.iprofs.nl/2012/09/06/creating-word-documents-with-docx4j/
+ */
+
+package org.EvalGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.docx4j.jaxb.Context;
+import org.docx4j.openpackaging.exceptions.Docx4JException;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.wml.BooleanDefaultTrue;
+import org.docx4j.wml.Br;
+import org.docx4j.wml.CTBorder;
+import org.docx4j.wml.HpsMeasure;
+import org.docx4j.wml.ObjectFactory;
+import org.docx4j.wml.P;
+import org.docx4j.wml.R;
+import org.docx4j.wml.RPr;
+import org.docx4j.wml.STBorder;
+import org.docx4j.wml.STBrType;
+import org.docx4j.wml.Tbl;
+import org.docx4j.wml.TblBorders;
+import org.docx4j.wml.TblPr;
+import org.docx4j.wml.TblWidth;
+import org.docx4j.wml.Tc;
+import org.docx4j.wml.TcPr;
+import org.docx4j.wml.Text;
+import org.docx4j.wml.Tr;
+
+public class Docx4jRenderer implements DocumentRenderer {
+	//******************* DATA MEMBERS *******************
+	// The object factory only creates new objects and keeps no state
+	private final ObjectFactory factory = Context.getWmlObjectFactory();
+
+	//******************* PUBLIC METHODS *******************
+	@Override
+	public void renderCommentSheet(DocInfo info, QuestionSet questions, OutputStream out) throws IOException{
+		try {
+			WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.createPackage();
+
+			// Add title to top of document
+			wordMLPackage.getMainDocumentPart().addParagraphOfText(SheetLayout.COMMENT_SHEET_TITLE);
+
+			// Place header table on document
+			wordMLPackage.getMainDocumentPart().addObject(
+					createInfoTable(SheetLayout.commentHeaderRows(info)));
+
+			// Add the question tables. They are built for each document, so
+			// no two packages share nodes; copying prebuilt ones through JAXB
+			// takes longer than building them.
+			for(Object node:createQuestionSection(questions)){
+				wordMLPackage.getMainDocumentPart().addObject(node);
+			}
+
+			wordMLPackage.save(out);
+		} catch (Docx4JException e) {
+			throw new IOException("Unable to create comment sheet", e);
+		}
+	}
+
+	@Override
+	public void renderOITSheet(DocInfo info, Date requestDate, OutputStream out) throws IOException{
+		try {
+			WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.createPackage();
+
+			// Add title to top of document
+			wordMLPackage.getMainDocumentPart().addParagraphOfText(SheetLayout.OIT_SHEET_TITLE);
+
+			// Place table on document
+			wordMLPackage.getMainDocumentPart().addObject(
+					createInfoTable(SheetLayout.oitRows(info, requestDate)));
+
+			wordMLPackage.save(out);
+		} catch (Docx4JException e) {
+			throw new IOException("Unable to create OIT scan sheet", e);
+		}
+	}
+
+	@Override
+	public void renderOITSheets(List<DocInfo> infos, Date requestDate, OutputStream out) throws IOException{
+		try {
+			WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.createPackage();
+
+			boolean first = true;
+			for(DocInfo info:infos){
+				// Every sheet after the first starts on a new page
+				if(first){
+					wordMLPackage.getMainDocumentPart().addParagraphOfText(SheetLayout.OIT_SHEET_TITLE);
+				}
+				else{
+					wordMLPackage.getMainDocumentPart().addObject(
+							createPageBreakParagraph(SheetLayout.OIT_SHEET_TITLE));
+				}
+				wordMLPackage.getMainDocumentPart().addObject(
+						createInfoTable(SheetLayout.oitRows(info, requestDate)));
+				first = false;
+			}
+
+			wordMLPackage.save(out);
+		} catch (Docx4JException e) {
+			throw new IOException("Unable to create OIT scan sheets", e);
+		}
+	}
+
+	//******************* PRIVATE METHODS *******************
+	/**
+	 * Creates a new table for each evaluation question, with an empty
+	 * paragraph before it so there is a space between questions.
+	 */
+	private List<Object> createQuestionSection(QuestionSet questions){
+		ArrayList<Object> section = new ArrayList<Object>(questions.size() * 2);
+
+		for(String question:questions.getQuestions()){
+			// Add empty paragraph so there is a space between questions
+			section.add(createParagraph(SheetLayout.QUESTION_SPACER));
+
+			// Create table
+			Tbl questionTable = factory.createTbl();
+
+			// Row with question
+			Tr questionRow = factory.createTr();
+			addStyledTableCellWithWidth(questionRow, question, true, SheetLayout.FONT_SIZE, SheetLayout.QUESTION_WIDTH);
+			questionTable.getContent().add(questionRow);
+
+			// Row with blank line for input
+			Tr blankRow = factory.createTr();
+			addStyledTableCellWithWidth(blankRow, "", true, SheetLayout.FONT_SIZE, SheetLayout.QUESTION_WIDTH);
+			questionTable.getContent().add(blankRow);
+
+			addBorders(questionTable);
+
+			section.add(questionTable);
+		}
+		return section;
+	}
+
+	/**
+	 * Creates a paragraph with a single run of text, the same as
+	 * addParagraphOfText but without adding it to a document.
+	 */
+	private P createParagraph(String content){
+		Text text = factory.createText();
+		text.setValue(content);
+
+		R run = factory.createR();
+		run.getContent().add(text);
+
+		P paragraph = factory.createP();
+		paragraph.getContent().add(run);
+		return paragraph;
+	}
+
+	/**
+	 * Creates a paragraph whose run starts with a page break, so the text is
+	 * at the top of a new page.
+	 */
+	private P createPageBreakParagraph(String content){
+		Br pageBreak = factory.createBr();
+		pageBreak.setType(STBrType.PAGE);
+
+		Text text = factory.createText();
+		text.setValue(content);
+
+		R run = factory.createR();
+		run.getContent().add(pageBreak);
+		run.getContent().add(text);
+
+		P paragraph = factory.createP();
+		paragraph.getContent().add(run);
+		return paragraph;
+	}
+
+	/**
+	 * Creates a bordered table with a bold label cell and a plain value cell
+	 * for each row.
+	 */
+	private Tbl createInfoTable(List<SheetLayout.Row> rows){
+		Tbl infoTable = factory.createTbl();
+
+		for(SheetLayout.Row row:rows){
+			Tr tableRow = factory.createTr();
+			addStyledTableCellWithWidth(tableRow, row.getLabel(), true, SheetLayout.FONT_SIZE, row.getLabelWidth());
+			addStyledTableCellWithWidth(tableRow, row.getValue(), false, SheetLayout.FONT_SIZE, row.getValueWidth());
+			infoTable.getContent().add(tableRow);
+		}
+
+		// Add border around entire table
+		addBorders(infoTable);
+		return infoTable;
+	}
+
+	/**
+	 *  In this method we create a cell and add the given content to it.
+	 *  If the given width is greater than 0, we set the width on the cell.
+	 *  Finally, we add the cell to the row.
+	 */
+	private void addStyledTableCellWithWidth(Tr row, String content,
+			boolean bold, String fontSize, int width){
+	    Tc tableCell = factory.createTc();
+	    addStyling(tableCell, content, bold, fontSize);
+
+	    if (width > 0) {
+	        setCellWidth(tableCell, width);
+	    }
+	    row.getContent().add(tableCell);
+	}
+
+	/**
+     *  This is where we add the actual styling information. In order to do this
+     *  we first create a paragraph. Then we create a text with the content of
+     *  the cell as the value. Thirdly, we create a so-called run, which is a
+     *  container for one or more pieces of text having the same set of
+     *  properties, and add the text to it. We then add the run to the content
+     *  of the paragraph.
+     *  So far what we've done still doesn't add any styling. To accomplish that,
+     *  we'll create run properties and add the styling to it. These run
+     *  properties are then added to the run. Finally the paragraph is added
+     *  to the content of the table cell.
+     */
+    private void addStyling(Tc tableCell, String content,
+                    boolean bold, String fontSize) {
+        P paragraph = factory.createP();
+
+        Text text = factory.createText();
+        text.setValue(content);
+
+        R run = factory.createR();
+        run.getContent().add(text);
+
+        paragraph.getContent().add(run);
+
+        RPr runProperties = factory.createRPr();
+        if (bold) {
+            addBoldStyle(runProperties);
+        }
+
+        if (fontSize != null && !fontSize.isEmpty()) {
+            setFontSize(runProperties, fontSize);
+        }
+
+        run.setRPr(runProperties);
+
+        tableCell.getContent().add(paragraph);
+    }
+
+    /**
+     *  In this method we're going to add the font size information to the run
+     *  properties. First we'll create a half-point measurement. Then we'll
+     *  set the fontSize as the value of this measurement. Finally we'll set
+     *  the non-complex and complex script font sizes, sz and szCs respectively.
+     */
+    private void setFontSize(RPr runProperties, String fontSize) {
+        HpsMeasure size = new HpsMeasure();
+        size.setVal(new BigInteger(fontSize));
+        runProperties.setSz(size);
+        runProperties.setSzCs(size);
+    }
+
+    /**
+     *  In this method we'll add the bold property to the run properties.
+     *  BooleanDefaultTrue is the Docx4j object for the b property.
+     *  Technically we wouldn't have to set the value to true, as this is
+     *  the default.
+     */
+    private void addBoldStyle(RPr runProperties) {
+        BooleanDefaultTrue b = new BooleanDefaultTrue();
+        b.setVal(true);
+        runProperties.setB(b);
+    }
+	/**
+     *  In this method we create a table cell properties object and a table width
+     *  object. We set the given width on the width object and then add it to
+     *  the properties object. Finally we set the properties on the table cell.
+     */
+    private void setCellWidth(Tc tableCell, int width) {
+        TcPr tableCellProperties = new TcPr();
+        TblWidth tableWidth = new TblWidth();
+        tableWidth.setW(BigInteger.valueOf(width));
+        tableCellProperties.setTcW(tableWidth);
+        tableCell.setTcPr(tableCellProperties);
+    }
+
+	private void addBorders(Tbl table) {
+        table.setTblPr(new TblPr());
+        CTBorder border = new CTBorder();
+        border.setColor("auto");
+        border.setSz(new BigInteger("4"));
+        border.setSpace(new BigInteger("0"));
+        border.setVal(STBorder.SINGLE);
+
+        TblBorders borders = new TblBorders();
+        borders.setBottom(border);
+        borders.setLeft(border);
+        borders.setRight(border);
+        borders.setTop(border);
+        borders.setInsideH(border);
+        borders.setInsideV(border);
+        table.getTblPr().setTblBorders(borders);
+    }
+}
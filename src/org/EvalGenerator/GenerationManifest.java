@@ -0,0 +1,167 @@
+/**
+ * Records which inputs every generated document in a directory was built from,
+ * so generating again only rewrites the documents whose inputs changed. The
+ * manifest is a hidden file in the output directory with one line per
+ * document: a hash of the inputs, a tab, and the document's file name.
+ *
+ * A comment sheet's hash covers its DocInfo and the version of the question
+ * set, so editing the questions makes every comment sheet out of date. An OIT
+ * scan sheet's hash only covers its DocInfo. The date of request is left out,
+ * so an unchanged sheet keeps the date it was first requested on.
+ *
+ * A document is only current if it still exists, so deleting a file is
+ * enough to have it generated again.
+ */
+
+package org.EvalGenerator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class GenerationManifest {
+	public static final String FILE_NAME = ".evalgen-manifest";
+
+	//******************* DATA MEMBERS *******************
+	private final File file;
+	// Input hashes keyed by document file name
+	private final ConcurrentHashMap<String, String> hashes = new ConcurrentHashMap<String, String>();
+
+	//******************* CONSTRUCTORS *******************
+	/**
+	 * Creates an empty manifest for a directory. Use load() to read the
+	 * existing one.
+	 * @param directory Directory the documents are saved in
+	 */
+	public GenerationManifest(File directory){
+		this.file = new File(directory, FILE_NAME);
+	}
+
+	//******************* PUBLIC METHODS *******************
+	/**
+	 * Reads the manifest of a directory. A directory without one has an
+	 * empty manifest. Lines that cannot be parsed are ignored, which only
+	 * means those documents are generated again.
+	 * @param directory Directory the documents are saved in
+	 * @throws IOException If the manifest exists but cannot be read
+	 */
+	public static GenerationManifest load(File directory) throws IOException{
+		GenerationManifest manifest = new GenerationManifest(directory);
+		BufferedReader reader;
+		try {
+			reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(manifest.file), StreamingDocxRenderer.UTF_8));
+		} catch (FileNotFoundException e) {
+			return manifest;
+		}
+
+		try{
+			String line;
+			while((line = reader.readLine()) != null){
+				int tab = line.indexOf('\t');
+				if(tab > 0 && tab < line.length() - 1){
+					manifest.hashes.put(line.substring(tab + 1), line.substring(0, tab));
+				}
+			}
+		}
+		finally{
+			reader.close();
+		}
+		return manifest;
+	}
+
+	/**
+	 * Records a single generated document in the manifest of its directory.
+	 * Used when documents are generated one at a time. Synchronized so that
+	 * two documents finishing together do not lose each other's entries.
+	 * @param document Document that was written
+	 * @param hash Hash of the inputs it was written from
+	 * @throws IOException If the manifest cannot be read or written
+	 */
+	public static synchronized void update(File document, String hash) throws IOException{
+		GenerationManifest manifest = load(document.getAbsoluteFile().getParentFile());
+		manifest.record(document, hash);
+		manifest.save();
+	}
+
+	/**
+	 * Returns true if the document exists and was generated from inputs with
+	 * the given hash, so it does not need to be generated again.
+	 */
+	public boolean isCurrent(File document, String hash){
+		return hash.equals(hashes.get(document.getName())) && document.isFile();
+	}
+
+	/**
+	 * Records that a document was generated. Call save() to write the change.
+	 */
+	public void record(File document, String hash){
+		hashes.put(document.getName(), hash);
+	}
+
+	/**
+	 * Writes the manifest. It is written to a temporary file first and then
+	 * moved over the old one, so a crash never leaves a partial manifest.
+	 * @throws IOException If the manifest cannot be written
+	 */
+	public void save() throws IOException{
+		File temp = new File(file.getPath() + ".tmp");
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(temp), StreamingDocxRenderer.UTF_8));
+		try{
+			// Sorted so the file is stable between runs
+			for(Map.Entry<String, String> entry:new TreeMap<String, String>(hashes).entrySet()){
+				writer.write(entry.getValue());
+				writer.write('\t');
+				writer.write(entry.getKey());
+				writer.newLine();
+			}
+		}
+		finally{
+			writer.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Returns the hash of the inputs of a comment sheet.
+	 */
+	public static String commentSheetHash(DocInfo info, QuestionSet questions){
+		return QuestionSet.hash(Arrays.asList("comment", DocInfoCsv.format(info), questions.getVersion()));
+	}
+
+	/**
+	 * Returns the hash of the inputs of an OIT scan sheet.
+	 */
+	public static String oitSheetHash(DocInfo info){
+		return QuestionSet.hash(Arrays.asList("oit", DocInfoCsv.format(info)));
+	}
+
+	/**
+	 * Returns the hash of the inputs of a merged OIT scan sheet document,
+	 * which changes if a sheet is added, removed, changed, or moved.
+	 */
+	public static String oitSheetsHash(List<DocInfo> infos){
+		ArrayList<String> lines = new ArrayList<String>(infos.size() + 1);
+		lines.add("oit-merged");
+		for(DocInfo info:infos){
+			lines.add(DocInfoCsv.format(info));
+		}
+		return QuestionSet.hash(lines);
+	}
+}
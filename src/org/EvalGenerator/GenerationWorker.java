@@ -0,0 +1,141 @@
+/**
+ * Runs the document generation steps off the Event Dispatch Thread. The steps
+ * are independent of each other (spreadsheet, comment sheet, OIT sheet), so
+ * they are all submitted at once and run concurrently, which makes the total
+ * time that of the slowest step. Progress is shown as the number of finished
+ * steps.
+ *
+ * cancelPendingSteps() stops the steps that have not started yet. Steps that
+ * are running are never interrupted, since that could leave a spreadsheet or
+ * document half written, and the worker waits for them, so done() only runs
+ * once nothing is being written any more. cancel() is not used for the same
+ * reason, it would run done() while steps are still running.
+ *
+ * The result is the list of failure messages of the steps that failed. Override
+ * done() to handle it on the Event Dispatch Thread.
+ */
+
+package org.EvalGenerator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.swing.JProgressBar;
+import javax.swing.SwingWorker;
+
+public class GenerationWorker extends SwingWorker<List<String>, Integer> {
+	//******************* DATA MEMBERS *******************
+	private final ExecutorService executor;
+	private final List<Task> tasks;
+	private final JProgressBar progressBar;
+
+	// Every step submitted so far, so the ones that have not started can be
+	// cancelled from the Event Dispatch Thread. Guards stopped too.
+	private final List<Future<Object>> submitted = new ArrayList<Future<Object>>();
+	private boolean stopped;
+
+	/**
+	 * One generation step along with the message shown if it fails.
+	 */
+	public static class Task {
+		private final String failureMessage;
+		private final Callable<?> work;
+
+		public Task(String failureMessage, Callable<?> work){
+			this.failureMessage = failureMessage;
+			this.work           = work;
+		}
+	}
+
+	//******************* CONSTRUCTORS *******************
+	/**
+	 * @param executor Runs the steps. Must have at least as many threads as there
+	 * are steps for them to run fully in parallel.
+	 * @param tasks Steps to run
+	 * @param progressBar Updated with the number of finished steps
+	 */
+	public GenerationWorker(ExecutorService executor, List<Task> tasks, JProgressBar progressBar){
+		this.executor    = executor;
+		this.tasks       = new ArrayList<Task>(tasks);
+		this.progressBar = progressBar;
+
+		progressBar.setMinimum(0);
+		progressBar.setMaximum(tasks.size());
+		progressBar.setValue(0);
+	}
+
+	//******************* PUBLIC METHODS *******************
+	/**
+	 * Cancels the steps that have not started yet and lets the running ones
+	 * finish. done() runs once they have.
+	 */
+	public void cancelPendingSteps(){
+		synchronized(submitted){
+			stopped = true;
+			for(Future<Object> future:submitted){
+				future.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if cancelPendingSteps() was called.
+	 */
+	public boolean isStopped(){
+		synchronized(submitted){
+			return stopped;
+		}
+	}
+
+	//******************* PROTECTED METHODS *******************
+	@Override
+	protected List<String> doInBackground() throws Exception {
+		CompletionService<Object> completion = new ExecutorCompletionService<Object>(executor);
+		HashMap<Future<Object>, Task> running = new HashMap<Future<Object>, Task>();
+		ArrayList<String> errors = new ArrayList<String>();
+
+		for(final Task task:tasks){
+			synchronized(submitted){
+				Future<Object> future = completion.submit(new Callable<Object>(){
+					public Object call() throws Exception {
+						return task.work.call();
+					}
+				});
+				running.put(future, task);
+				submitted.add(future);
+				if(stopped){
+					future.cancel(false);
+				}
+			}
+		}
+
+		// A cancelled step is taken from the completion service like a finished one
+		for(int finished = 1; finished <= tasks.size(); finished++){
+			Future<Object> future = completion.take();
+			Task task = running.remove(future);
+			try {
+				future.get();
+			} catch (CancellationException e) {
+				// Cancelled before it started, nothing was written
+			} catch (ExecutionException e) {
+				e.getCause().printStackTrace();
+				errors.add(task.failureMessage);
+			}
+			publish(finished);
+		}
+		return errors;
+	}
+
+	@Override
+	protected void process(List<Integer> finished){
+		progressBar.setValue(finished.get(finished.size() - 1));
+	}
+}
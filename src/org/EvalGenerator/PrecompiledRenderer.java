@@ -0,0 +1,48 @@
+/**
+ * Renders comment sheets from a CompiledCommentTemplate, which is compiled
+ * once per question set and cached on it. OIT scan sheets have no shared
+ * content beyond the labels, so they are rendered by a StreamingDocxRenderer.
+ */
+
+package org.EvalGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.List;
+
+public class PrecompiledRenderer implements DocumentRenderer {
+	//******************* DATA MEMBERS *******************
+	private final StreamingDocxRenderer streaming = new StreamingDocxRenderer();
+
+	//******************* PUBLIC METHODS *******************
+	@Override
+	public void renderCommentSheet(DocInfo info, QuestionSet questions, OutputStream out) throws IOException{
+		templateFor(questions).render(info, out);
+	}
+
+	@Override
+	public void renderOITSheet(DocInfo info, Date requestDate, OutputStream out) throws IOException{
+		streaming.renderOITSheet(info, requestDate, out);
+	}
+
+	@Override
+	public void renderOITSheets(List<DocInfo> infos, Date requestDate, OutputStream out) throws IOException{
+		streaming.renderOITSheets(infos, requestDate, out);
+	}
+
+	//******************* PRIVATE METHODS *******************
+	/**
+	 * Returns the compiled template for the questions, compiling it the first
+	 * time the question set is used. Two threads may both compile a new set,
+	 * which is harmless since only one of the templates is kept.
+	 */
+	private CompiledCommentTemplate templateFor(QuestionSet questions) throws IOException{
+		CompiledCommentTemplate template = (CompiledCommentTemplate) questions.getSection(this);
+		if(template == null){
+			template = (CompiledCommentTemplate) questions.cacheSection(this,
+					CompiledCommentTemplate.compile(questions));
+		}
+		return template;
+	}
+}
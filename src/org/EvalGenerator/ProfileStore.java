@@ -0,0 +1,361 @@
+/**
+ * Saved courses and window settings of the user interface, kept in one file.
+ * A profile is the information of one class, named after its instructor and
+ * course, so the courses of many instructors can be remembered and switched
+ * between. Profiles are listed with the most recently used first, and are
+ * kept in the file with the most recently used last.
+ *
+ * The file is read once when the store is loaded and everything is then kept
+ * in memory. Changes are written behind: the first change schedules a write
+ * on a background thread a moment later, and any further changes made before
+ * it runs are written by that same write. The file is replaced atomically, so
+ * it is never left half written. close() writes any pending changes at once.
+ *
+ * File format, one entry per line:
+ *   EVALGEN-PROFILES 1
+ *   setting	<key>	<value>
+ *   profile	<class in spreadsheet CSV format>
+ */
+
+package org.EvalGenerator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class ProfileStore implements Closeable {
+	public static final String PROFILE_FILE_PATH = "files/profiles.txt";
+	private static final String MAGIC = "EVALGEN-PROFILES 1";
+	private static final String SETTING = "setting";
+	private static final String PROFILE = "profile";
+	// How long changes are collected before they are written
+	private static final long WRITE_DELAY_MILLIS = 500;
+
+	//******************* DATA MEMBERS *******************
+	private final File file;
+	// Profile name to class in CSV format, most recently used last
+	private final LinkedHashMap<String, String> profiles = new LinkedHashMap<String, String>();
+	private final TreeMap<String, String> settings = new TreeMap<String, String>();
+	// Number of changes made, and how many of them are in the file
+	private long changes;
+	private long written;
+	private boolean writeScheduled;
+	private boolean closed;
+
+	// Only one write at a time, so an older snapshot never replaces a newer one
+	private final Object writeLock = new Object();
+	private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+		public Thread newThread(Runnable r){
+			Thread thread = new Thread(r, "Profile store writer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private final Runnable writeTask = new Runnable(){
+		public void run(){
+			try {
+				write();
+			} catch (IOException e) {
+				System.out.println("Unable to save profiles: " + e.getMessage());
+			}
+		}
+	};
+
+	//******************* CONSTRUCTORS *******************
+	private ProfileStore(File file){
+		this.file = file;
+	}
+
+	//******************* PUBLIC METHODS *******************
+	/**
+	 * Loads the profile store from a file. A missing file gives an empty
+	 * store, and lines that cannot be read are skipped.
+	 */
+	public static ProfileStore load(File file){
+		ProfileStore store = new ProfileStore(file);
+		try {
+			store.read();
+		} catch (IOException e) {
+			System.out.println("Unable to read profiles: " + e.getMessage());
+		}
+		return store;
+	}
+
+	/**
+	 * Returns true if no profiles have been saved.
+	 */
+	public synchronized boolean isEmpty(){
+		return profiles.isEmpty();
+	}
+
+	/**
+	 * Returns the names of all profiles, most recently used first.
+	 */
+	public synchronized List<String> getNames(){
+		ArrayList<String> names = new ArrayList<String>(profiles.keySet());
+		Collections.reverse(names);
+		return names;
+	}
+
+	/**
+	 * Returns the most recently used profile, or null if there are none.
+	 */
+	public synchronized DocInfo getLastUsed(){
+		String last = null;
+		for(String line:profiles.values()){
+			last = line;
+		}
+		return last != null ? DocInfoCsv.parse(last) : null;
+	}
+
+	/**
+	 * Returns a copy of a profile, or null if there is no profile with the name.
+	 */
+	public synchronized DocInfo get(String name){
+		String line = profiles.get(name);
+		return line != null ? DocInfoCsv.parse(line) : null;
+	}
+
+	/**
+	 * Returns every profile, most recently used first.
+	 */
+	public synchronized List<DocInfo> getAll(){
+		ArrayList<DocInfo> infos = new ArrayList<DocInfo>(profiles.size());
+		for(String line:profiles.values()){
+			infos.add(DocInfoCsv.parse(line));
+		}
+		Collections.reverse(infos);
+		return infos;
+	}
+
+	/**
+	 * Saves a class as the most recently used profile, replacing any profile
+	 * with the same name. Returns without waiting for the file to be written.
+	 * @return Name of the profile
+	 */
+	public synchronized String save(DocInfo info){
+		String name = nameOf(info);
+		// Removed first so it moves to the end
+		profiles.remove(name);
+		profiles.put(name, DocInfoCsv.format(info));
+		changed();
+		return name;
+	}
+
+	/**
+	 * Removes a profile. Returns without waiting for the file to be written.
+	 */
+	public synchronized void remove(String name){
+		if(profiles.remove(name) != null){
+			changed();
+		}
+	}
+
+	/**
+	 * Returns the value of a setting, or the default if it has not been set.
+	 */
+	public synchronized String getSetting(String key, String defaultValue){
+		String value = settings.get(key);
+		return value != null ? value : defaultValue;
+	}
+
+	/**
+	 * Sets a setting. Returns without waiting for the file to be written.
+	 */
+	public synchronized void putSetting(String key, String value){
+		if(value == null){
+			if(settings.remove(key) != null){
+				changed();
+			}
+		}
+		else if(!value.equals(settings.put(key, value))){
+			changed();
+		}
+	}
+
+	/**
+	 * Returns the name a class is saved under: its instructor and course.
+	 */
+	public static String nameOf(DocInfo info){
+		return info.getInstLName() + ", " + info.getInstFName() + " - "
+				+ info.getSubject() + " " + info.getCourseNum() + " " + info.getSection();
+	}
+
+	/**
+	 * Writes any changes that have not been written yet, waiting until they are
+	 * in the file.
+	 */
+	public void flush() throws IOException{
+		write();
+	}
+
+	/**
+	 * Writes any pending changes and stops the background writer. Changes made
+	 * after this are kept in memory only.
+	 */
+	@Override
+	public void close() throws IOException{
+		synchronized(this){
+			if(closed){
+				return;
+			}
+			closed = true;
+		}
+		writer.shutdown();
+		write();
+	}
+
+	//******************* PRIVATE METHODS *******************
+	/**
+	 * Records a change and schedules a write if none is waiting. Called while
+	 * holding the store's monitor.
+	 */
+	private void changed(){
+		changes++;
+		if(!writeScheduled && !closed){
+			writeScheduled = true;
+			writer.schedule(writeTask, WRITE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void read() throws IOException{
+		BufferedReader reader;
+		try {
+			reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), StreamingDocxRenderer.UTF_8));
+		} catch (FileNotFoundException e) {
+			return;
+		}
+
+		try{
+			String line = reader.readLine();
+			if(line == null || !line.equals(MAGIC)){
+				System.out.println("Not a profile file: " + file);
+				return;
+			}
+			while((line = reader.readLine()) != null){
+				String[] columns = line.split("\t", 3);
+				try {
+					if(columns.length == 3 && columns[0].equals(SETTING)){
+						settings.put(unescape(columns[1]), unescape(columns[2]));
+					}
+					else if(columns.length == 2 && columns[0].equals(PROFILE)){
+						String name = nameOf(DocInfoCsv.parse(columns[1]));
+						profiles.remove(name);
+						profiles.put(name, columns[1]);
+					}
+				} catch (IllegalArgumentException e) {
+					System.out.println("Skipping damaged profile: " + line);
+				}
+			}
+		}
+		finally{
+			reader.close();
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the store if it has changed since the last write.
+	 */
+	private void write() throws IOException{
+		synchronized(writeLock){
+			long snapshotChanges;
+			ArrayList<String> lines = new ArrayList<String>();
+			synchronized(this){
+				writeScheduled = false;
+				if(changes == written){
+					return;
+				}
+				snapshotChanges = changes;
+				for(Map.Entry<String, String> setting:settings.entrySet()){
+					lines.add(SETTING + "\t" + escape(setting.getKey()) + "\t" + escape(setting.getValue()));
+				}
+				for(String profile:profiles.values()){
+					lines.add(PROFILE + "\t" + profile);
+				}
+			}
+
+			File parent = file.getAbsoluteFile().getParentFile();
+			if(parent != null){
+				parent.mkdirs();
+			}
+			File temp = new File(file.getPath() + ".tmp");
+			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(temp), StreamingDocxRenderer.UTF_8));
+			try{
+				out.write(MAGIC);
+				out.newLine();
+				for(String line:lines){
+					out.write(line);
+					out.newLine();
+				}
+			}
+			finally{
+				out.close();
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+
+			synchronized(this){
+				written = snapshotChanges;
+			}
+		}
+	}
+
+	/**
+	 * Escapes backslashes, tabs and line breaks so a value fits on one line.
+	 */
+	private static String escape(String value){
+		StringBuilder escaped = new StringBuilder(value.length());
+		for(int i = 0; i < value.length(); i++){
+			char c = value.charAt(i);
+			switch(c){
+			case '\\': escaped.append("\\\\"); break;
+			case '\t': escaped.append("\\t");  break;
+			case '\n': escaped.append("\\n");  break;
+			case '\r': escaped.append("\\r");  break;
+			default:   escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+
+	private static String unescape(String value){
+		StringBuilder unescaped = new StringBuilder(value.length());
+		for(int i = 0; i < value.length(); i++){
+			char c = value.charAt(i);
+			if(c == '\\' && i + 1 < value.length()){
+				char next = value.charAt(++i);
+				switch(next){
+				case 't': unescaped.append('\t'); break;
+				case 'n': unescaped.append('\n'); break;
+				case 'r': unescaped.append('\r'); break;
+				default:  unescaped.append(next);
+				}
+			}
+			else{
+				unescaped.append(c);
+			}
+		}
+		return unescaped.toString();
+	}
+}
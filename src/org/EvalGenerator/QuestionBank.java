@@ -0,0 +1,237 @@
+/**
+ * Holds the current evaluation questions and keeps them up to date with the
+ * question files: the default question file and the per subject and per course
+ * files in the questions directory (see QuestionSetIndex). A WatchService on
+ * their directories reloads the questions whenever a file is changed, so edits
+ * are picked up without restarting.
+ *
+ * Every reload creates a new QuestionSetIndex and swaps it in atomically.
+ * Callers take a snapshot with getIndex() or get() once per document, so a
+ * document that is being rendered keeps the questions it started with while
+ * documents started after the swap use the new ones. The prebuilt question
+ * sections are cached on each QuestionSet, and sets that did not change are
+ * carried over to the new index, so sections are built once per change rather
+ * than once per document.
+ */
+
+package org.EvalGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class QuestionBank {
+	// Editors often write a file in several steps. Changes are only reloaded
+	// once the files have been quiet for this long.
+	private static final long SETTLE_MILLIS = 200;
+
+	//******************* DATA MEMBERS *******************
+	private final File file;
+	private final File directory;
+	private final AtomicReference<QuestionSetIndex> current;
+	// Incremented every time different questions are swapped in
+	private final AtomicLong revision = new AtomicLong();
+
+	private WatchService watcher;
+
+	//******************* CONSTRUCTORS *******************
+	/**
+	 * Creates a bank for a default question file without subject or course
+	 * questions. It is empty until reload() is called.
+	 * @param file File with one question per line
+	 */
+	public QuestionBank(File file){
+		this(file, null);
+	}
+
+	/**
+	 * Creates a bank for a default question file and a directory of subject
+	 * and course question files. It is empty until reload() is called.
+	 * @param file File with one question per line
+	 * @param directory Directory of SUBJECT.txt and SUBJECT-COURSE.txt files, or null
+	 */
+	public QuestionBank(File file, File directory){
+		this.file      = file.getAbsoluteFile();
+		this.directory = directory != null ? directory.getAbsoluteFile() : null;
+		this.current   = new AtomicReference<QuestionSetIndex>(
+				new QuestionSetIndex(new QuestionSet(new ArrayList<String>())));
+	}
+
+	/**
+	 * Creates a bank that always holds the same questions and is not backed
+	 * by a file.
+	 */
+	public QuestionBank(QuestionSet questions){
+		this(new QuestionSetIndex(questions));
+	}
+
+	/**
+	 * Creates a bank that always holds the same index and is not backed by files.
+	 */
+	public QuestionBank(QuestionSetIndex index){
+		this.file      = null;
+		this.directory = null;
+		this.current   = new AtomicReference<QuestionSetIndex>(index);
+	}
+
+	//******************* PUBLIC METHODS *******************
+	/**
+	 * Returns the current default questions. Take one snapshot per document
+	 * and use it for the whole document.
+	 */
+	public QuestionSet get(){
+		return current.get().getDefault();
+	}
+
+	/**
+	 * Returns the current index of default, subject, and course questions.
+	 */
+	public QuestionSetIndex getIndex(){
+		return current.get();
+	}
+
+	/**
+	 * Returns the number of times the questions have changed since the bank
+	 * was created. Together with QuestionSet.getVersion() it identifies a reload.
+	 */
+	public long getRevision(){
+		return revision.get();
+	}
+
+	/**
+	 * Reads the question files and swaps in the new questions. If nothing
+	 * changed, the current index is kept along with its prebuilt sections.
+	 * @return The current index after the reload
+	 * @throws IOException If a file cannot be read. The current questions are kept.
+	 */
+	public QuestionSetIndex reload() throws IOException{
+		if(file == null){
+			return current.get();
+		}
+
+		while(true){
+			QuestionSetIndex previous = current.get();
+
+			QuestionSet defaults = QuestionSet.load(file);
+			if(defaults.getVersion().equals(previous.getDefault().getVersion())){
+				defaults = previous.getDefault();
+			}
+			QuestionSetIndex loaded = directory != null
+					? QuestionSetIndex.load(directory, defaults, previous)
+					: new QuestionSetIndex(defaults);
+
+			if(loaded.hasSameQuestions(previous)){
+				return previous;
+			}
+			if(current.compareAndSet(previous, loaded)){
+				System.out.println("Questions reloaded, revision " + revision.incrementAndGet()
+						+ ": " + loaded);
+				return loaded;
+			}
+		}
+	}
+
+	/**
+	 * Starts a daemon thread that reloads the questions whenever a question
+	 * file is created, modified, or deleted. Does nothing if the bank is not
+	 * backed by files or is already watching. A questions directory that does
+	 * not exist yet is not watched.
+	 * @throws IOException If the directories cannot be watched
+	 */
+	public synchronized void startWatching() throws IOException{
+		if(file == null || watcher != null){
+			return;
+		}
+
+		final WatchService service = FileSystems.getDefault().newWatchService();
+		file.getParentFile().toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+		if(directory != null && directory.isDirectory()){
+			directory.toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+		}
+		watcher = service;
+
+		Thread thread = new Thread(new Runnable(){
+			public void run(){
+				watch(service);
+			}
+		}, "Question file watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops watching the question files. The current questions are kept.
+	 */
+	public synchronized void stopWatching(){
+		if(watcher != null){
+			try {
+				watcher.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			watcher = null;
+		}
+	}
+
+	//******************* PRIVATE METHODS *******************
+	private void watch(WatchService service){
+		try {
+			while(true){
+				WatchKey key = service.take();
+				boolean changed = isQuestionFileEvent(key);
+
+				// Wait for the files to settle, collecting any further events
+				while((key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null){
+					changed |= isQuestionFileEvent(key);
+				}
+
+				if(changed){
+					try {
+						reload();
+					} catch (IOException e) {
+						System.out.println("Unable to reload questions, keeping current ones: " + e.getMessage());
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// Stop watching
+		} catch (ClosedWatchServiceException e) {
+			// stopWatching() was called
+		}
+	}
+
+	/**
+	 * Returns true if any of the key's events are for a question file, or
+	 * if events were lost and one may have changed. Resets the key.
+	 */
+	private boolean isQuestionFileEvent(WatchKey key){
+		Path watched = (Path) key.watchable();
+		boolean questionDirectory = directory != null && watched.equals(directory.toPath());
+
+		boolean matches = false;
+		for(WatchEvent<?> event:key.pollEvents()){
+			if(event.kind() == StandardWatchEventKinds.OVERFLOW){
+				matches = true;
+				continue;
+			}
+			String name = ((Path) event.context()).getFileName().toString();
+			if(questionDirectory ? QuestionSetIndex.isQuestionFile(name) : file.getName().equals(name)){
+				matches = true;
+			}
+		}
+		key.reset();
+		return matches;
+	}
+}
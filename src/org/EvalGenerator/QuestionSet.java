@@ -0,0 +1,129 @@
+/**
+ * An immutable list of evaluation questions for the comment sheet. The
+ * version is a hash of the questions, so two sets with the same questions
+ * have the same version.
+ *
+ * The question section of the comment sheet only depends on the questions,
+ * so renderers that write it as bytes build it once and cache it on the set.
+ * The cached sections live as long as the set does and are never shared with
+ * a different set.
+ */
+
+package org.EvalGenerator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class QuestionSet {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	//******************* DATA MEMBERS *******************
+	private final List<String> questions;
+	private final String version;
+
+	// Question sections prebuilt by renderers, keyed by renderer
+	private final ConcurrentHashMap<Object, Object> sections = new ConcurrentHashMap<Object, Object>();
+
+	//******************* CONSTRUCTORS *******************
+	/**
+	 * @param questions Questions in the order they appear on the comment sheet
+	 */
+	public QuestionSet(List<String> questions){
+		this.questions = Collections.unmodifiableList(new ArrayList<String>(questions));
+		this.version   = hash(this.questions);
+	}
+
+	//******************* PUBLIC METHODS *******************
+	/**
+	 * Reads questions from a file, one question per line.
+	 * @param file File containing the questions
+	 * @return Questions in the order they appear in the file
+	 * @throws IOException If the file cannot be read
+	 */
+	public static QuestionSet load(File file) throws IOException{
+		ArrayList<String> questions = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try{
+			String line;
+			while((line = reader.readLine()) != null){
+				questions.add(line);
+			}
+		}
+		finally{
+			reader.close();
+		}
+		return new QuestionSet(questions);
+	}
+
+	public List<String> getQuestions(){
+		return questions;
+	}
+
+	/**
+	 * Returns a hash of the questions as a hex string.
+	 */
+	public String getVersion(){
+		return version;
+	}
+
+	public int size(){
+		return questions.size();
+	}
+
+	public String toString(){
+		return "QuestionSet " + version + " (" + questions.size() + " questions)";
+	}
+
+	//******************* PACKAGE METHODS *******************
+	/**
+	 * Returns the section cached by a renderer, or null if it has not been built.
+	 */
+	Object getSection(Object renderer){
+		return sections.get(renderer);
+	}
+
+	/**
+	 * Caches a section built by a renderer. If another thread cached one first,
+	 * that section is returned instead so all documents share the same one.
+	 */
+	Object cacheSection(Object renderer, Object section){
+		Object existing = sections.putIfAbsent(renderer, section);
+		return existing != null ? existing : section;
+	}
+
+	/**
+	 * Returns a hex hash of a list of lines. Also used for other inputs that
+	 * need a short, stable fingerprint, see GenerationManifest.
+	 */
+	static String hash(List<String> lines){
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for(String line:lines){
+				digest.update(line.getBytes(UTF_8));
+				digest.update((byte) '\n');
+			}
+			byte[] bytes = digest.digest();
+
+			// The first 8 bytes are plenty to tell question sets apart
+			char[] hex = new char[16];
+			for(int i = 0; i < 8; i++){
+				hex[i * 2]     = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+				hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+			}
+			return new String(hex);
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+}
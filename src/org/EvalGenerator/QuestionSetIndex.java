@@ -0,0 +1,164 @@
+/**
+ * Resolves the evaluation questions for a class. Departments can have their
+ * own questions for a subject or for a single course. The questions directory
+ * holds one file per subject or course, named SUBJECT.txt or
+ * SUBJECT-COURSE.txt (for example CST.txt or CST-101.txt), in the same format
+ * as the default question file. A class uses the most specific set:
+ * its course, then its subject, then the default questions.
+ *
+ * An index is an immutable snapshot. Resolving is a couple of hash lookups,
+ * and the result for each subject and course is cached, so a batch with many
+ * subjects does not repeat the lookup per record. Every class that resolves
+ * to the same set shares the same QuestionSet, so its prebuilt question
+ * section is built once. QuestionBank swaps in a new index when the files change.
+ */
+
+package org.EvalGenerator;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class QuestionSetIndex {
+	public static final String QUESTION_DIRECTORY = "files/textDocs/questions";
+	private static final String EXTENSION = ".txt";
+
+	//******************* DATA MEMBERS *******************
+	private final QuestionSet defaults;
+	// Keyed by SUBJECT or SUBJECT-COURSE in upper case
+	private final Map<String, QuestionSet> sets;
+	// Resolved questions keyed by subject and course of the class
+	private final ConcurrentHashMap<String, QuestionSet> resolved = new ConcurrentHashMap<String, QuestionSet>();
+
+	//******************* CONSTRUCTORS *******************
+	/**
+	 * Creates an index with only the default questions.
+	 */
+	public QuestionSetIndex(QuestionSet defaults){
+		this(defaults, Collections.<String, QuestionSet>emptyMap());
+	}
+
+	/**
+	 * @param defaults Questions for classes without their own set
+	 * @param sets Question sets keyed by SUBJECT or SUBJECT-COURSE
+	 */
+	public QuestionSetIndex(QuestionSet defaults, Map<String, QuestionSet> sets){
+		HashMap<String, QuestionSet> normalized = new HashMap<String, QuestionSet>();
+		for(Map.Entry<String, QuestionSet> entry:sets.entrySet()){
+			normalized.put(normalize(entry.getKey()), entry.getValue());
+		}
+		this.defaults = defaults;
+		this.sets     = Collections.unmodifiableMap(normalized);
+	}
+
+	//******************* PUBLIC METHODS *******************
+	/**
+	 * Reads every question file in a directory. A missing directory gives an
+	 * index with only the default questions. Sets whose questions are the same
+	 * as in the previous index are reused, keeping their prebuilt sections.
+	 * @param directory Directory of SUBJECT.txt and SUBJECT-COURSE.txt files
+	 * @param defaults Questions for classes without their own set
+	 * @param previous Index being replaced, or null
+	 * @throws IOException If a question file cannot be read
+	 */
+	public static QuestionSetIndex load(File directory, QuestionSet defaults,
+			QuestionSetIndex previous) throws IOException{
+		File[] files = directory.listFiles(new FileFilter(){
+			public boolean accept(File file){
+				return file.isFile() && isQuestionFile(file.getName());
+			}
+		});
+		if(files == null){
+			return new QuestionSetIndex(defaults);
+		}
+
+		HashMap<String, QuestionSet> sets = new HashMap<String, QuestionSet>();
+		for(File file:files){
+			String name = file.getName();
+			String key = normalize(name.substring(0, name.length() - EXTENSION.length()));
+			QuestionSet loaded = QuestionSet.load(file);
+
+			QuestionSet old = previous != null ? previous.sets.get(key) : null;
+			sets.put(key, old != null && old.getVersion().equals(loaded.getVersion()) ? old : loaded);
+		}
+		return new QuestionSetIndex(defaults, sets);
+	}
+
+	/**
+	 * Returns true if a file name in the questions directory is a question file.
+	 */
+	public static boolean isQuestionFile(String name){
+		return name.toLowerCase(Locale.ENGLISH).endsWith(EXTENSION) && name.length() > EXTENSION.length();
+	}
+
+	/**
+	 * Returns the questions for a class: the set for its course, else the set
+	 * for its subject, else the default questions.
+	 */
+	public QuestionSet resolve(DocInfo info){
+		return resolve(info.getSubject(), info.getCourseNum());
+	}
+
+	/**
+	 * Returns the questions for a subject and course number.
+	 */
+	public QuestionSet resolve(String subject, String courseNum){
+		String subjectKey = normalize(subject);
+		String courseKey = subjectKey + "-" + normalize(courseNum);
+
+		QuestionSet questions = resolved.get(courseKey);
+		if(questions == null){
+			questions = sets.get(courseKey);
+			if(questions == null){
+				questions = sets.get(subjectKey);
+			}
+			if(questions == null){
+				questions = defaults;
+			}
+			resolved.put(courseKey, questions);
+		}
+		return questions;
+	}
+
+	public QuestionSet getDefault(){
+		return defaults;
+	}
+
+	/**
+	 * Returns the subject and course sets keyed by SUBJECT or SUBJECT-COURSE.
+	 */
+	public Map<String, QuestionSet> getSets(){
+		return sets;
+	}
+
+	/**
+	 * Returns true if the other index resolves every class to questions with
+	 * the same versions.
+	 */
+	public boolean hasSameQuestions(QuestionSetIndex other){
+		if(!defaults.getVersion().equals(other.defaults.getVersion())
+				|| !sets.keySet().equals(other.sets.keySet())){
+			return false;
+		}
+		for(Map.Entry<String, QuestionSet> entry:sets.entrySet()){
+			if(!entry.getValue().getVersion().equals(other.sets.get(entry.getKey()).getVersion())){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public String toString(){
+		return "QuestionSetIndex (default " + defaults + ", " + sets.size() + " subject and course sets)";
+	}
+
+	//******************* PRIVATE METHODS *******************
+	private static String normalize(String key){
+		return key == null ? "" : key.trim().toUpperCase(Locale.ENGLISH);
+	}
+}
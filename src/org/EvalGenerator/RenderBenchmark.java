@@ -0,0 +1,118 @@
+/**
+ * Measures the time and heap allocation needed to render one comment sheet
+ * with each DocumentRenderer. Used to check rendering changes, for example
+ * that allocation does not grow with the number of cells.
+ *
+ * Can be run from the command line:
+ * RenderBenchmark [questions] [documents]
+ * Defaults to 100 questions and 200 documents per renderer.
+ */
+
+package org.EvalGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.EvalGenerator.DocInfo.Semester;
+
+public class RenderBenchmark {
+	//******************* CONSTRUCTORS *******************
+	private RenderBenchmark(){
+	}
+
+	//******************* PUBLIC METHODS *******************
+	public static void main(String[] args) throws IOException {
+		int questionCount = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		int documents = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		List<String> questionList = new ArrayList<String>(questionCount);
+		for(int i = 1; i <= questionCount; i++){
+			questionList.add(i + ". What could the instructor do to improve this course?");
+		}
+		QuestionSet questions = new QuestionSet(questionList);
+		DocInfo info = new DocInfo("Jane", "Doe", "CST", "101", "WN123", "2015",
+				"John Smith", "1234", "M45", Semester.Fall);
+
+		DocumentRenderer[] renderers = { new Docx4jRenderer(), new StreamingDocxRenderer(),
+				new PrecompiledRenderer() };
+
+		System.out.println(questionCount + " questions, " + documents + " documents per renderer");
+		for(DocumentRenderer renderer:renderers){
+			// Warm up so class loading, JIT compilation, and building the
+			// question section are not measured
+			measure(renderer, info, questions, Math.max(1, documents / 4));
+			measure(renderer, info, questions, documents).print(renderer.getClass().getSimpleName());
+		}
+	}
+
+	//******************* PRIVATE METHODS *******************
+	private static Result measure(DocumentRenderer renderer, DocInfo info,
+			QuestionSet questions, int documents) throws IOException{
+		CountingOutputStream out = new CountingOutputStream();
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+
+		for(int i = 0; i < documents; i++){
+			renderer.renderCommentSheet(info, questions, out);
+		}
+
+		long elapsed = System.nanoTime() - start;
+		long allocated = allocatedBytes() - allocatedBefore;
+		return new Result(documents, elapsed, allocatedBefore < 0 ? -1 : allocated, out.count);
+	}
+
+	/**
+	 * Bytes allocated by the current thread, or -1 if the JVM does not report it.
+	 */
+	private static long allocatedBytes(){
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(threads instanceof com.sun.management.ThreadMXBean){
+			return ((com.sun.management.ThreadMXBean) threads)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static class Result {
+		private final int documents;
+		private final long elapsedNanos;
+		private final long allocatedBytes;
+		private final long outputBytes;
+
+		private Result(int documents, long elapsedNanos, long allocatedBytes, long outputBytes){
+			this.documents      = documents;
+			this.elapsedNanos   = elapsedNanos;
+			this.allocatedBytes = allocatedBytes;
+			this.outputBytes    = outputBytes;
+		}
+
+		private void print(String name){
+			System.out.println(String.format("%-24s %8.2f ms/doc %10s KB allocated/doc %8d bytes/doc",
+					name,
+					elapsedNanos / 1000000.0 / documents,
+					allocatedBytes < 0 ? "n/a" : String.valueOf(allocatedBytes / 1024 / documents),
+					outputBytes / documents));
+		}
+	}
+
+	/**
+	 * Discards everything written to it, only counting the bytes.
+	 */
+	private static class CountingOutputStream extends OutputStream {
+		private long count;
+
+		@Override
+		public void write(int b){
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len){
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/**
+ * Checks that the renderers produce the same documents as Docx4jRenderer.
+ * Renders a comment sheet, an OIT scan sheet and merged OIT scan sheets with
+ * each renderer and compares the packages: they must have the same parts,
+ * and each part the same elements, attributes and text. Namespace prefixes
+ * and declarations are not compared, Docx4j declares more of them once it
+ * has loaded more of its classes.
+ *
+ * Docx4j adds Word 2010 and 2013 markup to some paragraphs, marks it as
+ * ignorable, and writes a bold toggle as val="true". None of this changes
+ * the document, so it is ignored too. The values include markup characters, a carriage return and
+ * non-ASCII text. Control characters are left out, Docx4j writes them into
+ * the document as is, which makes it invalid XML.
+ *
+ * The renderers are not checked anywhere else, and they have drifted apart
+ * before (page size, package parts, escaping of carriage returns). Run this
+ * after changing Docx4jRenderer, StreamingDocxRenderer, PrecompiledRenderer,
+ * CompiledCommentTemplate, or SheetLayout, and before committing the change.
+ * Run it from Eclipse as a Java Application, or from the command line with
+ * the compiled classes and the Docx4j jars on the class path:
+ * java -cp bin:docx4j-3.1.0.jar:dependencies/* org.EvalGenerator.RendererComparison
+ * (use ; instead of : on Windows). It prints each difference and exits with
+ * 1 if there is one, or prints "All documents match" and exits with 0.
+ */
+
+package org.EvalGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.EvalGenerator.DocInfo.Semester;
+
+public class RendererComparison {
+	// Namespaces of the Word 2010 and 2013 markup Docx4j adds, and of the
+	// attribute marking it as ignorable
+	private static final List<String> IGNORED_NAMESPACES = Arrays.asList(
+			"http://schemas.microsoft.com/office/word/2010/wordml",
+			"http://schemas.microsoft.com/office/word/2012/wordml",
+			"http://schemas.openxmlformats.org/markup-compatibility/2006");
+
+	//******************* CONSTRUCTORS *******************
+	private RendererComparison(){
+	}
+
+	//******************* PUBLIC METHODS *******************
+	public static void main(String[] args) throws IOException {
+		QuestionSet questions = new QuestionSet(Arrays.asList(
+				"1. What did the instructor do well?",
+				"2. What could be improved in \"Labs & <Projects>\"?",
+				"3. Any other comments for the instructor?\r\n"));
+		DocInfo info = new DocInfo("Zo\u00EB", "O'Brien & Sons", "CST", "101", "WN<1>", "2015",
+				"Jos\u00E9 Smith", "1234", "M45\r", Semester.Fall);
+		DocInfo other = new DocInfo("Jane", "Doe", "MTH", "251", "A", "2016",
+				"John Smith", "5678", "M12", Semester.Spring);
+		Date requestDate = new Date();
+
+		DocumentRenderer expected = new Docx4jRenderer();
+		DocumentRenderer[] renderers = { new StreamingDocxRenderer(), new PrecompiledRenderer() };
+
+		int differences = 0;
+		for(DocumentRenderer renderer:renderers){
+			String name = renderer.getClass().getSimpleName();
+
+			ByteArrayOutputStream want = new ByteArrayOutputStream();
+			ByteArrayOutputStream got = new ByteArrayOutputStream();
+			expected.renderCommentSheet(info, questions, want);
+			renderer.renderCommentSheet(info, questions, got);
+			differences += compare(name + " comment sheet", want.toByteArray(), got.toByteArray());
+
+			want.reset();
+			got.reset();
+			expected.renderOITSheet(info, requestDate, want);
+			renderer.renderOITSheet(info, requestDate, got);
+			differences += compare(name + " OIT scan sheet", want.toByteArray(), got.toByteArray());
+
+			want.reset();
+			got.reset();
+			expected.renderOITSheets(Arrays.asList(info, other), requestDate, want);
+			renderer.renderOITSheets(Arrays.asList(info, other), requestDate, got);
+			differences += compare(name + " merged OIT scan sheets", want.toByteArray(), got.toByteArray());
+		}
+
+		System.out.println(differences == 0 ? "All documents match" : differences + " differences");
+		System.exit(differences == 0 ? 0 : 1);
+	}
+
+	//******************* PRIVATE METHODS *******************
+	/**
+	 * Compares two packages and prints the differences.
+	 * @return Number of differences
+	 */
+	private static int compare(String document, byte[] expected, byte[] actual) throws IOException{
+		TreeMap<String, byte[]> expectedParts = readParts(expected);
+		TreeMap<String, byte[]> actualParts = readParts(actual);
+		int differences = 0;
+
+		if(!expectedParts.keySet().equals(actualParts.keySet())){
+			System.out.println(document + ": parts " + actualParts.keySet() + ", expected " + expectedParts.keySet());
+			differences++;
+		}
+		for(String part:expectedParts.keySet()){
+			if(!actualParts.containsKey(part)){
+				continue;
+			}
+			List<String> want = canonical(expectedParts.get(part));
+			List<String> got = canonical(actualParts.get(part));
+			for(int i = 0; i < Math.max(want.size(), got.size()); i++){
+				String wanted = i < want.size() ? want.get(i) : "(end)";
+				String found = i < got.size() ? got.get(i) : "(end)";
+				if(!wanted.equals(found)){
+					System.out.println(document + ": " + part + " item " + i + " is " + found + ", expected " + wanted);
+					differences++;
+					break;
+				}
+			}
+		}
+		return differences;
+	}
+
+	private static TreeMap<String, byte[]> readParts(byte[] docx) throws IOException{
+		TreeMap<String, byte[]> parts = new TreeMap<String, byte[]>();
+		ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(docx));
+		try{
+			ZipEntry entry;
+			while((entry = zip.getNextEntry()) != null){
+				ByteArrayOutputStream part = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				int read;
+				while((read = zip.read(buffer)) > 0){
+					part.write(buffer, 0, read);
+				}
+				parts.put(entry.getName(), part.toByteArray());
+			}
+		}
+		finally{
+			zip.close();
+		}
+		return parts;
+	}
+
+	/**
+	 * Lists the elements of a document with their attributes in order of
+	 * name, and the text between them, leaving out the ignored markup.
+	 */
+	private static List<String> canonical(byte[] document) throws IOException{
+		ArrayList<String> items = new ArrayList<String>();
+		StringBuilder text = new StringBuilder();
+		try {
+			XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(document));
+			// Depth inside ignored markup, 0 when outside of it
+			int ignored = 0;
+			while(xml.hasNext()){
+				int event = xml.next();
+				if(event == XMLStreamConstants.START_ELEMENT){
+					if(ignored > 0 || IGNORED_NAMESPACES.contains(xml.getNamespaceURI())){
+						ignored++;
+						continue;
+					}
+					flushText(items, text);
+					TreeMap<String, String> attributes = new TreeMap<String, String>();
+					for(int i = 0; i < xml.getAttributeCount(); i++){
+						if(!IGNORED_NAMESPACES.contains(xml.getAttributeNamespace(i))){
+							attributes.put(xml.getAttributeLocalName(i), xml.getAttributeValue(i));
+						}
+					}
+					if(xml.getLocalName().equals("b") && "true".equals(attributes.get("val"))){
+						attributes.remove("val");
+					}
+					items.add("<" + xml.getLocalName() + " " + attributes + ">");
+				}
+				else if(event == XMLStreamConstants.END_ELEMENT){
+					if(ignored > 0){
+						ignored--;
+						continue;
+					}
+					flushText(items, text);
+					items.add("</" + xml.getLocalName() + ">");
+				}
+				else if(ignored == 0 && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+						|| event == XMLStreamConstants.SPACE)){
+					text.append(xml.getText());
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Unable to read document", e);
+		}
+		// Element names only, since prefixes differ; an empty paragraph
+		// properties element left by the ignored markup is dropped
+		ArrayList<String> result = new ArrayList<String>(items.size());
+		for(int i = 0; i < items.size(); i++){
+			if(items.get(i).equals("<pPr {}>") && i + 1 < items.size() && items.get(i + 1).equals("</pPr>")){
+				i++;
+				continue;
+			}
+			result.add(items.get(i));
+		}
+		return result;
+	}
+
+	private static void flushText(List<String> items, StringBuilder text){
+		if(text.length() > 0){
+			items.add("\"" + text.toString().replace("\r", "\\r").replace("\n", "\\n") + "\"");
+			text.setLength(0);
+		}
+	}
+}
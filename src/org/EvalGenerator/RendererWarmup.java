@@ -0,0 +1,150 @@
+/**
+ * Initializes Docx4j and its JAXB context on a background thread when the
+ * application starts. Creating the first package and object factory takes
+ * seconds, and without the warm-up that cost lands on the first click of
+ * "Generate Documents". A throwaway comment sheet and OIT sheet are rendered
+ * to memory while the user fills in the form.
+ *
+ * Also records how long the first real generation took and whether the
+ * warm-up had finished by then, so cold and warm starts can be compared.
+ * Run with -Devalgen.warmup=false to measure a cold start.
+ */
+
+package org.EvalGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.EvalGenerator.DocInfo.Semester;
+import org.docx4j.jaxb.Context;
+
+public class RendererWarmup {
+	public static final String WARMUP_PROPERTY = "evalgen.warmup";
+
+	//******************* DATA MEMBERS *******************
+	private static final AtomicBoolean started = new AtomicBoolean();
+	private static final AtomicBoolean firstGenerationRecorded = new AtomicBoolean();
+
+	// -1 until the value is known
+	private static volatile long warmupMillis = -1;
+	private static volatile long firstGenerationMillis = -1;
+	private static volatile boolean firstGenerationWarm;
+
+	//******************* CONSTRUCTORS *******************
+	private RendererWarmup(){
+	}
+
+	//******************* PUBLIC METHODS *******************
+	/**
+	 * Starts the warm-up thread. Only the first call has any effect. Does
+	 * nothing if the evalgen.warmup system property is false.
+	 */
+	public static void start(){
+		if(!Boolean.parseBoolean(System.getProperty(WARMUP_PROPERTY, "true"))){
+			System.out.println("Renderer warm-up disabled");
+			return;
+		}
+		if(!started.compareAndSet(false, true)){
+			return;
+		}
+
+		Thread thread = new Thread(new Runnable(){
+			public void run(){
+				warmUp();
+			}
+		}, "Renderer warm-up");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Returns true once the warm-up has finished.
+	 */
+	public static boolean isComplete(){
+		return warmupMillis >= 0;
+	}
+
+	/**
+	 * Returns how long the warm-up took, or -1 if it has not finished.
+	 */
+	public static long getWarmupMillis(){
+		return warmupMillis;
+	}
+
+	/**
+	 * Returns how long the first generation took, or -1 if nothing has been
+	 * generated yet.
+	 */
+	public static long getFirstGenerationMillis(){
+		return firstGenerationMillis;
+	}
+
+	/**
+	 * Returns true if the warm-up had finished before the first generation started.
+	 */
+	public static boolean wasFirstGenerationWarm(){
+		return firstGenerationWarm;
+	}
+
+	/**
+	 * Called after every document is rendered. Only the first call is recorded.
+	 * @param startNanos System.nanoTime() when rendering started
+	 * @param warm Result of isComplete() when rendering started
+	 */
+	public static void recordGeneration(long startNanos, boolean warm){
+		if(!firstGenerationRecorded.compareAndSet(false, true)){
+			return;
+		}
+		firstGenerationMillis = (System.nanoTime() - startNanos) / 1000000L;
+		firstGenerationWarm   = warm;
+		System.out.println(report());
+	}
+
+	/**
+	 * Describes the warm-up and first generation times.
+	 */
+	public static String report(){
+		String warmup = isComplete() ? warmupMillis + " ms" : "not finished";
+		if(firstGenerationMillis < 0){
+			return "Renderer warm-up: " + warmup;
+		}
+		return "Renderer warm-up: " + warmup + ", first generation: " + firstGenerationMillis
+				+ " ms (" + (firstGenerationWarm ? "warm" : "cold") + ")";
+	}
+
+	//******************* PRIVATE METHODS *******************
+	private static void warmUp(){
+		long start = System.nanoTime();
+		try {
+			// Loads the JAXB context for WordprocessingML
+			Context.getWmlObjectFactory();
+
+			// Creating and saving a package loads the rest of Docx4j
+			DocInfo info = new DocInfo("Warm", "Up", "CST", "100", "WU1", "2000",
+					"Warm Up", "0000", "0", Semester.Fall);
+			DocumentRenderer renderer = new Docx4jRenderer();
+			OutputStream discard = new OutputStream(){
+				@Override
+				public void write(int b){
+				}
+				@Override
+				public void write(byte[] b, int off, int len){
+				}
+			};
+			renderer.renderCommentSheet(info, new QuestionSet(Collections.singletonList("Warm up")), discard);
+			renderer.renderOITSheet(info, new Date(), discard);
+
+			warmupMillis = (System.nanoTime() - start) / 1000000L;
+			System.out.println("Renderer warm-up finished in " + warmupMillis + " ms");
+		} catch (IOException e) {
+			// The first real generation will report the problem
+			e.printStackTrace();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * Describes the content of the generated documents independently of how
+ * they are rendered. The comment sheet has a title, a header table with the
+ * course info, and one two row table per evaluation question. The OIT scan
+ * sheet has a title and a single table with the course and support info.
+ * Widths are in twentieths of a point, the units used by Word tables.
+ */
+
+package org.EvalGenerator;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class SheetLayout {
+	public static final String COMMENT_SHEET_TITLE = "Student Feedback to Instructor";
+	public static final String OIT_SHEET_TITLE = "OIT Scan Cover Sheet";
+	public static final String FONT_SIZE = "20";
+	public static final int TABLE_SHORT_FIELD_LENGTH = 2000;
+	public static final int TABLE_LONG_FIELD_LENGTH = 6250;
+	public static final int COURSE_LABEL_LENGTH = 3000;
+	public static final int QUESTION_WIDTH = 10000;
+	// Text of the paragraph placed before each question so there is a space between them
+	public static final String QUESTION_SPACER = "\n\r";
+	public static final String DATE_FORMAT = "MM/dd/yyyy";
+
+	/**
+	 * One row of a header table. The label is bold and the value is plain text.
+	 */
+	public static class Row {
+		private final String label;
+		private final String value;
+		private final int labelWidth;
+
+		public Row(String label, String value, int labelWidth){
+			this.label      = label;
+			this.value      = value;
+			this.labelWidth = labelWidth;
+		}
+
+		public String getLabel(){
+			return label;
+		}
+		public String getValue(){
+			return value;
+		}
+		public int getLabelWidth(){
+			return labelWidth;
+		}
+		public int getValueWidth(){
+			return TABLE_LONG_FIELD_LENGTH;
+		}
+	}
+
+	//******************* CONSTRUCTORS *******************
+	private SheetLayout(){
+	}
+
+	//******************* PUBLIC METHODS *******************
+	/**
+	 * Rows of the header table at the top of the comment sheet.
+	 */
+	public static List<Row> commentHeaderRows(DocInfo info){
+		ArrayList<Row> rows = new ArrayList<Row>(4);
+		addCourseRows(rows, info);
+		return rows;
+	}
+
+	/**
+	 * Rows of the table on the OIT scan sheet.
+	 * @param requestDate Date shown as the date of request
+	 */
+	public static List<Row> oitRows(DocInfo info, Date requestDate){
+		ArrayList<Row> rows = new ArrayList<Row>(8);
+		addCourseRows(rows, info);
+		rows.add(new Row("Faculty Support Name:", info.getFacSuppName(), TABLE_SHORT_FIELD_LENGTH));
+		rows.add(new Row("Faculty Support Extension:", info.getFacSuppExten(), TABLE_SHORT_FIELD_LENGTH));
+		rows.add(new Row("I would like the results delivered to mailbox:", info.getMailbox(), TABLE_SHORT_FIELD_LENGTH));
+		rows.add(new Row("Date of Request:", formatDate(requestDate), TABLE_SHORT_FIELD_LENGTH));
+		return rows;
+	}
+
+	/**
+	 * Formats the date of request. A new format is created on every call
+	 * because SimpleDateFormat is not thread safe.
+	 */
+	public static String formatDate(Date date){
+		DateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
+		return dateFormat.format(date);
+	}
+
+	//******************* PRIVATE METHODS *******************
+	/**
+	 * Adds the instructor, course, section, and semester rows shared by both documents.
+	 */
+	private static void addCourseRows(List<Row> rows, DocInfo info){
+		rows.add(new Row("Instructor Name:", info.getInstFName() + " "
+				+ info.getInstLName(), TABLE_SHORT_FIELD_LENGTH));
+		rows.add(new Row("Course Subject & Number:", info.getSubject() + " "
+				+ info.getCourseNum(), COURSE_LABEL_LENGTH));
+		rows.add(new Row("Section:", info.getSection(), TABLE_SHORT_FIELD_LENGTH));
+		rows.add(new Row("Semester:", info.getSemester().toString()
+				+ " " + info.getYear(), TABLE_SHORT_FIELD_LENGTH));
+	}
+}
@@ -0,0 +1,178 @@
+/**
+ * Shows a comment sheet or OIT scan sheet in the window, laid out from
+ * SheetLayout the way the renderers lay out the Word document: the title,
+ * the bordered header table with bold labels, and for the comment sheet a
+ * two row table per question. Nothing is rendered to a file and Word is not
+ * started, so the result can be checked at once.
+ *
+ * Table widths are converted from twentieths of a point to pixels at one
+ * point per pixel and text is wrapped to fit its cell. The preview is close
+ * to the document but not exact, since Word picks its own fonts.
+ */
+
+package org.EvalGenerator;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.swing.JComponent;
+
+final class SheetPreview extends JComponent {
+	private static final long serialVersionUID = 1L;
+
+	private static final int TWIPS_PER_PIXEL = 20;
+	private static final int MARGIN = 36;
+	private static final int CELL_PADDING = 4;
+	// FONT_SIZE is in half points, as Word stores it
+	private static final Font TEXT_FONT = new Font(Font.SANS_SERIF, Font.PLAIN,
+			Integer.parseInt(SheetLayout.FONT_SIZE) / 2);
+	private static final Font BOLD_FONT = TEXT_FONT.deriveFont(Font.BOLD);
+	private static final Font TITLE_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 11);
+
+	/**
+	 * A table cell placed on the page, with its text already wrapped.
+	 */
+	private static final class Cell {
+		final int x;
+		final int y;
+		final int width;
+		final int height;
+		final List<String> lines;
+		final boolean bold;
+
+		Cell(int x, int y, int width, int height, List<String> lines, boolean bold){
+			this.x      = x;
+			this.y      = y;
+			this.width  = width;
+			this.height = height;
+			this.lines  = lines;
+			this.bold   = bold;
+		}
+	}
+
+	//******************* DATA MEMBERS *******************
+	private final String title;
+	private final ArrayList<Cell> cells = new ArrayList<Cell>();
+
+	//******************* CONSTRUCTORS *******************
+	private SheetPreview(String title, List<SheetLayout.Row> rows, List<String> questions){
+		this.title = title;
+		setBackground(Color.WHITE);
+		setOpaque(true);
+		layoutSheet(rows, questions);
+	}
+
+	//******************* PACKAGE METHODS *******************
+	/**
+	 * Returns a preview of the comment sheet of a class.
+	 */
+	static SheetPreview commentSheet(DocInfo info, QuestionSet questions){
+		return new SheetPreview(SheetLayout.COMMENT_SHEET_TITLE, SheetLayout.commentHeaderRows(info),
+				questions.getQuestions());
+	}
+
+	/**
+	 * Returns a preview of the OIT scan sheet of a class.
+	 * @param requestDate Date shown as the date of request
+	 */
+	static SheetPreview oitSheet(DocInfo info, Date requestDate){
+		return new SheetPreview(SheetLayout.OIT_SHEET_TITLE, SheetLayout.oitRows(info, requestDate),
+				Collections.<String>emptyList());
+	}
+
+	//******************* PROTECTED METHODS *******************
+	@Override
+	protected void paintComponent(Graphics g){
+		Graphics2D g2 = (Graphics2D) g;
+		g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g2.setColor(getBackground());
+		g2.fillRect(0, 0, getWidth(), getHeight());
+
+		g2.setColor(Color.BLACK);
+		g2.setFont(TITLE_FONT);
+		g2.drawString(title, MARGIN, MARGIN + g2.getFontMetrics().getAscent());
+
+		for(Cell cell:cells){
+			g2.drawRect(cell.x, cell.y, cell.width, cell.height);
+			g2.setFont(cell.bold ? BOLD_FONT : TEXT_FONT);
+			FontMetrics metrics = g2.getFontMetrics();
+			int y = cell.y + CELL_PADDING + metrics.getAscent();
+			for(String line:cell.lines){
+				g2.drawString(line, cell.x + CELL_PADDING, y);
+				y += metrics.getHeight();
+			}
+		}
+	}
+
+	//******************* PRIVATE METHODS *******************
+	/**
+	 * Places the header table and question tables below the title and sets
+	 * the preferred size to fit them.
+	 */
+	private void layoutSheet(List<SheetLayout.Row> rows, List<String> questions){
+		FontMetrics text = getFontMetrics(TEXT_FONT);
+		FontMetrics bold = getFontMetrics(BOLD_FONT);
+		int y = MARGIN + getFontMetrics(TITLE_FONT).getHeight() + text.getHeight();
+		int width = 0;
+
+		for(SheetLayout.Row row:rows){
+			int labelWidth = row.getLabelWidth() / TWIPS_PER_PIXEL;
+			int valueWidth = row.getValueWidth() / TWIPS_PER_PIXEL;
+			List<String> label = wrap(row.getLabel(), bold, labelWidth - 2 * CELL_PADDING);
+			List<String> value = wrap(row.getValue(), text, valueWidth - 2 * CELL_PADDING);
+			int height = Math.max(label.size(), value.size()) * text.getHeight() + 2 * CELL_PADDING;
+			cells.add(new Cell(MARGIN, y, labelWidth, height, label, true));
+			cells.add(new Cell(MARGIN + labelWidth, y, valueWidth, height, value, false));
+			y += height;
+			width = Math.max(width, labelWidth + valueWidth);
+		}
+
+		int questionWidth = SheetLayout.QUESTION_WIDTH / TWIPS_PER_PIXEL;
+		for(String question:questions){
+			// The spacer paragraph holds a line break, so it is two lines high
+			y += 2 * text.getHeight();
+			List<String> lines = wrap(question, bold, questionWidth - 2 * CELL_PADDING);
+			int height = lines.size() * text.getHeight() + 2 * CELL_PADDING;
+			cells.add(new Cell(MARGIN, y, questionWidth, height, lines, true));
+			y += height;
+
+			// Empty row the comments are typed in
+			height = text.getHeight() + 2 * CELL_PADDING;
+			cells.add(new Cell(MARGIN, y, questionWidth, height, Collections.singletonList(""), true));
+			y += height;
+			width = Math.max(width, questionWidth);
+		}
+
+		setPreferredSize(new Dimension(width + 2 * MARGIN + 1, y + MARGIN));
+	}
+
+	/**
+	 * Breaks text into lines at spaces so each line fits in a width. A word
+	 * that is wider than the width gets a line of its own.
+	 */
+	private static List<String> wrap(String text, FontMetrics metrics, int width){
+		ArrayList<String> lines = new ArrayList<String>();
+		StringBuilder line = new StringBuilder();
+		for(String word:text.split(" ")){
+			if(line.length() > 0 && metrics.stringWidth(line + " " + word) > width){
+				lines.add(line.toString());
+				line.setLength(0);
+			}
+			if(line.length() > 0){
+				line.append(' ');
+			}
+			line.append(word);
+		}
+		lines.add(line.toString());
+		return lines;
+	}
+}
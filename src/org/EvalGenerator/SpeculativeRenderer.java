@@ -0,0 +1,174 @@
+/**
+ * Renders the documents of the class being filled in into memory before the
+ * user asks for them, on a low priority background thread. Each document is
+ * keyed by the hash the generation manifest uses, so a rendered document is
+ * only used if the class, questions, and for the OIT scan sheet the date are
+ * the same when it is asked for. If its rendering is still running the caller
+ * waits for it rather than starting again.
+ *
+ * Starting a new speculation drops the documents whose inputs changed. One
+ * that has not started yet is cancelled; one being rendered is left to finish
+ * and its result is thrown away, since interrupting Docx4j can leave it
+ * unusable.
+ */
+
+package org.EvalGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+final class SpeculativeRenderer {
+	/**
+	 * A document being rendered, or already rendered, for one set of inputs.
+	 */
+	private static final class Speculation {
+		final String key;
+		final Future<byte[]> document;
+
+		Speculation(String key, Future<byte[]> document){
+			this.key      = key;
+			this.document = document;
+		}
+	}
+
+	//******************* DATA MEMBERS *******************
+	private final DocumentRenderer renderer;
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory(){
+		public Thread newThread(Runnable r){
+			Thread thread = new Thread(r, "Speculative rendering");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	});
+
+	// Null when the document is not being speculated on
+	private Speculation commentSheet;
+	private Speculation oitSheet;
+
+	//******************* CONSTRUCTORS *******************
+	SpeculativeRenderer(DocumentRenderer renderer){
+		this.renderer = renderer;
+	}
+
+	//******************* PACKAGE METHODS *******************
+	/**
+	 * Renders the documents of a class in the background, unless they have
+	 * already been rendered for the same inputs.
+	 * @param info Class to render. Must not be changed afterwards.
+	 * @param questions Questions of the comment sheet, or null to not render it
+	 * @param oit If true, the OIT scan sheet is rendered with today's date
+	 */
+	synchronized void speculate(final DocInfo info, final QuestionSet questions, boolean oit){
+		String commentKey = questions != null ? GenerationManifest.commentSheetHash(info, questions) : null;
+		if(!isFor(commentSheet, commentKey)){
+			drop(commentSheet);
+			commentSheet = commentKey == null ? null : submit(commentKey, new Callable<byte[]>(){
+				public byte[] call() throws IOException{
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					renderer.renderCommentSheet(info, questions, out);
+					return out.toByteArray();
+				}
+			});
+		}
+
+		final Date requestDate = new Date();
+		String oitKey = oit ? oitKey(info, requestDate) : null;
+		if(!isFor(oitSheet, oitKey)){
+			drop(oitSheet);
+			oitSheet = oitKey == null ? null : submit(oitKey, new Callable<byte[]>(){
+				public byte[] call() throws IOException{
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					renderer.renderOITSheet(info, requestDate, out);
+					return out.toByteArray();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Drops every speculation, for example because the form is being edited.
+	 */
+	synchronized void cancel(){
+		drop(commentSheet);
+		drop(oitSheet);
+		commentSheet = null;
+		oitSheet     = null;
+	}
+
+	/**
+	 * Returns the comment sheet rendered ahead of time for a class and its
+	 * questions, waiting if it is still being rendered, or null if there is
+	 * none and the caller has to render it.
+	 */
+	byte[] getCommentSheet(DocInfo info, QuestionSet questions){
+		Speculation speculation;
+		synchronized(this){
+			speculation = commentSheet;
+		}
+		return get(speculation, GenerationManifest.commentSheetHash(info, questions));
+	}
+
+	/**
+	 * Returns the OIT scan sheet rendered ahead of time for a class, waiting
+	 * if it is still being rendered, or null if there is none for the class
+	 * and date and the caller has to render it.
+	 */
+	byte[] getOITSheet(DocInfo info, Date requestDate){
+		Speculation speculation;
+		synchronized(this){
+			speculation = oitSheet;
+		}
+		return get(speculation, oitKey(info, requestDate));
+	}
+
+	//******************* PRIVATE METHODS *******************
+	private Speculation submit(String key, Callable<byte[]> render){
+		return new Speculation(key, executor.submit(render));
+	}
+
+	private static boolean isFor(Speculation speculation, String key){
+		if(speculation == null){
+			return key == null;
+		}
+		return speculation.key.equals(key) && !speculation.document.isCancelled();
+	}
+
+	private static void drop(Speculation speculation){
+		if(speculation != null){
+			speculation.document.cancel(false);
+		}
+	}
+
+	private static byte[] get(Speculation speculation, String key){
+		if(speculation == null || !speculation.key.equals(key)){
+			return null;
+		}
+		try {
+			return speculation.document.get();
+		} catch (CancellationException e) {
+			return null;
+		} catch (ExecutionException e) {
+			// Rendered again by the caller, which reports the problem
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * The OIT scan sheet shows the date of request, so it is part of the key.
+	 */
+	private static String oitKey(DocInfo info, Date requestDate){
+		return GenerationManifest.oitSheetHash(info) + "\t" + SheetLayout.formatDate(requestDate);
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ * Appends classes to a tracking spreadsheet in groups. Each class is written
+ * to the spreadsheet's journal as it is added, and the journal is applied to
+ * the spreadsheet together, so a batch of hundreds of classes takes the file
+ * lock and forces the file to disk once per group rather than once per class.
+ * A group is applied when it is full, when flush() is called, and when the
+ * appender is closed. Safe to use from several threads at once.
+ *
+ * A class is in the journal once add() returns, so if the program is killed
+ * before the group is applied it is added to the spreadsheet the next time
+ * the journal is opened (see SpreadsheetJournal). Classes that are already in
+ * the spreadsheet are skipped and counted as duplicates.
+ */
+
+package org.EvalGenerator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+public class SpreadsheetAppender implements Closeable {
+	public static final int DEFAULT_GROUP_SIZE = 256;
+
+	//******************* DATA MEMBERS *******************
+	private final File spreadsheet;
+	private final int groupSize;
+	private SpreadsheetJournal journal;
+	// Classes logged to the journal but not yet applied
+	private int pending;
+	private int written;
+	private int duplicates;
+
+	//******************* CONSTRUCTORS *******************
+	/**
+	 * @param spreadsheet CSV file. Created with a header if it does not exist.
+	 */
+	public SpreadsheetAppender(File spreadsheet){
+		this(spreadsheet, DEFAULT_GROUP_SIZE);
+	}
+
+	/**
+	 * @param spreadsheet CSV file. Created with a header if it does not exist.
+	 * @param groupSize Number of rows written per lock and fsync
+	 */
+	public SpreadsheetAppender(File spreadsheet, int groupSize){
+		this.spreadsheet = spreadsheet;
+		this.groupSize   = Math.max(1, groupSize);
+	}
+
+	//******************* PUBLIC METHODS *******************
+	/**
+	 * Adds a class to the journal. Applies the group if it is full.
+	 * @throws IOException If the journal could not be written, or a full
+	 * group could not be applied. Applied rows stay in the journal and are
+	 * tried again on the next flush.
+	 */
+	public synchronized void add(DocInfo info) throws IOException{
+		if(journal == null){
+			journal = new SpreadsheetJournal(spreadsheet);
+		}
+		journal.log(info);
+		pending++;
+		if(pending >= groupSize){
+			flush();
+		}
+	}
+
+	/**
+	 * Forces the journal to disk and applies all pending rows to the
+	 * spreadsheet with one lock and one fsync.
+	 * @throws IOException If the rows could not be written. They stay in the
+	 * journal.
+	 */
+	public synchronized void flush() throws IOException{
+		if(pending == 0){
+			return;
+		}
+		journal.sync();
+		int appended = journal.apply();
+		written    += appended;
+		duplicates += Math.max(0, pending - appended);
+		pending = 0;
+	}
+
+	/**
+	 * Returns the number of rows written so far. If another program on this
+	 * computer appends to the same spreadsheet at the same time, the journal
+	 * is shared and a row is counted by whichever program applies it.
+	 */
+	public synchronized int getWritten(){
+		return written;
+	}
+
+	/**
+	 * Returns the number of classes skipped because they were already in the
+	 * spreadsheet.
+	 */
+	public synchronized int getDuplicates(){
+		return duplicates;
+	}
+
+	/**
+	 * Writes any pending rows and closes the journal.
+	 */
+	@Override
+	public synchronized void close() throws IOException{
+		if(journal == null){
+			return;
+		}
+		try{
+			flush();
+		}
+		finally{
+			journal.close();
+			journal = null;
+		}
+	}
+}
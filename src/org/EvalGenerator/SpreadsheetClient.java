@@ -0,0 +1,158 @@
+/**
+ * Connection from a SpreadsheetManager in client mode to the spreadsheet
+ * daemon on this computer, see SpreadsheetServer. The connection is opened on
+ * first use and kept. Before it is used again it is checked, and if the
+ * daemon has closed it, for example because it was restarted, a new one is
+ * opened.
+ *
+ * Classes are never sent twice. Once they have been sent the daemon may have
+ * written some of them, so if the connection fails or times out while
+ * waiting for the replies, the call fails and the next one starts a new
+ * connection.
+ */
+
+package org.EvalGenerator;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.List;
+
+final class SpreadsheetClient implements Closeable {
+	private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+	private static final int REPLY_TIMEOUT_MILLIS = 60000;
+	// How long to wait for the end of a connection the daemon has closed
+	private static final int CLOSED_CHECK_MILLIS = 1;
+
+	//******************* DATA MEMBERS *******************
+	private final int port;
+	private Socket socket;
+	private BufferedReader in;
+	private Writer out;
+
+	//******************* CONSTRUCTORS *******************
+	SpreadsheetClient(int port){
+		this.port = port;
+	}
+
+	//******************* PACKAGE METHODS *******************
+	/**
+	 * Sends classes to the daemon in one go and waits until they are written.
+	 * @return Number of classes added, the rest were already in the spreadsheet
+	 * @throws java.net.ConnectException If the daemon is not running
+	 * @throws IOException If the daemon could not write a class, or the
+	 * connection failed or timed out before every reply was read
+	 */
+	synchronized int add(File spreadsheet, List<DocInfo> infos) throws IOException{
+		StringBuilder requests = new StringBuilder(infos.size() * 160);
+		String path = spreadsheet.getCanonicalPath();
+		for(DocInfo info:infos){
+			requests.append(SpreadsheetServer.ADD).append('\t').append(path).append('\t')
+					.append(DocInfoCsv.format(info)).append('\n');
+		}
+
+		if(socket != null && isClosedByDaemon()){
+			disconnect();
+		}
+		if(socket == null){
+			connect();
+		}
+		return send(requests.toString(), infos.size());
+	}
+
+	@Override
+	public synchronized void close(){
+		disconnect();
+	}
+
+	//******************* PRIVATE METHODS *******************
+	/**
+	 * Sends the requests and reads a reply for each. An error reply fails the
+	 * call once every reply has been read, so the connection can still be
+	 * used. A failed connection is closed.
+	 */
+	private int send(String requests, int count) throws IOException{
+		int added = 0;
+		String error = null;
+		try {
+			out.write(requests);
+			out.flush();
+
+			for(int i = 0; i < count; i++){
+				String reply = in.readLine();
+				if(reply == null){
+					throw new IOException("Spreadsheet daemon closed the connection");
+				}
+				if(reply.equals(SpreadsheetServer.ADDED)){
+					added++;
+				}
+				else if(reply.startsWith(SpreadsheetServer.ERROR) && error == null){
+					error = reply.substring(SpreadsheetServer.ERROR.length()).trim();
+				}
+			}
+		} catch (IOException e) {
+			disconnect();
+			throw e;
+		}
+		if(error != null){
+			throw new IOException(error);
+		}
+		return added;
+	}
+
+	/**
+	 * Returns true if the connection can no longer be used. The daemon sends
+	 * nothing between replies, so anything but a read timing out means it
+	 * has closed the connection.
+	 */
+	private boolean isClosedByDaemon(){
+		try {
+			socket.setSoTimeout(CLOSED_CHECK_MILLIS);
+			try{
+				in.read();
+				return true;
+			}
+			finally{
+				socket.setSoTimeout(REPLY_TIMEOUT_MILLIS);
+			}
+		} catch (SocketTimeoutException e) {
+			return false;
+		} catch (IOException e) {
+			return true;
+		}
+	}
+
+	private void connect() throws IOException{
+		Socket opened = new Socket();
+		try {
+			opened.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MILLIS);
+			opened.setSoTimeout(REPLY_TIMEOUT_MILLIS);
+			in  = new BufferedReader(new InputStreamReader(opened.getInputStream(), StreamingDocxRenderer.UTF_8));
+			out = new OutputStreamWriter(opened.getOutputStream(), StreamingDocxRenderer.UTF_8);
+		} catch (IOException e) {
+			opened.close();
+			throw e;
+		}
+		socket = opened;
+	}
+
+	private void disconnect(){
+		if(socket != null){
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+		socket = null;
+		in     = null;
+		out    = null;
+	}
+}
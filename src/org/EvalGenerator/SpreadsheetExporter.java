@@ -0,0 +1,465 @@
+/**
+ * Exports a tracking spreadsheet to an Excel workbook (.xlsx) with one sheet
+ * per semester, in date order, each starting with the column header.
+ *
+ * The workbook is streamed: rows are read one at a time with
+ * SpreadsheetReader and written straight out as SpreadsheetML with a StAX
+ * writer, using inline strings so no shared string table has to be kept.
+ * Memory use is the same for any number of rows.
+ *
+ * With more than one thread the spreadsheet is split into ranges of rows,
+ * as in SpreadsheetQuery, and every range writes its rows of each semester
+ * to a temporary file at the same time. The zip entries must be written one
+ * after another, so each sheet is then assembled by copying its files in
+ * range order, which keeps the rows in spreadsheet order.
+ *
+ * Can be run from the command line:
+ * SpreadsheetExporter spreadsheet.csv workbook.xlsx [--threads n]
+ */
+
+package org.EvalGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+public class SpreadsheetExporter {
+	public static final String EXTENSION = ".xlsx";
+
+	private static final String S_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+	private static final String R_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+	private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>";
+	// Sheet used when the spreadsheet has no classes
+	private static final String EMPTY_SHEET_NAME = "Classes";
+	private static final int MAX_SHEET_NAME = 31;
+	private static final int COLUMN_WIDTH = 18;
+
+	private static final String PACKAGE_RELS = XML_DECLARATION
+			+ "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+			+ "<Relationship Id=\"rId1\" "
+			+ "Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" "
+			+ "Target=\"xl/workbook.xml\"/>"
+			+ "</Relationships>";
+	// Style 0 is the default, style 1 is bold for the header row
+	private static final String STYLES = XML_DECLARATION
+			+ "<styleSheet xmlns=\"" + S_NS + "\">"
+			+ "<fonts count=\"2\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font>"
+			+ "<font><b/><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>"
+			+ "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill>"
+			+ "<fill><patternFill patternType=\"gray125\"/></fill></fills>"
+			+ "<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>"
+			+ "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"
+			+ "<cellXfs count=\"2\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>"
+			+ "<xf numFmtId=\"0\" fontId=\"1\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\"/></cellXfs>"
+			+ "</styleSheet>";
+
+	//******************* DATA MEMBERS *******************
+	private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+	private int threads = 1;
+	private int malformedRows;
+
+	/**
+	 * Rows of one semester from one range, written to a temporary file.
+	 */
+	private static final class Chunk {
+		final File file;
+		final OutputStream out;
+		final XMLStreamWriter xml;
+		int rows;
+
+		Chunk(File file, OutputStream out, XMLStreamWriter xml){
+			this.file = file;
+			this.out  = out;
+			this.xml  = xml;
+		}
+	}
+
+	//******************* PUBLIC METHODS *******************
+	public static void main(String[] args) {
+		if(args.length < 2){
+			System.err.println("Usage: SpreadsheetExporter spreadsheet.csv workbook.xlsx [--threads n]");
+			System.exit(2);
+		}
+
+		SpreadsheetExporter exporter = new SpreadsheetExporter();
+		try {
+			for(int i = 2; i < args.length; i++){
+				if(args[i].equals("--threads") && i + 1 < args.length){
+					exporter.threads(Integer.parseInt(args[++i]));
+				}
+				else{
+					System.err.println("Unknown option: " + args[i]);
+					System.exit(2);
+				}
+			}
+		} catch (NumberFormatException e) {
+			System.err.println("Not a number: " + e.getMessage());
+			System.exit(2);
+		}
+
+		try {
+			long start = System.nanoTime();
+			int rows = exporter.export(new File(args[0]), new File(args[1]));
+			System.out.println("Exported " + rows + " classes to " + args[1] + " in "
+					+ (System.nanoTime() - start) / 1000000 + " ms");
+			if(exporter.getMalformedRows() > 0){
+				System.err.println(exporter.getMalformedRows() + " rows could not be read");
+			}
+		} catch (IOException e) {
+			System.err.println("Unable to export spreadsheet: " + e.getMessage());
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Sets the number of threads the spreadsheet is read with.
+	 */
+	public SpreadsheetExporter threads(int threads){
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	/**
+	 * Writes every class of the spreadsheet to a workbook. Rows that cannot
+	 * be parsed are skipped and counted by getMalformedRows().
+	 * @param spreadsheet CSV file
+	 * @param workbook File to write, replaced if it exists
+	 * @return Number of classes exported
+	 * @throws IOException If the spreadsheet cannot be read or the workbook written
+	 */
+	public int export(File spreadsheet, File workbook) throws IOException{
+		File tempDirectory = Files.createTempDirectory("evalgen-xlsx").toFile();
+		FileChannel channel = FileChannel.open(spreadsheet.toPath(), StandardOpenOption.READ);
+		try{
+			List<Map<SpreadsheetSummary.Term, Chunk>> ranges = writeChunks(channel, tempDirectory);
+
+			// Chunks of each semester in range order
+			TreeMap<SpreadsheetSummary.Term, List<Chunk>> sheets = new TreeMap<SpreadsheetSummary.Term, List<Chunk>>();
+			int rows = 0;
+			for(Map<SpreadsheetSummary.Term, Chunk> range:ranges){
+				for(Map.Entry<SpreadsheetSummary.Term, Chunk> entry:range.entrySet()){
+					List<Chunk> chunks = sheets.get(entry.getKey());
+					if(chunks == null){
+						chunks = new ArrayList<Chunk>();
+						sheets.put(entry.getKey(), chunks);
+					}
+					chunks.add(entry.getValue());
+					rows += entry.getValue().rows;
+				}
+			}
+
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(workbook), 64 * 1024);
+			boolean written = false;
+			try{
+				writeWorkbook(sheets, out);
+				written = true;
+			}
+			finally{
+				out.close();
+				if(!written){
+					workbook.delete();
+				}
+			}
+			return rows;
+		}
+		finally{
+			channel.close();
+			deleteDirectory(tempDirectory);
+		}
+	}
+
+	/**
+	 * Returns the number of rows the last export could not parse.
+	 */
+	public int getMalformedRows(){
+		return malformedRows;
+	}
+
+	//******************* PRIVATE METHODS *******************
+	/**
+	 * Reads every range of the spreadsheet at the same time, writing the rows
+	 * of each semester to a temporary file per range.
+	 * @return The chunks of each range, in file order
+	 */
+	private List<Map<SpreadsheetSummary.Term, Chunk>> writeChunks(final FileChannel channel,
+			final File directory) throws IOException{
+		long[] bounds = SpreadsheetQuery.splitRows(channel, threads);
+		ExecutorService pool = Executors.newFixedThreadPool(bounds.length - 1);
+		try{
+			ArrayList<Future<Map<SpreadsheetSummary.Term, Chunk>>> results =
+					new ArrayList<Future<Map<SpreadsheetSummary.Term, Chunk>>>();
+			final int[] malformed = new int[bounds.length - 1];
+			for(int i = 0; i + 1 < bounds.length; i++){
+				final int range = i;
+				final long start = bounds[i];
+				final long end = bounds[i + 1];
+				results.add(pool.submit(new Callable<Map<SpreadsheetSummary.Term, Chunk>>(){
+					public Map<SpreadsheetSummary.Term, Chunk> call() throws IOException, XMLStreamException{
+						SpreadsheetReader reader = new SpreadsheetReader(channel, start, end);
+						try{
+							return writeRange(reader, directory, range);
+						}
+						finally{
+							malformed[range] = reader.getMalformedRows();
+							reader.close();
+						}
+					}
+				}));
+			}
+
+			ArrayList<Map<SpreadsheetSummary.Term, Chunk>> ranges =
+					new ArrayList<Map<SpreadsheetSummary.Term, Chunk>>(results.size());
+			for(Future<Map<SpreadsheetSummary.Term, Chunk>> result:results){
+				ranges.add(result.get());
+			}
+			malformedRows = 0;
+			for(int count:malformed){
+				malformedRows += count;
+			}
+			return ranges;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while exporting spreadsheet", e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException){
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Unable to export spreadsheet", e.getCause());
+		}
+		finally{
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Writes the rows of one range to a file per semester.
+	 */
+	private Map<SpreadsheetSummary.Term, Chunk> writeRange(SpreadsheetReader reader, File directory, int range)
+			throws IOException, XMLStreamException{
+		TreeMap<SpreadsheetSummary.Term, Chunk> chunks = new TreeMap<SpreadsheetSummary.Term, Chunk>();
+		try{
+			DocInfo info;
+			while((info = reader.next()) != null){
+				if(info.getSemester() == null){
+					continue;
+				}
+				SpreadsheetSummary.Term term = new SpreadsheetSummary.Term(info.getSemester(), info.getYear().trim());
+				Chunk chunk = chunks.get(term);
+				if(chunk == null){
+					File file = new File(directory, "range" + range + "-" + chunks.size() + ".xml");
+					OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+					chunk = new Chunk(file, out, outputFactory.createXMLStreamWriter(out, "UTF-8"));
+					chunks.put(term, chunk);
+				}
+				writeRow(chunk.xml, info);
+				chunk.rows++;
+			}
+		}
+		finally{
+			for(Chunk chunk:chunks.values()){
+				chunk.xml.close();
+				chunk.out.close();
+			}
+		}
+		return chunks;
+	}
+
+	private void writeWorkbook(TreeMap<SpreadsheetSummary.Term, List<Chunk>> sheets, OutputStream out)
+			throws IOException{
+		ArrayList<String> names = new ArrayList<String>();
+		for(SpreadsheetSummary.Term term:sheets.keySet()){
+			// Characters Excel does not allow in sheet names
+			String name = term.toString().replaceAll("[\\\\/?*\\[\\]:]", "-");
+			names.add(name.length() > MAX_SHEET_NAME ? name.substring(0, MAX_SHEET_NAME) : name);
+		}
+		if(names.isEmpty()){
+			names.add(EMPTY_SHEET_NAME);
+		}
+
+		ZipOutputStream zip = new ZipOutputStream(out);
+		writeEntry(zip, "[Content_Types].xml", contentTypes(names.size()));
+		writeEntry(zip, "_rels/.rels", PACKAGE_RELS);
+		writeEntry(zip, "xl/workbook.xml", workbookPart(names));
+		writeEntry(zip, "xl/_rels/workbook.xml.rels", workbookRels(names.size()));
+		writeEntry(zip, "xl/styles.xml", STYLES);
+
+		int sheet = 1;
+		for(List<Chunk> chunks:sheets.values()){
+			zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheet++ + ".xml"));
+			zip.write(sheetStart().getBytes(StreamingDocxRenderer.UTF_8));
+			for(Chunk chunk:chunks){
+				Files.copy(chunk.file.toPath(), zip);
+			}
+			zip.write(sheetEnd().getBytes(StreamingDocxRenderer.UTF_8));
+			zip.closeEntry();
+		}
+		if(sheets.isEmpty()){
+			writeEntry(zip, "xl/worksheets/sheet1.xml", sheetStart() + sheetEnd());
+		}
+		zip.finish();
+	}
+
+	private static void writeEntry(ZipOutputStream zip, String name, String content) throws IOException{
+		zip.putNextEntry(new ZipEntry(name));
+		zip.write(content.getBytes(StreamingDocxRenderer.UTF_8));
+		zip.closeEntry();
+	}
+
+	private static String contentTypes(int sheets){
+		StringBuilder xml = new StringBuilder(XML_DECLARATION);
+		xml.append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">")
+			.append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>")
+			.append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+			.append("<Override PartName=\"/xl/workbook.xml\" ")
+			.append("ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>")
+			.append("<Override PartName=\"/xl/styles.xml\" ")
+			.append("ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+		for(int i = 1; i <= sheets; i++){
+			xml.append("<Override PartName=\"/xl/worksheets/sheet").append(i).append(".xml\" ")
+				.append("ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+		}
+		return xml.append("</Types>").toString();
+	}
+
+	private static String workbookPart(List<String> names){
+		StringBuilder xml = new StringBuilder(XML_DECLARATION);
+		xml.append("<workbook xmlns=\"").append(S_NS).append("\" xmlns:r=\"").append(R_NS).append("\"><sheets>");
+		for(int i = 0; i < names.size(); i++){
+			xml.append("<sheet name=\"").append(escape(names.get(i))).append("\" sheetId=\"").append(i + 1)
+				.append("\" r:id=\"rId").append(i + 1).append("\"/>");
+		}
+		return xml.append("</sheets></workbook>").toString();
+	}
+
+	private static String workbookRels(int sheets){
+		StringBuilder xml = new StringBuilder(XML_DECLARATION);
+		xml.append("<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">");
+		for(int i = 1; i <= sheets; i++){
+			xml.append("<Relationship Id=\"rId").append(i).append("\" ")
+				.append("Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" ")
+				.append("Target=\"worksheets/sheet").append(i).append(".xml\"/>");
+		}
+		xml.append("<Relationship Id=\"rId").append(sheets + 1).append("\" ")
+			.append("Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\" ")
+			.append("Target=\"styles.xml\"/>");
+		return xml.append("</Relationships>").toString();
+	}
+
+	/**
+	 * Returns the start of a sheet up to and including the header row, with
+	 * the header frozen so it stays visible while scrolling.
+	 */
+	private static String sheetStart(){
+		String[] columns = DocInfoCsv.HEADER.split(",");
+		StringBuilder xml = new StringBuilder(XML_DECLARATION);
+		xml.append("<worksheet xmlns=\"").append(S_NS).append("\">")
+			.append("<sheetViews><sheetView workbookViewId=\"0\">")
+			.append("<pane ySplit=\"1\" topLeftCell=\"A2\" activePane=\"bottomLeft\" state=\"frozen\"/>")
+			.append("</sheetView></sheetViews>")
+			.append("<cols><col min=\"1\" max=\"").append(columns.length).append("\" width=\"")
+			.append(COLUMN_WIDTH).append("\" customWidth=\"1\"/></cols>")
+			.append("<sheetData><row>");
+		for(String column:columns){
+			xml.append("<c t=\"inlineStr\" s=\"1\"><is><t>").append(escape(column)).append("</t></is></c>");
+		}
+		return xml.append("</row>").toString();
+	}
+
+	private static String sheetEnd(){
+		return "</sheetData></worksheet>";
+	}
+
+	/**
+	 * Writes a class as a row in the order of DocInfoCsv.HEADER. The year is
+	 * a number if it is one, everything else is text so leading zeros are kept.
+	 */
+	private static void writeRow(XMLStreamWriter xml, DocInfo info) throws XMLStreamException{
+		xml.writeStartElement("row");
+		writeText(xml, info.getInstFName());
+		writeText(xml, info.getInstLName());
+		writeText(xml, info.getSubject());
+		writeText(xml, info.getCourseNum());
+		writeText(xml, info.getSection());
+		writeText(xml, String.valueOf(info.getSemester()));
+		String year = info.getYear().trim();
+		if(year.matches("\\d{1,9}")){
+			xml.writeStartElement("c");
+			xml.writeStartElement("v");
+			xml.writeCharacters(year);
+			xml.writeEndElement();
+			xml.writeEndElement();
+		}
+		else{
+			writeText(xml, year);
+		}
+		writeText(xml, info.getFacSuppName());
+		writeText(xml, info.getFacSuppExten());
+		writeText(xml, info.getMailbox());
+		xml.writeEndElement();
+	}
+
+	private static void writeText(XMLStreamWriter xml, String value) throws XMLStreamException{
+		xml.writeStartElement("c");
+		xml.writeAttribute("t", "inlineStr");
+		xml.writeStartElement("is");
+		xml.writeStartElement("t");
+		xml.writeCharacters(stripControlCharacters(value == null ? "" : value));
+		xml.writeEndElement();
+		xml.writeEndElement();
+		xml.writeEndElement();
+	}
+
+	/**
+	 * Removes characters that are not allowed in XML.
+	 */
+	private static String stripControlCharacters(String value){
+		for(int i = 0; i < value.length(); i++){
+			char c = value.charAt(i);
+			if(c < 0x20 && c != '\t' && c != '\n' && c != '\r'){
+				StringBuilder clean = new StringBuilder(value.length());
+				for(int j = 0; j < value.length(); j++){
+					char d = value.charAt(j);
+					if(d >= 0x20 || d == '\t' || d == '\n' || d == '\r'){
+						clean.append(d);
+					}
+				}
+				return clean.toString();
+			}
+		}
+		return value;
+	}
+
+	private static String escape(String text){
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+
+	private static void deleteDirectory(File directory){
+		File[] files = directory.listFiles();
+		if(files != null){
+			for(File file:files){
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+}
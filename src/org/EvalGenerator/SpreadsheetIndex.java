@@ -0,0 +1,413 @@
+/**
+ * On-disk hash index of the classes in a tracking spreadsheet, kept in a
+ * sidecar file next to it (classes.csv has classes.csv.idx). It lets
+ * SpreadsheetManager reject a class that is already in the spreadsheet by
+ * probing a few slots instead of scanning the whole CSV.
+ *
+ * A class is identified by instructor name, subject, course number, section,
+ * semester, and year, ignoring case and surrounding whitespace. The support
+ * fields are not part of the identity. The index stores a 64-bit hash of the
+ * identity in an open addressing table that is doubled when it is half full.
+ *
+ * The header records the length of the CSV the index describes. If the index
+ * is missing, damaged, or the CSV has a different length (it was edited by
+ * hand), the index is rebuilt from the CSV. The index must only be used while
+ * holding the spreadsheet's lock.
+ *
+ * The header also records where the CSV ended before an append that has not
+ * finished yet. If the program is killed during the append, the CSV is cut
+ * back to that length the next time the index is opened, so a row that was
+ * only partly written never stays in the spreadsheet. The rows are still in
+ * the journal and are appended again, see SpreadsheetJournal.
+ *
+ * Layout: magic, version, CSV length, capacity, count, CSV length before the
+ * unfinished append or -1, then capacity slots of 8 bytes each. An empty
+ * slot is 0.
+ */
+
+package org.EvalGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+final class SpreadsheetIndex implements Closeable {
+	static final String EXTENSION = ".idx";
+
+	private static final int MAGIC = 0x45474958; // "EGIX"
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 32;
+	private static final int LENGTH_OFFSET = 8;
+	private static final int SLOT_SIZE = 8;
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int READ_CHUNK = 64 * 1024;
+
+	//******************* DATA MEMBERS *******************
+	private final FileChannel channel;
+	private int capacity;
+	private int count;
+	private long csvLength;
+	private long appendStart = -1;
+
+	private final ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+
+	//******************* CONSTRUCTORS *******************
+	private SpreadsheetIndex(FileChannel channel){
+		this.channel = channel;
+	}
+
+	//******************* PACKAGE METHODS *******************
+	/**
+	 * Returns the index file of a spreadsheet.
+	 */
+	static File indexFile(File spreadsheet){
+		return new File(spreadsheet.getPath() + EXTENSION);
+	}
+
+	/**
+	 * Opens the index of a spreadsheet, rebuilding it if it is missing or
+	 * stale. An append that was interrupted is undone first.
+	 * @param spreadsheet CSV file
+	 * @param csv Channel of the locked CSV, used to read it if a rebuild is
+	 * needed and to cut off an interrupted append
+	 * @throws IOException If the index cannot be opened or rebuilt
+	 */
+	static SpreadsheetIndex open(File spreadsheet, FileChannel csv) throws IOException{
+		FileChannel channel = FileChannel.open(indexFile(spreadsheet).toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		SpreadsheetIndex index = new SpreadsheetIndex(channel);
+		try{
+			boolean valid = index.readHeader();
+			if(!valid){
+				index.appendStart = -1;
+			}
+			else if(index.appendStart >= 0){
+				index.undoAppend(csv);
+			}
+			if(!valid || index.csvLength != csv.size()){
+				index.rebuild(csv);
+			}
+		}
+		catch(IOException e){
+			channel.close();
+			throw e;
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the identity of a class, see the class comment.
+	 */
+	static String identity(DocInfo info){
+		return normalize(info.getInstFName()) + '\u0000'
+				+ normalize(info.getInstLName()) + '\u0000'
+				+ normalize(info.getSubject()) + '\u0000'
+				+ normalize(info.getCourseNum()) + '\u0000'
+				+ normalize(info.getSection()) + '\u0000'
+				+ normalize(String.valueOf(info.getSemester())) + '\u0000'
+				+ normalize(info.getYear());
+	}
+
+	/**
+	 * Returns true if a class with the same identity is in the index.
+	 */
+	boolean contains(DocInfo info) throws IOException{
+		long hash = hash(identity(info));
+		int mask = capacity - 1;
+		for(int i = (int) hash & mask; ; i = (i + 1) & mask){
+			long stored = readSlot(i);
+			if(stored == 0){
+				return false;
+			}
+			if(stored == hash){
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Adds a class to the index. Does nothing if it is already there.
+	 */
+	void add(DocInfo info) throws IOException{
+		if((count + 1) * 2 > capacity){
+			resize(capacity * 2);
+		}
+		if(insert(hash(identity(info)))){
+			count++;
+		}
+	}
+
+	/**
+	 * Records where the CSV ends before rows are appended to it, and forces
+	 * the record to disk. Call before writing the CSV.
+	 */
+	void beginAppend(long currentCsvLength) throws IOException{
+		appendStart = currentCsvLength;
+		writeHeader();
+		channel.force(false);
+	}
+
+	/**
+	 * Records the length of the CSV after rows were appended and writes the
+	 * header, which also ends the append. Call after the CSV has been
+	 * written, so an interrupted write is undone next time.
+	 */
+	void commit(long newCsvLength) throws IOException{
+		csvLength   = newCsvLength;
+		appendStart = -1;
+		writeHeader();
+	}
+
+	int size(){
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException{
+		channel.close();
+	}
+
+	//******************* PRIVATE METHODS *******************
+	/**
+	 * Reads the header. Returns false if the file is empty or not a valid index.
+	 */
+	private boolean readHeader() throws IOException{
+		long size = channel.size();
+		if(size < HEADER_SIZE){
+			return false;
+		}
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		readFully(channel, header, 0);
+		header.flip();
+		if(header.getInt() != MAGIC || header.getInt() != VERSION){
+			return false;
+		}
+		csvLength   = header.getLong();
+		capacity    = header.getInt();
+		count       = header.getInt();
+		appendStart = header.getLong();
+		return capacity >= INITIAL_CAPACITY && Integer.bitCount(capacity) == 1
+				&& count >= 0 && count * 2 <= capacity && appendStart >= -1
+				&& size >= HEADER_SIZE + (long) capacity * SLOT_SIZE;
+	}
+
+	private void writeHeader() throws IOException{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(VERSION).putLong(csvLength).putInt(capacity).putInt(count).putLong(appendStart);
+		header.flip();
+		writeFully(header, 0);
+	}
+
+	/**
+	 * Cuts the CSV back to where it ended before an append that did not
+	 * finish. Anything after that was written by the append and may end in
+	 * the middle of a row. If the CSV is shorter, it was replaced since, and
+	 * it is left alone.
+	 */
+	private void undoAppend(FileChannel csv) throws IOException{
+		if(csv.size() > appendStart){
+			System.out.println("Removing rows of an interrupted write from the end of the spreadsheet");
+			csv.truncate(appendStart);
+			csv.force(false);
+		}
+		appendStart = -1;
+		writeHeader();
+	}
+
+	/**
+	 * Marks the index stale so that an interrupted rewrite is rebuilt.
+	 */
+	private void invalidate() throws IOException{
+		ByteBuffer length = ByteBuffer.allocate(8);
+		length.putLong(-1);
+		length.flip();
+		writeFully(length, LENGTH_OFFSET);
+	}
+
+	/**
+	 * Builds the index from every row of the CSV. Rows that cannot be parsed
+	 * are not indexed. The CSV is read through its locked channel.
+	 */
+	private void rebuild(FileChannel csv) throws IOException{
+		System.out.println("Rebuilding spreadsheet index");
+		long length = csv.size();
+		long[] table = new long[INITIAL_CAPACITY];
+		int entries = 0;
+
+		ByteBuffer chunk = ByteBuffer.allocate(READ_CHUNK);
+		ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+		long position = 0;
+		while(position < length){
+			chunk.clear();
+			int read = csv.read(chunk, position);
+			if(read <= 0){
+				break;
+			}
+			position += read;
+			for(int i = 0; i < read; i++){
+				byte b = chunk.get(i);
+				if(b == '\n'){
+					long hash = hashOfRow(line);
+					line.reset();
+					if(hash != 0){
+						if((entries + 1) * 2 > table.length){
+							table = rehash(table, table.length * 2);
+						}
+						if(insert(table, hash)){
+							entries++;
+						}
+					}
+				}
+				else{
+					line.write(b);
+				}
+			}
+		}
+		// A last row without a line break
+		long hash = hashOfRow(line);
+		if(hash != 0){
+			if((entries + 1) * 2 > table.length){
+				table = rehash(table, table.length * 2);
+			}
+			if(insert(table, hash)){
+				entries++;
+			}
+		}
+
+		writeTable(table, entries, length);
+	}
+
+	/**
+	 * Returns the hash of a CSV row, or 0 if it is the header or cannot be parsed.
+	 */
+	private static long hashOfRow(ByteArrayOutputStream row){
+		String text = new String(row.toByteArray(), StreamingDocxRenderer.UTF_8).trim();
+		if(text.isEmpty() || DocInfoCsv.isHeader(text)){
+			return 0;
+		}
+		try {
+			return hash(identity(DocInfoCsv.parse(text)));
+		} catch (IllegalArgumentException e) {
+			return 0;
+		}
+	}
+
+	private void resize(int newCapacity) throws IOException{
+		long[] table = new long[capacity];
+		for(int i = 0; i < capacity; i++){
+			table[i] = readSlot(i);
+		}
+		writeTable(rehash(table, newCapacity), count, csvLength);
+	}
+
+	/**
+	 * Replaces the whole table. The index is marked stale first, so if the
+	 * write is interrupted the index is rebuilt next time.
+	 */
+	private void writeTable(long[] table, int entries, long length) throws IOException{
+		if(channel.size() >= HEADER_SIZE){
+			invalidate();
+		}
+		ByteBuffer slots = ByteBuffer.allocate(table.length * SLOT_SIZE);
+		for(long value:table){
+			slots.putLong(value);
+		}
+		slots.flip();
+		writeFully(slots, HEADER_SIZE);
+		channel.truncate(HEADER_SIZE + (long) table.length * SLOT_SIZE);
+
+		capacity  = table.length;
+		count     = entries;
+		csvLength = length;
+		writeHeader();
+	}
+
+	private static long[] rehash(long[] table, int newCapacity){
+		long[] larger = new long[newCapacity];
+		for(long value:table){
+			if(value != 0){
+				insert(larger, value);
+			}
+		}
+		return larger;
+	}
+
+	/**
+	 * Inserts into an in-memory table. Returns false if the hash was already there.
+	 */
+	private static boolean insert(long[] table, long hash){
+		int mask = table.length - 1;
+		for(int i = (int) hash & mask; ; i = (i + 1) & mask){
+			if(table[i] == hash){
+				return false;
+			}
+			if(table[i] == 0){
+				table[i] = hash;
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Inserts into the table on disk. Returns false if the hash was already there.
+	 */
+	private boolean insert(long hash) throws IOException{
+		int mask = capacity - 1;
+		for(int i = (int) hash & mask; ; i = (i + 1) & mask){
+			long stored = readSlot(i);
+			if(stored == hash){
+				return false;
+			}
+			if(stored == 0){
+				slot.clear();
+				slot.putLong(hash);
+				slot.flip();
+				writeFully(slot, HEADER_SIZE + (long) i * SLOT_SIZE);
+				return true;
+			}
+		}
+	}
+
+	private long readSlot(int i) throws IOException{
+		slot.clear();
+		readFully(channel, slot, HEADER_SIZE + (long) i * SLOT_SIZE);
+		return slot.getLong(0);
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException{
+		while(buffer.hasRemaining()){
+			int read = channel.read(buffer, position);
+			if(read < 0){
+				throw new IOException("Spreadsheet index is truncated");
+			}
+			position += read;
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer, long position) throws IOException{
+		while(buffer.hasRemaining()){
+			position += channel.write(buffer, position);
+		}
+	}
+
+	private static String normalize(String field){
+		return field == null ? "" : field.trim().toUpperCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * 64-bit FNV-1a hash. 0 marks an empty slot, so it is never returned.
+	 */
+	private static long hash(String key){
+		long hash = 0xcbf29ce484222325L;
+		for(int i = 0; i < key.length(); i++){
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash == 0 ? 1 : hash;
+	}
+}
@@ -0,0 +1,438 @@
+/**
+ * Write-ahead journal for a tracking spreadsheet. Every class is written to
+ * the journal before it is added to the spreadsheet, and the journal is
+ * applied to the spreadsheet in batches: all logged classes are appended
+ * with one lock and one fsync, then the journal is emptied. If the program
+ * is killed in between, the classes are still in the journal and are applied
+ * the next time it is opened.
+ *
+ * Applying is safe to repeat. A class that already made it into the
+ * spreadsheet is recognized by the spreadsheet's index and not added twice,
+ * and rows of an append that was interrupted are cut off the spreadsheet
+ * before the next append (see SpreadsheetIndex).
+ *
+ * The journal is kept on the local disk in files/journal, one file per
+ * spreadsheet, so logging a class never waits for the lock on a shared
+ * spreadsheet. The first line holds the path of the spreadsheet, every other
+ * line is a CRC-32 of the row followed by the row in the spreadsheet format.
+ * A last entry that was cut short or fails its check is truncated.
+ */
+
+package org.EvalGenerator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+public class SpreadsheetJournal implements Closeable {
+	public static final String JOURNAL_DIRECTORY = "files/journal";
+	private static final String EXTENSION = ".journal";
+	private static final String MAGIC = "EVALGEN-JOURNAL 1";
+
+	//******************* DATA MEMBERS *******************
+	private final File spreadsheet;
+	private final File file;
+	private final FileChannel channel;
+	// Length of the header line, where the entries start
+	private long entriesStart;
+
+	//******************* CONSTRUCTORS *******************
+	/**
+	 * Opens the journal of a spreadsheet, creating it if needed. Any classes
+	 * left in it are applied to the spreadsheet first.
+	 * @param spreadsheet CSV file
+	 * @throws IOException If the journal cannot be opened or the leftover
+	 * classes cannot be applied. They stay in the journal.
+	 */
+	public SpreadsheetJournal(File spreadsheet) throws IOException{
+		this(spreadsheet.getCanonicalFile(), journalFile(spreadsheet), true);
+	}
+
+	private SpreadsheetJournal(File spreadsheet, File file, boolean replay) throws IOException{
+		this.spreadsheet = spreadsheet;
+		this.file        = file;
+
+		file.getParentFile().mkdirs();
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try{
+			synchronized(SpreadsheetManager.monitorFor(file)){
+				FileLock lock = channel.lock();
+				try{
+					recover();
+				}
+				finally{
+					lock.release();
+				}
+			}
+			if(replay && pending() > 0){
+				System.out.println("Replaying spreadsheet journal for " + spreadsheet);
+				apply();
+			}
+		}
+		catch(IOException e){
+			channel.close();
+			throw e;
+		}
+	}
+
+	//******************* PUBLIC METHODS *******************
+	/**
+	 * Applies the journals of every spreadsheet left by a previous run that
+	 * was killed. Call once at startup.
+	 * @return Number of classes added to spreadsheets
+	 */
+	public static int recoverAll(){
+		File[] journals = new File(JOURNAL_DIRECTORY).listFiles();
+		if(journals == null){
+			return 0;
+		}
+
+		int added = 0;
+		for(File journal:journals){
+			if(!journal.getName().endsWith(EXTENSION)){
+				continue;
+			}
+			try {
+				File spreadsheet = readSpreadsheetPath(journal);
+				if(spreadsheet == null){
+					continue;
+				}
+				SpreadsheetJournal opened = new SpreadsheetJournal(spreadsheet, journal, false);
+				try{
+					if(opened.pending() > 0){
+						System.out.println("Replaying spreadsheet journal for " + spreadsheet);
+						added += opened.apply();
+					}
+				}
+				finally{
+					opened.close();
+				}
+			} catch (IOException e) {
+				System.out.println("Unable to replay spreadsheet journal " + journal + ": " + e.getMessage());
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * Writes a class to the end of the journal. The write reaches the
+	 * operating system before this returns, so it survives the program being
+	 * killed. Call sync() to also make it survive a power failure.
+	 * @throws IOException If the journal cannot be written
+	 */
+	public void log(DocInfo info) throws IOException{
+		log(Collections.singletonList(info));
+	}
+
+	/**
+	 * Writes several classes to the end of the journal in one write.
+	 * @throws IOException If the journal cannot be written
+	 */
+	public void log(List<DocInfo> infos) throws IOException{
+		StringBuilder entries = new StringBuilder(infos.size() * 140);
+		for(DocInfo info:infos){
+			String row = DocInfoCsv.format(info);
+			entries.append(checksum(row)).append('\t').append(row).append('\n');
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(entries.toString().getBytes(StreamingDocxRenderer.UTF_8));
+
+		synchronized(SpreadsheetManager.monitorFor(file)){
+			FileLock lock = channel.lock();
+			try{
+				long position = channel.size();
+				while(buffer.hasRemaining()){
+					position += channel.write(buffer, position);
+				}
+			}
+			finally{
+				lock.release();
+			}
+		}
+	}
+
+	/**
+	 * Forces the logged classes to disk.
+	 * @throws IOException If the journal cannot be forced
+	 */
+	public void sync() throws IOException{
+		channel.force(false);
+	}
+
+	/**
+	 * Appends every logged class to the spreadsheet with one lock and one
+	 * fsync, then empties the journal. Classes already in the spreadsheet are
+	 * skipped. The journal stays locked the whole time, so classes logged
+	 * meanwhile by another program wait for the next apply.
+	 * @return Number of classes added to the spreadsheet
+	 * @throws IOException If the spreadsheet cannot be written. The classes
+	 * stay in the journal.
+	 */
+	public int apply() throws IOException{
+		return applyRows().size();
+	}
+
+	/**
+	 * Returns the number of classes logged but not yet applied.
+	 * @throws IOException If the journal cannot be read
+	 */
+	public int pending() throws IOException{
+		synchronized(SpreadsheetManager.monitorFor(file)){
+			FileLock lock = channel.lock();
+			try{
+				return readEntries().size();
+			}
+			finally{
+				lock.release();
+			}
+		}
+	}
+
+	public File getSpreadsheet(){
+		return spreadsheet;
+	}
+
+	@Override
+	public void close() throws IOException{
+		channel.close();
+	}
+
+	//******************* PACKAGE METHODS *******************
+	/**
+	 * Returns the journal file of a spreadsheet, named after a hash of its
+	 * canonical path.
+	 */
+	static File journalFile(File spreadsheet) throws IOException{
+		String path = spreadsheet.getCanonicalPath();
+		return new File(JOURNAL_DIRECTORY, QuestionSet.hash(Collections.singletonList(path)) + EXTENSION);
+	}
+
+	/**
+	 * Same as apply(), but returns the classes that were added.
+	 */
+	List<DocInfo> applyRows() throws IOException{
+		return applyRows(Collections.<DocInfo>emptyList());
+	}
+
+	/**
+	 * Same as applyRows(), for classes the caller has just logged and will
+	 * report as not added if this fails. If the spreadsheet cannot be
+	 * written they are taken out of the journal again, so they are not added
+	 * later by the next apply or at startup. Other entries stay.
+	 * @param logged Classes to take out of the journal on failure
+	 * @throws IOException If the spreadsheet cannot be written. If the
+	 * classes could not be taken out either, the message says they will be
+	 * added later.
+	 */
+	List<DocInfo> applyRows(List<DocInfo> logged) throws IOException{
+		synchronized(SpreadsheetManager.monitorFor(file)){
+			FileLock lock = channel.lock();
+			try{
+				List<DocInfo> entries = readEntries();
+				if(entries.isEmpty()){
+					return entries;
+				}
+				List<DocInfo> added;
+				try {
+					added = SpreadsheetManager.appendRows(spreadsheet, entries);
+				} catch (IOException e) {
+					try {
+						removeEntries(logged);
+					} catch (IOException removeFailed) {
+						throw new IOException("Unable to write the spreadsheet, the classes will be added "
+								+ "the next time it is opened: " + e.getMessage(), e);
+					}
+					throw e;
+				}
+				channel.truncate(entriesStart);
+				channel.force(false);
+				return added;
+			}
+			finally{
+				lock.release();
+			}
+		}
+	}
+
+	//******************* PRIVATE METHODS *******************
+	/**
+	 * Writes the header of a new journal and truncates a damaged last entry.
+	 * Must hold the journal lock.
+	 */
+	private void recover() throws IOException{
+		byte[] header = (MAGIC + '\t' + spreadsheet.getPath() + '\n').getBytes(StreamingDocxRenderer.UTF_8);
+		entriesStart = header.length;
+
+		byte[] contents = readAll();
+		if(contents.length < header.length || !startsWith(contents, header)){
+			// New or unreadable journal
+			channel.truncate(0);
+			ByteBuffer buffer = ByteBuffer.wrap(header);
+			long position = 0;
+			while(buffer.hasRemaining()){
+				position += channel.write(buffer, position);
+			}
+			channel.force(false);
+			return;
+		}
+
+		long valid = validLength(contents);
+		if(valid < contents.length){
+			System.out.println("Truncating damaged entry at the end of spreadsheet journal " + file);
+			channel.truncate(valid);
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * Returns the logged classes. Must hold the journal lock.
+	 */
+	private List<DocInfo> readEntries() throws IOException{
+		byte[] contents = readAll();
+		ArrayList<DocInfo> entries = new ArrayList<DocInfo>();
+		int start = (int) entriesStart;
+		for(int i = start; i < contents.length; i++){
+			if(contents[i] != '\n'){
+				continue;
+			}
+			String entry = new String(contents, start, i - start, StreamingDocxRenderer.UTF_8);
+			start = i + 1;
+
+			String row = checkedRow(entry);
+			if(row == null){
+				// Damaged entries are truncated when the journal is opened
+				break;
+			}
+			try {
+				entries.add(DocInfoCsv.parse(row));
+			} catch (IllegalArgumentException e) {
+				System.out.println("Skipping unreadable journal entry: " + row);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Takes one entry out of the journal for each class, the first one with
+	 * the same row. The entries after it are moved up. Must hold the journal
+	 * lock.
+	 */
+	private void removeEntries(List<DocInfo> infos) throws IOException{
+		if(infos.isEmpty()){
+			return;
+		}
+		ArrayList<String> rows = new ArrayList<String>(infos.size());
+		for(DocInfo info:infos){
+			rows.add(DocInfoCsv.format(info));
+		}
+
+		byte[] contents = readAll();
+		StringBuilder kept = new StringBuilder(contents.length);
+		int start = (int) entriesStart;
+		for(int i = start; i < contents.length; i++){
+			if(contents[i] != '\n'){
+				continue;
+			}
+			String entry = new String(contents, start, i - start, StreamingDocxRenderer.UTF_8);
+			start = i + 1;
+			if(!rows.remove(checkedRow(entry))){
+				kept.append(entry).append('\n');
+			}
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(kept.toString().getBytes(StreamingDocxRenderer.UTF_8));
+		long position = entriesStart;
+		while(buffer.hasRemaining()){
+			position += channel.write(buffer, position);
+		}
+		channel.truncate(position);
+		channel.force(false);
+	}
+
+	/**
+	 * Returns the length of the journal up to the first entry that is cut
+	 * short or fails its check.
+	 */
+	private long validLength(byte[] contents){
+		int start = (int) entriesStart;
+		for(int i = start; i < contents.length; i++){
+			if(contents[i] == '\n'){
+				if(checkedRow(new String(contents, start, i - start, StreamingDocxRenderer.UTF_8)) == null){
+					return start;
+				}
+				start = i + 1;
+			}
+		}
+		return start;
+	}
+
+	/**
+	 * Returns the row of an entry, or null if its checksum does not match.
+	 */
+	private static String checkedRow(String entry){
+		int tab = entry.indexOf('\t');
+		if(tab < 0){
+			return null;
+		}
+		String row = entry.substring(tab + 1);
+		return entry.substring(0, tab).equals(checksum(row)) ? row : null;
+	}
+
+	private static String checksum(String row){
+		CRC32 crc = new CRC32();
+		crc.update(row.getBytes(StreamingDocxRenderer.UTF_8));
+		return String.format("%08x", crc.getValue());
+	}
+
+	private byte[] readAll() throws IOException{
+		long size = channel.size();
+		ByteBuffer buffer = ByteBuffer.allocate((int) size);
+		long position = 0;
+		while(buffer.hasRemaining()){
+			int read = channel.read(buffer, position);
+			if(read < 0){
+				break;
+			}
+			position += read;
+		}
+		return buffer.array();
+	}
+
+	private static boolean startsWith(byte[] contents, byte[] prefix){
+		for(int i = 0; i < prefix.length; i++){
+			if(contents[i] != prefix[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the spreadsheet path from the header of a journal file, or
+	 * returns null if it is not a journal.
+	 */
+	private static File readSpreadsheetPath(File journal) throws IOException{
+		FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.READ);
+		try{
+			ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), 8192));
+			channel.read(buffer, 0);
+			String text = new String(buffer.array(), 0, buffer.position(), StreamingDocxRenderer.UTF_8);
+			int newline = text.indexOf('\n');
+			if(newline < 0 || !text.startsWith(MAGIC + '\t')){
+				return null;
+			}
+			return new File(text.substring(MAGIC.length() + 1, newline));
+		}
+		finally{
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,318 @@
+/**
+ * Keeps the class tracking spreadsheet, a CSV file with one row per class in
+ * the DocInfoCsv format. Several people may point at the same file on a
+ * shared drive, so every write takes an exclusive OS lock on the file
+ * (FileChannel.lock) and only appends: rows are encoded into one buffer,
+ * written through a single channel at the end of the file, and forced to
+ * disk once. The file is never read back or rewritten, so appending costs
+ * the same however large the spreadsheet is.
+ *
+ * OS file locks are held by the whole JVM, so writers within the program
+ * also take a lock object per file before locking the file itself.
+ *
+ * A class that is already in the spreadsheet is not added again. Duplicates
+ * are found with a hash index kept next to the spreadsheet, see
+ * SpreadsheetIndex, so the check does not slow down as the file grows.
+ *
+ * Classes are written to a journal on the local disk before they are
+ * appended, see SpreadsheetJournal, so a class is not lost if the program is
+ * killed while the spreadsheet is locked or being written. The index records
+ * where the file ended before each append, and a write that was interrupted
+ * is cut off before the next append, see SpreadsheetIndex.
+ *
+ * Counts per semester, subject, and instructor are kept up to date in
+ * another file next to the spreadsheet, see SpreadsheetSummary.
+ *
+ * For batches, SpreadsheetAppender collects rows and appends many of them
+ * per lock and per fsync.
+ *
+ * In client mode, classes are sent to the spreadsheet daemon on this
+ * computer (SpreadsheetServer) instead, which coalesces the appends of every
+ * program using it. If the daemon is not running the file is written
+ * directly, and so is a new spreadsheet, since the daemon only writes to
+ * existing ones.
+ */
+
+package org.EvalGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SpreadsheetManager {
+	public static final String EXTENSION = ".csv";
+	// CSV files use CRLF line endings (RFC 4180), which is also what Excel writes
+	static final String LINE_END = "\r\n";
+	// Port of the spreadsheet daemon, client mode is used if it is set
+	public static final String DAEMON_PORT_PROPERTY = "evalgen.spreadsheet.port";
+
+	//******************* DATA MEMBERS *******************
+	// Lock objects keyed by canonical path, for writers in this JVM
+	private static final ConcurrentHashMap<String, Object> fileMonitors = new ConcurrentHashMap<String, Object>();
+	// Null when writing the file directly
+	private final SpreadsheetClient client;
+	private volatile boolean daemonMissing;
+
+	//******************* CONSTRUCTORS *******************
+	/**
+	 * Writes spreadsheets directly.
+	 */
+	public SpreadsheetManager(){
+		this(0);
+	}
+
+	/**
+	 * @param daemonPort Port of the spreadsheet daemon to send classes to, or
+	 * 0 to write spreadsheets directly
+	 */
+	public SpreadsheetManager(int daemonPort){
+		this.client = daemonPort > 0 ? new SpreadsheetClient(daemonPort) : null;
+	}
+
+	//******************* PUBLIC METHODS *******************
+	/**
+	 * Appends a class to the end of an existing spreadsheet, unless it is
+	 * already in it.
+	 * @param spreadsheet CSV file
+	 * @param info Class to add
+	 * @return True if the class was added, false if it was already in the spreadsheet
+	 * @throws IOException If the file cannot be locked or written
+	 */
+	public boolean addClassToSpreadsheet(File spreadsheet, DocInfo info) throws IOException{
+		if(append(spreadsheet, Collections.singletonList(info)) == 0){
+			System.out.println("Class is already in the spreadsheet, not added again.");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Appends several classes with one lock and one fsync. Classes that are
+	 * already in the spreadsheet, or earlier in the list, are skipped.
+	 * @param spreadsheet CSV file
+	 * @param infos Classes to add, in order
+	 * @return Number of classes added
+	 * @throws IOException If the file cannot be locked or written
+	 */
+	public int addClassesToSpreadsheet(File spreadsheet, List<DocInfo> infos) throws IOException{
+		return append(spreadsheet, infos);
+	}
+
+	/**
+	 * Returns true if a class with the same instructor, course, section,
+	 * semester, and year is already in the spreadsheet.
+	 * @throws IOException If the file cannot be locked or the index read
+	 */
+	public boolean containsClass(File spreadsheet, DocInfo info) throws IOException{
+		if(!spreadsheet.exists()){
+			return false;
+		}
+		synchronized(monitorFor(spreadsheet)){
+			FileChannel channel = FileChannel.open(spreadsheet.toPath(), StandardOpenOption.WRITE,
+					StandardOpenOption.READ);
+			try{
+				FileLock lock = channel.lock();
+				try{
+					SpreadsheetIndex index = SpreadsheetIndex.open(spreadsheet, channel);
+					try{
+						return index.contains(info);
+					}
+					finally{
+						index.close();
+					}
+				}
+				finally{
+					lock.release();
+				}
+			}
+			finally{
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Creates a new spreadsheet with the column header and adds a class to it.
+	 * If the file was created by someone else in the meantime, the class is
+	 * appended to it and the header is not repeated.
+	 * @param directory Directory the spreadsheet is created in
+	 * @param name File name without the .csv extension
+	 * @param info Class to add
+	 * @return The spreadsheet file
+	 * @throws IOException If the file cannot be created, locked, or written
+	 */
+	public File createNewSpreadsheet(File directory, String name, DocInfo info) throws IOException{
+		File spreadsheet = new File(directory, name + EXTENSION);
+		append(spreadsheet, Collections.singletonList(info));
+		return spreadsheet;
+	}
+
+	//******************* PACKAGE METHODS *******************
+	/**
+	 * Locks the spreadsheet and appends the rows that are not duplicates in
+	 * one write. The header is written first if the file is empty, and a line
+	 * break if the last row has none. The index records where the file ended
+	 * before the write and is updated after the CSV has been written, so an
+	 * interrupted write is cut off the next time the index is opened.
+	 * @return The classes appended, in order
+	 */
+	static List<DocInfo> appendRows(File spreadsheet, List<DocInfo> infos) throws IOException{
+		if(infos.isEmpty()){
+			return Collections.emptyList();
+		}
+
+		synchronized(monitorFor(spreadsheet)){
+			FileChannel channel = FileChannel.open(spreadsheet.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.READ);
+			try{
+				FileLock lock = channel.lock();
+				SpreadsheetIndex index = null;
+				try{
+					// Opening the index cuts off an interrupted append
+					index = SpreadsheetIndex.open(spreadsheet, channel);
+					long size = channel.size();
+					SpreadsheetSummary summary = SpreadsheetSummary.open(spreadsheet, channel);
+					StringBuilder rows = new StringBuilder(infos.size() * 128 + DocInfoCsv.HEADER.length() + 4);
+					if(size == 0){
+						rows.append(DocInfoCsv.HEADER).append(LINE_END);
+					}
+					else if(!endsWithLineBreak(channel, size)){
+						rows.append(LINE_END);
+					}
+					ArrayList<DocInfo> added = new ArrayList<DocInfo>(infos.size());
+					HashSet<String> identities = new HashSet<String>();
+					for(DocInfo info:infos){
+						if(index.contains(info) || !identities.add(SpreadsheetIndex.identity(info))){
+							continue;
+						}
+						added.add(info);
+						rows.append(DocInfoCsv.format(info)).append(LINE_END);
+					}
+					if(added.isEmpty()){
+						return added;
+					}
+
+					ByteBuffer buffer = ByteBuffer.wrap(rows.toString().getBytes(StreamingDocxRenderer.UTF_8));
+					index.beginAppend(size);
+					long position = size;
+					while(buffer.hasRemaining()){
+						position += channel.write(buffer, position);
+					}
+					channel.force(false);
+
+					// Only index rows once they are on disk
+					for(DocInfo info:added){
+						index.add(info);
+					}
+					index.commit(position);
+					for(DocInfo info:added){
+						summary.add(info);
+					}
+					try {
+						summary.commit(spreadsheet, position);
+					} catch (IOException e) {
+						// The rows are written, the summary is rebuilt next time
+						System.out.println("Unable to update spreadsheet summary: " + e.getMessage());
+					}
+					return added;
+				}
+				finally{
+					if(index != null){
+						index.close();
+					}
+					lock.release();
+				}
+			}
+			finally{
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Returns the lock object for a file, shared by every writer in this JVM.
+	 */
+	static Object monitorFor(File file) throws IOException{
+		String key = file.getCanonicalPath();
+		Object monitor = fileMonitors.get(key);
+		if(monitor == null){
+			Object created = new Object();
+			monitor = fileMonitors.putIfAbsent(key, created);
+			if(monitor == null){
+				monitor = created;
+			}
+		}
+		return monitor;
+	}
+
+	//******************* PRIVATE METHODS *******************
+	/**
+	 * Sends classes to the daemon in client mode, otherwise writes them. A
+	 * spreadsheet that does not exist yet is created here.
+	 * @return Number of classes added
+	 */
+	private int append(File spreadsheet, List<DocInfo> infos) throws IOException{
+		if(client != null && !infos.isEmpty() && spreadsheet.isFile()){
+			try {
+				return client.add(spreadsheet, infos);
+			} catch (ConnectException e) {
+				if(!daemonMissing){
+					System.out.println("Spreadsheet daemon is not running, writing the spreadsheet directly.");
+					daemonMissing = true;
+				}
+			}
+		}
+		return journalAndApply(spreadsheet, infos);
+	}
+
+	/**
+	 * Logs classes to the spreadsheet's journal and applies it. If the
+	 * spreadsheet cannot be written the classes are taken out of the journal
+	 * again, so they are not added after being reported as failed.
+	 * @return Number of classes added
+	 */
+	private static int journalAndApply(File spreadsheet, List<DocInfo> infos) throws IOException{
+		if(infos.isEmpty()){
+			return 0;
+		}
+		// Held throughout so other threads do not apply these classes first
+		synchronized(monitorFor(SpreadsheetJournal.journalFile(spreadsheet))){
+			SpreadsheetJournal journal = new SpreadsheetJournal(spreadsheet);
+			try{
+				journal.log(infos);
+				journal.sync();
+				HashSet<String> logged = new HashSet<String>();
+				for(DocInfo info:infos){
+					logged.add(SpreadsheetIndex.identity(info));
+				}
+				int added = 0;
+				for(DocInfo info:journal.applyRows(infos)){
+					if(logged.contains(SpreadsheetIndex.identity(info))){
+						added++;
+					}
+				}
+				return added;
+			}
+			finally{
+				journal.close();
+			}
+		}
+	}
+
+	private static boolean endsWithLineBreak(FileChannel channel, long size) throws IOException{
+		ByteBuffer last = ByteBuffer.allocate(1);
+		if(channel.read(last, size - 1) != 1){
+			return false;
+		}
+		return last.get(0) == '\n';
+	}
+}
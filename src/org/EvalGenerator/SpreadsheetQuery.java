@@ -0,0 +1,349 @@
+/**
+ * Finds the classes in a tracking spreadsheet that match a filter on semester,
+ * year, subject, and instructor. Filters that are not set match every class.
+ * The spreadsheet is streamed with SpreadsheetReader, so memory use does not
+ * depend on its size: visit() and count() hold one row per thread, and find()
+ * holds at most the requested number of matches per thread.
+ *
+ * With more than one thread the file is split into byte ranges that start at
+ * row boundaries and the ranges are scanned at the same time.
+ *
+ * Can be run from the command line:
+ * SpreadsheetQuery spreadsheet.csv [--semester name] [--year yyyy] [--subject code]
+ *                  [--instructor name] [--threads n] [--limit n] [--count]
+ * Matching rows are printed in the spreadsheet format.
+ */
+
+package org.EvalGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.EvalGenerator.DocInfo.Semester;
+
+public class SpreadsheetQuery {
+	//******************* DATA MEMBERS *******************
+	private Semester semester;
+	private String year;
+	private String subject;
+	private String instructor;
+	private int threads = 1;
+	private int malformedRows;
+
+	/**
+	 * Receives the matching classes. With more than one thread it is called
+	 * from several threads at once and in no particular order.
+	 */
+	public interface Visitor {
+		void visit(DocInfo info);
+	}
+
+	//******************* PUBLIC METHODS *******************
+	public static void main(String[] args) {
+		if(args.length < 1){
+			System.err.println("Usage: SpreadsheetQuery spreadsheet.csv [--semester name] [--year yyyy] "
+					+ "[--subject code] [--instructor name] [--threads n] [--limit n] [--count]");
+			System.exit(2);
+		}
+
+		File spreadsheet = new File(args[0]);
+		SpreadsheetQuery query = new SpreadsheetQuery();
+		int limit = Integer.MAX_VALUE;
+		boolean count = false;
+
+		try {
+			for(int i = 1; i < args.length; i++){
+				if(args[i].equals("--semester") && i + 1 < args.length){
+					query.semester(DocInfoCsv.parseSemester(args[++i]));
+				}
+				else if(args[i].equals("--year") && i + 1 < args.length){
+					query.year(args[++i]);
+				}
+				else if(args[i].equals("--subject") && i + 1 < args.length){
+					query.subject(args[++i]);
+				}
+				else if(args[i].equals("--instructor") && i + 1 < args.length){
+					query.instructor(args[++i]);
+				}
+				else if(args[i].equals("--threads") && i + 1 < args.length){
+					query.threads(Integer.parseInt(args[++i]));
+				}
+				else if(args[i].equals("--limit") && i + 1 < args.length){
+					limit = Integer.parseInt(args[++i]);
+				}
+				else if(args[i].equals("--count")){
+					count = true;
+				}
+				else{
+					System.err.println("Unknown option: " + args[i]);
+					System.exit(2);
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
+		}
+
+		try {
+			if(count){
+				System.out.println(query.count(spreadsheet));
+			}
+			else{
+				for(DocInfo info:query.find(spreadsheet, limit)){
+					System.out.println(DocInfoCsv.format(info));
+				}
+			}
+			if(query.getMalformedRows() > 0){
+				System.err.println(query.getMalformedRows() + " rows could not be read");
+			}
+		} catch (IOException e) {
+			System.err.println("Unable to read spreadsheet: " + e.getMessage());
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Only matches classes in a semester.
+	 */
+	public SpreadsheetQuery semester(Semester semester){
+		this.semester = semester;
+		return this;
+	}
+
+	/**
+	 * Only matches classes in a year.
+	 */
+	public SpreadsheetQuery year(String year){
+		this.year = year != null ? year.trim() : null;
+		return this;
+	}
+
+	/**
+	 * Only matches classes with a subject, ignoring case.
+	 */
+	public SpreadsheetQuery subject(String subject){
+		this.subject = subject != null ? subject.trim() : null;
+		return this;
+	}
+
+	/**
+	 * Only matches classes whose instructor's full name contains the text,
+	 * ignoring case.
+	 */
+	public SpreadsheetQuery instructor(String instructor){
+		this.instructor = instructor != null ? instructor.trim().toLowerCase(Locale.ENGLISH) : null;
+		return this;
+	}
+
+	/**
+	 * Sets the number of threads the spreadsheet is scanned with.
+	 */
+	public SpreadsheetQuery threads(int threads){
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	/**
+	 * Returns true if a class passes every filter that is set.
+	 */
+	public boolean matches(DocInfo info){
+		if(semester != null && info.getSemester() != semester){
+			return false;
+		}
+		if(year != null && !year.equals(info.getYear().trim())){
+			return false;
+		}
+		if(subject != null && !subject.equalsIgnoreCase(info.getSubject().trim())){
+			return false;
+		}
+		if(instructor != null){
+			String name = (info.getInstFName().trim() + " " + info.getInstLName().trim()).toLowerCase(Locale.ENGLISH);
+			if(!name.contains(instructor)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Passes every matching class to the visitor.
+	 * @return Number of matching classes
+	 * @throws IOException If the spreadsheet cannot be read
+	 */
+	public int visit(File spreadsheet, final Visitor visitor) throws IOException{
+		final AtomicInteger matches = new AtomicInteger();
+		scan(spreadsheet, new Visitor(){
+			public void visit(DocInfo info){
+				matches.incrementAndGet();
+				visitor.visit(info);
+			}
+		}, Integer.MAX_VALUE);
+		return matches.get();
+	}
+
+	/**
+	 * Returns the number of matching classes.
+	 * @throws IOException If the spreadsheet cannot be read
+	 */
+	public int count(File spreadsheet) throws IOException{
+		return visit(spreadsheet, new Visitor(){
+			public void visit(DocInfo info){
+			}
+		});
+	}
+
+	/**
+	 * Returns the first matching classes in spreadsheet order.
+	 * @param limit Maximum number of classes returned
+	 * @throws IOException If the spreadsheet cannot be read
+	 */
+	public List<DocInfo> find(File spreadsheet, int limit) throws IOException{
+		List<List<DocInfo>> ranges = scan(spreadsheet, null, limit);
+		ArrayList<DocInfo> found = new ArrayList<DocInfo>();
+		for(List<DocInfo> range:ranges){
+			for(DocInfo info:range){
+				if(found.size() == limit){
+					return found;
+				}
+				found.add(info);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the number of rows the last scan could not parse.
+	 */
+	public int getMalformedRows(){
+		return malformedRows;
+	}
+
+	//******************* PACKAGE METHODS *******************
+	/**
+	 * Splits the file into up to parts ranges of about equal size. Every
+	 * boundary is moved forward to the start of the next row.
+	 * @return Start of each range followed by the end of the file
+	 */
+	static long[] splitRows(FileChannel channel, int parts) throws IOException{
+		long size = channel.size();
+		// Small files are not worth splitting
+		int count = (int) Math.max(1, Math.min(parts, size / (1024 * 1024)));
+
+		long[] bounds = new long[count + 1];
+		bounds[count] = size;
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		for(int i = 1; i < count; i++){
+			long position = Math.max(bounds[i - 1], size / count * i);
+			bounds[i] = nextRowStart(channel, position, size, buffer);
+		}
+		return bounds;
+	}
+
+	//******************* PRIVATE METHODS *******************
+	/**
+	 * Scans every range of the spreadsheet. Matches go to the visitor, or if
+	 * there is none, into a list per range of at most limit classes.
+	 * @return Matches of each range in file order, empty if a visitor was given
+	 */
+	private List<List<DocInfo>> scan(File spreadsheet, final Visitor visitor, final int limit) throws IOException{
+		final FileChannel channel = FileChannel.open(spreadsheet.toPath(), StandardOpenOption.READ);
+		ExecutorService pool = null;
+		try{
+			long[] bounds = splitRows(channel, threads);
+			final AtomicInteger malformed = new AtomicInteger();
+
+			ArrayList<Future<List<DocInfo>>> results = new ArrayList<Future<List<DocInfo>>>();
+			pool = Executors.newFixedThreadPool(bounds.length - 1);
+			for(int i = 0; i + 1 < bounds.length; i++){
+				final long start = bounds[i];
+				final long end = bounds[i + 1];
+				results.add(pool.submit(new Callable<List<DocInfo>>(){
+					public List<DocInfo> call() throws IOException{
+						return scanRange(channel, start, end, visitor, limit, malformed);
+					}
+				}));
+			}
+
+			ArrayList<List<DocInfo>> ranges = new ArrayList<List<DocInfo>>(results.size());
+			for(Future<List<DocInfo>> result:results){
+				ranges.add(result.get());
+			}
+			malformedRows = malformed.get();
+			return ranges;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading spreadsheet", e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException){
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Unable to read spreadsheet", e.getCause());
+		}
+		finally{
+			if(pool != null){
+				pool.shutdownNow();
+			}
+			channel.close();
+		}
+	}
+
+	private List<DocInfo> scanRange(FileChannel channel, long start, long end, Visitor visitor,
+			int limit, AtomicInteger malformed) throws IOException{
+		ArrayList<DocInfo> found = new ArrayList<DocInfo>();
+		SpreadsheetReader reader = new SpreadsheetReader(channel, start, end);
+		try{
+			DocInfo info;
+			while((info = reader.next()) != null){
+				if(!matches(info)){
+					continue;
+				}
+				if(visitor != null){
+					visitor.visit(info);
+				}
+				else{
+					found.add(info);
+					if(found.size() >= limit){
+						break;
+					}
+				}
+			}
+			malformed.addAndGet(reader.getMalformedRows());
+		}
+		finally{
+			reader.close();
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the position after the first line break at or after position.
+	 */
+	private static long nextRowStart(FileChannel channel, long position, long size, ByteBuffer buffer) throws IOException{
+		while(position < size){
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if(read <= 0){
+				break;
+			}
+			for(int i = 0; i < read; i++){
+				if(buffer.get(i) == '\n'){
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+}
@@ -0,0 +1,165 @@
+/**
+ * Reads the classes in a tracking spreadsheet one at a time without loading
+ * the file. The file is read in windows of a few hundred kilobytes into one
+ * buffer, so memory use is the same for a spreadsheet of any size, and only
+ * the current row is decoded into a String.
+ *
+ * The windows are read with positioned reads rather than memory mapped. A
+ * mapping stays until it is garbage collected, and while it does Windows
+ * refuses to truncate the file, which SpreadsheetManager does to repair a
+ * torn row. A reader holds nothing on the file once it is closed.
+ *
+ * A reader can cover a byte range of the file, which is how SpreadsheetQuery
+ * scans parts of a spreadsheet in parallel. A range starts at the beginning of
+ * a row, and a row belongs to the range it starts in.
+ *
+ * Only the rows that were in the file when the reader was opened are read.
+ * The header, blank lines, and rows that cannot be parsed are skipped, the
+ * latter are counted by getMalformedRows().
+ */
+
+package org.EvalGenerator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+public class SpreadsheetReader implements Closeable {
+	private static final int WINDOW_SIZE = 256 * 1024;
+
+	//******************* DATA MEMBERS *******************
+	private final FileChannel channel;
+	private final boolean ownsChannel;
+	private final long end;
+	// Size of the file when the reader was opened
+	private final long fileSize;
+
+	// Bytes of the current window and the file position of its first byte
+	private final byte[] window = new byte[WINDOW_SIZE];
+	private int windowLength;
+	private long windowStart;
+	// File position of the next row
+	private long position;
+
+	private byte[] line = new byte[256];
+	private int malformedRows;
+
+	//******************* CONSTRUCTORS *******************
+	/**
+	 * Opens a reader for the whole spreadsheet.
+	 * @param spreadsheet CSV file
+	 * @throws IOException If the file cannot be opened
+	 */
+	public SpreadsheetReader(File spreadsheet) throws IOException{
+		this(FileChannel.open(spreadsheet.toPath(), StandardOpenOption.READ), true, 0, -1);
+	}
+
+	/**
+	 * Opens a reader for the rows that start in a range of a file.
+	 * @param channel Open channel of the CSV file. Not closed by the reader.
+	 * @param start Position of the first byte of a row
+	 * @param end Position after the last byte of the range
+	 */
+	SpreadsheetReader(FileChannel channel, long start, long end) throws IOException{
+		this(channel, false, start, end);
+	}
+
+	private SpreadsheetReader(FileChannel channel, boolean ownsChannel, long start, long end) throws IOException{
+		this.channel     = channel;
+		this.ownsChannel = ownsChannel;
+		this.position    = start;
+		this.fileSize    = channel.size();
+		this.end         = end < 0 ? fileSize : Math.min(end, fileSize);
+	}
+
+	//******************* PUBLIC METHODS *******************
+	/**
+	 * Returns the next class, or null at the end of the spreadsheet or range.
+	 * @throws IOException If the file cannot be read
+	 */
+	public DocInfo next() throws IOException{
+		String row;
+		while((row = nextRow()) != null){
+			if(row.isEmpty() || DocInfoCsv.isHeader(row)){
+				continue;
+			}
+			try {
+				return DocInfoCsv.parse(row);
+			} catch (IllegalArgumentException e) {
+				malformedRows++;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of rows skipped because they could not be parsed.
+	 */
+	public int getMalformedRows(){
+		return malformedRows;
+	}
+
+	@Override
+	public void close() throws IOException{
+		if(ownsChannel){
+			channel.close();
+		}
+	}
+
+	//******************* PRIVATE METHODS *******************
+	/**
+	 * Returns the next row without its line ending, or null if no row starts
+	 * before the end of the range. The last row of the file may have no line
+	 * break.
+	 */
+	private String nextRow() throws IOException{
+		if(position >= end){
+			return null;
+		}
+
+		int length = 0;
+		long scan = position;
+		while(scan < fileSize){
+			if(scan < windowStart || scan >= windowStart + windowLength){
+				read(scan);
+			}
+			byte b = window[(int) (scan - windowStart)];
+			scan++;
+			if(b == '\n'){
+				break;
+			}
+			if(length == line.length){
+				byte[] larger = new byte[line.length * 2];
+				System.arraycopy(line, 0, larger, 0, length);
+				line = larger;
+			}
+			line[length++] = b;
+		}
+		position = scan;
+
+		if(length > 0 && line[length - 1] == '\r'){
+			length--;
+		}
+		return new String(line, 0, length, StreamingDocxRenderer.UTF_8).trim();
+	}
+
+	/**
+	 * Reads the window starting at a file position, up to the size of the
+	 * file when the reader was opened. The channel's own position is not
+	 * used, so readers of different ranges can share it.
+	 */
+	private void read(long start) throws IOException{
+		ByteBuffer buffer = ByteBuffer.wrap(window, 0, (int) Math.min(WINDOW_SIZE, fileSize - start));
+		while(buffer.hasRemaining()){
+			if(channel.read(buffer, start + buffer.position()) < 0){
+				throw new EOFException("Spreadsheet was truncated while being read");
+			}
+		}
+		windowStart  = start;
+		windowLength = buffer.position();
+	}
+}
@@ -0,0 +1,428 @@
+/**
+ * Daemon that owns the tracking spreadsheets for the programs on this
+ * computer. Instead of every window locking and writing the CSV on the shared
+ * drive itself, a SpreadsheetManager in client mode sends each class here and
+ * the daemon does the writing. Classes that arrive within a few milliseconds
+ * of each other are coalesced: they are logged to the spreadsheet's journal
+ * and appended with one lock and one fsync, then each sender is told whether
+ * its class was added or was already in the spreadsheet.
+ *
+ * The daemon only listens on the loopback address. Other users of the
+ * computer can still connect, so it only writes to files that are already
+ * tracking spreadsheets, starting with the column header. Anything else is
+ * answered with ERROR; a new spreadsheet is created by the program itself.
+ * Requests and replies are single lines of UTF-8 text:
+ *   ADD <tab> spreadsheet path <tab> row in the spreadsheet format
+ *     -> ADDED, DUPLICATE, or ERROR <tab> message
+ *   PING -> PONG
+ *
+ * Run with:
+ * SpreadsheetServer [--port n] [--batch-millis n]
+ */
+
+package org.EvalGenerator;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class SpreadsheetServer implements Closeable {
+	public static final int DEFAULT_PORT = 47811;
+	public static final int DEFAULT_BATCH_MILLIS = 20;
+	private static final int MAX_BATCH = 1024;
+
+	// Protocol
+	static final String ADD = "ADD";
+	static final String PING = "PING";
+	static final String ADDED = "ADDED";
+	static final String DUPLICATE = "DUPLICATE";
+	static final String ERROR = "ERROR";
+	static final String PONG = "PONG";
+
+	//******************* DATA MEMBERS *******************
+	private final ServerSocket serverSocket;
+	private final int batchMillis;
+	private final LinkedBlockingQueue<Append> queue = new LinkedBlockingQueue<Append>();
+	private final ExecutorService connections;
+	// Open journals by spreadsheet, only used by the writer thread
+	private final HashMap<File, SpreadsheetJournal> journals = new HashMap<File, SpreadsheetJournal>();
+	// Files found to be spreadsheets, which stay so since they are only appended to
+	private final Set<File> spreadsheets = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+	private Thread acceptor;
+	private Thread writer;
+	private volatile boolean closed;
+
+	/**
+	 * A class waiting to be appended, and the reply once it has been.
+	 */
+	private static final class Append {
+		final File spreadsheet;
+		final DocInfo info;
+		final CountDownLatch done = new CountDownLatch(1);
+		volatile String reply;
+
+		Append(File spreadsheet, DocInfo info){
+			this.spreadsheet = spreadsheet;
+			this.info        = info;
+		}
+
+		void finish(String reply){
+			this.reply = reply;
+			done.countDown();
+		}
+	}
+
+	//******************* CONSTRUCTORS *******************
+	/**
+	 * Opens the server socket on the loopback address.
+	 * @param port Port to listen on, or 0 for any free port
+	 * @param batchMillis How long to wait for more classes before writing
+	 * @throws IOException If the port cannot be opened
+	 */
+	public SpreadsheetServer(int port, int batchMillis) throws IOException{
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.batchMillis  = Math.max(0, batchMillis);
+		this.connections  = Executors.newCachedThreadPool(new ThreadFactory(){
+			public Thread newThread(Runnable r){
+				Thread thread = new Thread(r, "Spreadsheet daemon connection");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	//******************* PUBLIC METHODS *******************
+	public static void main(String[] args) {
+		int port = DEFAULT_PORT;
+		int batchMillis = DEFAULT_BATCH_MILLIS;
+
+		try {
+			for(int i = 0; i < args.length; i++){
+				if(args[i].equals("--port") && i + 1 < args.length){
+					port = Integer.parseInt(args[++i]);
+				}
+				else if(args[i].equals("--batch-millis") && i + 1 < args.length){
+					batchMillis = Integer.parseInt(args[++i]);
+				}
+				else{
+					System.err.println("Usage: SpreadsheetServer [--port n] [--batch-millis n]");
+					System.exit(2);
+				}
+			}
+		} catch (NumberFormatException e) {
+			System.err.println("Not a number: " + e.getMessage());
+			System.exit(2);
+		}
+
+		try {
+			int recovered = SpreadsheetJournal.recoverAll();
+			if(recovered > 0){
+				System.out.println("Recovered " + recovered + " classes from spreadsheet journals");
+			}
+			final SpreadsheetServer server = new SpreadsheetServer(port, batchMillis);
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable(){
+				public void run(){
+					server.close();
+				}
+			}));
+			server.start();
+			System.out.println("Spreadsheet daemon listening on port " + server.getPort());
+		} catch (IOException e) {
+			System.err.println("Unable to start spreadsheet daemon: " + e.getMessage());
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Starts accepting connections and writing.
+	 */
+	public synchronized void start(){
+		if(acceptor != null){
+			return;
+		}
+		writer = new Thread(new Runnable(){
+			public void run(){
+				write();
+			}
+		}, "Spreadsheet daemon writer");
+		writer.start();
+
+		acceptor = new Thread(new Runnable(){
+			public void run(){
+				accept();
+			}
+		}, "Spreadsheet daemon");
+		acceptor.start();
+	}
+
+	public int getPort(){
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Stops accepting connections, writes the classes already received, and
+	 * closes the journals.
+	 */
+	@Override
+	public void close(){
+		closed = true;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			System.out.println("Unable to close spreadsheet daemon socket: " + e.getMessage());
+		}
+		connections.shutdownNow();
+
+		Thread running;
+		synchronized(this){
+			running = writer;
+		}
+		// Not interrupted, that would close the journal channel it is writing.
+		// It notices closed within a second.
+		if(running != null){
+			try {
+				running.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	//******************* PRIVATE METHODS *******************
+	private void accept(){
+		while(!closed){
+			try {
+				final Socket socket = serverSocket.accept();
+				connections.execute(new Runnable(){
+					public void run(){
+						serve(socket);
+					}
+				});
+			} catch (IOException e) {
+				if(!closed){
+					System.out.println("Spreadsheet daemon stopped accepting: " + e.getMessage());
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Answers the requests of one connection. Requests that are already
+	 * waiting are queued together before any reply is awaited, so a client
+	 * that sends many classes at once has them written as one batch.
+	 */
+	private void serve(Socket socket){
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+					StreamingDocxRenderer.UTF_8));
+			Writer out = new OutputStreamWriter(socket.getOutputStream(), StreamingDocxRenderer.UTF_8);
+			String line;
+			while((line = in.readLine()) != null){
+				ArrayList<Object> replies = new ArrayList<Object>();
+				replies.add(receive(line));
+				while(in.ready() && (line = in.readLine()) != null){
+					replies.add(receive(line));
+				}
+
+				for(Object reply:replies){
+					if(reply instanceof Append){
+						Append append = (Append) reply;
+						append.done.await();
+						reply = append.reply;
+					}
+					out.write(reply + "\n");
+				}
+				out.flush();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (SocketException e) {
+			// Client went away or the daemon is closing
+		} catch (IOException e) {
+			System.out.println("Spreadsheet daemon connection failed: " + e.getMessage());
+		}
+		finally{
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * Handles a request line. Returns the queued append, or the reply if
+	 * there is nothing to wait for.
+	 */
+	private Object receive(String line){
+		if(line.equals(PING)){
+			return PONG;
+		}
+		String[] parts = line.split("\t", 3);
+		if(parts.length != 3 || !parts[0].equals(ADD)){
+			return error("Unknown request");
+		}
+		if(closed){
+			return error("Spreadsheet daemon is closing");
+		}
+		try {
+			File spreadsheet = new File(parts[1]).getCanonicalFile();
+			if(!isSpreadsheet(spreadsheet)){
+				return error("Not a tracking spreadsheet: " + spreadsheet);
+			}
+			Append append = new Append(spreadsheet, DocInfoCsv.parse(parts[2]));
+			queue.add(append);
+			return append;
+		} catch (IllegalArgumentException e) {
+			return error(e.getMessage());
+		} catch (IOException e) {
+			return error(e.getMessage());
+		}
+	}
+
+	/**
+	 * Writer thread. Waits for a class, collects the ones that arrive in the
+	 * next few milliseconds, and writes them per spreadsheet.
+	 */
+	private void write(){
+		ArrayList<Append> batch = new ArrayList<Append>();
+		try {
+			while(!closed){
+				Append first = queue.poll(1, TimeUnit.SECONDS);
+				if(first == null){
+					continue;
+				}
+				batch.add(first);
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchMillis);
+				while(batch.size() < MAX_BATCH){
+					long wait = deadline - System.nanoTime();
+					Append next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+					if(next == null){
+						break;
+					}
+					batch.add(next);
+				}
+				writeBatch(batch);
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		// Write what was received before closing
+		queue.drainTo(batch);
+		writeBatch(batch);
+		for(SpreadsheetJournal journal:journals.values()){
+			try {
+				journal.close();
+			} catch (IOException e) {
+			}
+		}
+		journals.clear();
+	}
+
+	/**
+	 * Returns true if the file exists and starts with the column header.
+	 */
+	private boolean isSpreadsheet(File file) throws IOException{
+		if(spreadsheets.contains(file)){
+			return true;
+		}
+		if(!file.isFile()){
+			return false;
+		}
+		byte[] header = DocInfoCsv.HEADER.getBytes(StreamingDocxRenderer.UTF_8);
+		byte[] start = new byte[header.length];
+		int length = 0;
+		InputStream in = new FileInputStream(file);
+		try{
+			int read;
+			while(length < start.length && (read = in.read(start, length, start.length - length)) > 0){
+				length += read;
+			}
+		}
+		finally{
+			in.close();
+		}
+		if(!Arrays.equals(start, header)){
+			return false;
+		}
+		spreadsheets.add(file);
+		return true;
+	}
+
+	private static String error(String message){
+		return ERROR + "\t" + String.valueOf(message).replace('\n', ' ').replace('\r', ' ');
+	}
+
+	private void writeBatch(List<Append> batch){
+		LinkedHashMap<File, List<Append>> bySpreadsheet = new LinkedHashMap<File, List<Append>>();
+		for(Append append:batch){
+			List<Append> group = bySpreadsheet.get(append.spreadsheet);
+			if(group == null){
+				group = new ArrayList<Append>();
+				bySpreadsheet.put(append.spreadsheet, group);
+			}
+			group.add(append);
+		}
+
+		for(Map.Entry<File, List<Append>> entry:bySpreadsheet.entrySet()){
+			List<Append> group = entry.getValue();
+			try {
+				SpreadsheetJournal journal = journals.get(entry.getKey());
+				if(journal == null){
+					journal = new SpreadsheetJournal(entry.getKey());
+					journals.put(entry.getKey(), journal);
+				}
+				ArrayList<DocInfo> infos = new ArrayList<DocInfo>(group.size());
+				for(Append append:group){
+					infos.add(append.info);
+				}
+				journal.log(infos);
+				journal.sync();
+
+				// On failure the classes are taken out of the journal, so the
+				// clients told about the error do not find them added later
+				HashSet<String> added = new HashSet<String>();
+				for(DocInfo info:journal.applyRows(infos)){
+					added.add(SpreadsheetIndex.identity(info));
+				}
+				// Only the first request for a class is told it was added
+				for(Append append:group){
+					append.finish(added.remove(SpreadsheetIndex.identity(append.info)) ? ADDED : DUPLICATE);
+				}
+			} catch (IOException e) {
+				System.out.println("Unable to write spreadsheet " + entry.getKey() + ": " + e.getMessage());
+				for(Append append:group){
+					append.finish(error(e.getMessage()));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,486 @@
+/**
+ * Running counts of the classes in a tracking spreadsheet: per semester and
+ * year, the number of sections of each subject and of each instructor. The
+ * counts are kept in a small sidecar file next to the spreadsheet
+ * (classes.csv has classes.csv.sum) and updated by SpreadsheetManager on
+ * every append, so a summary is read without scanning the CSV. The sidecar
+ * grows with the number of subjects and instructors, not with the number of
+ * rows.
+ *
+ * Like SpreadsheetIndex, the sidecar records the length of the CSV it
+ * describes and is rebuilt from the CSV if it is missing or the lengths
+ * differ. It is written to a temporary file and moved into place.
+ *
+ * Can be run from the command line:
+ * SpreadsheetSummary spreadsheet.csv [--semester name] [--year yyyy]
+ */
+
+package org.EvalGenerator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.EvalGenerator.DocInfo.Semester;
+
+public final class SpreadsheetSummary {
+	static final String EXTENSION = ".sum";
+	private static final String MAGIC = "EVALGEN-SUMMARY 1";
+	private static final String SUBJECT = "S";
+	private static final String INSTRUCTOR = "I";
+	private static final int READ_CHUNK = 64 * 1024;
+
+	// Order of the semesters within a calendar year
+	private static final Semester[] CALENDAR_ORDER = { Semester.Winter, Semester.Spring,
+		Semester.Summer, Semester.Fall };
+
+	//******************* DATA MEMBERS *******************
+	private final TreeMap<Term, Counts> terms = new TreeMap<Term, Counts>();
+	private long csvLength = -1;
+
+	/**
+	 * A semester of a year, ordered by date.
+	 */
+	static final class Term implements Comparable<Term> {
+		final Semester semester;
+		final String year;
+
+		Term(Semester semester, String year){
+			this.semester = semester;
+			this.year     = year;
+		}
+
+		public int compareTo(Term other){
+			int byYear = year.length() != other.year.length() ? year.length() - other.year.length()
+					: year.compareTo(other.year);
+			if(byYear != 0){
+				return byYear;
+			}
+			return calendarIndex(semester) - calendarIndex(other.semester);
+		}
+
+		@Override
+		public boolean equals(Object o){
+			return o instanceof Term && compareTo((Term) o) == 0;
+		}
+
+		@Override
+		public int hashCode(){
+			return year.hashCode() * 31 + semester.hashCode();
+		}
+
+		@Override
+		public String toString(){
+			return semester + " " + year;
+		}
+	}
+
+	/**
+	 * Counts of one term.
+	 */
+	private static final class Counts {
+		int total;
+		final TreeMap<String, Integer> subjects = new TreeMap<String, Integer>();
+		final TreeMap<String, Integer> instructors = new TreeMap<String, Integer>();
+	}
+
+	//******************* CONSTRUCTORS *******************
+	private SpreadsheetSummary(){
+	}
+
+	//******************* PUBLIC METHODS *******************
+	public static void main(String[] args) {
+		if(args.length < 1){
+			System.err.println("Usage: SpreadsheetSummary spreadsheet.csv [--semester name] [--year yyyy]");
+			System.exit(2);
+		}
+
+		File spreadsheet = new File(args[0]);
+		Semester semester = null;
+		String year = null;
+		try {
+			for(int i = 1; i < args.length; i++){
+				if(args[i].equals("--semester") && i + 1 < args.length){
+					semester = DocInfoCsv.parseSemester(args[++i]);
+				}
+				else if(args[i].equals("--year") && i + 1 < args.length){
+					year = args[++i];
+				}
+				else{
+					System.err.println("Unknown option: " + args[i]);
+					System.exit(2);
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
+		}
+
+		try {
+			System.out.print(load(spreadsheet).format(semester, year));
+		} catch (IOException e) {
+			System.err.println("Unable to read spreadsheet: " + e.getMessage());
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Reads the summary of a spreadsheet, rebuilding it first if it is out of
+	 * date. The spreadsheet is locked while the summary is read.
+	 * @throws IOException If the spreadsheet or the summary cannot be read
+	 */
+	public static SpreadsheetSummary load(File spreadsheet) throws IOException{
+		if(!spreadsheet.exists()){
+			throw new FileNotFoundException(spreadsheet.getPath());
+		}
+		synchronized(SpreadsheetManager.monitorFor(spreadsheet)){
+			FileChannel channel = FileChannel.open(spreadsheet.toPath(), StandardOpenOption.WRITE,
+					StandardOpenOption.READ);
+			try{
+				FileLock lock = channel.lock();
+				try{
+					SpreadsheetSummary summary = read(summaryFile(spreadsheet));
+					if(summary == null || summary.csvLength != channel.size()){
+						summary = rebuild(channel);
+						summary.commit(spreadsheet, channel.size());
+					}
+					return summary;
+				}
+				finally{
+					lock.release();
+				}
+			}
+			finally{
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of classes in the semester and year. Either may be
+	 * null to count every semester or every year.
+	 */
+	public int getCount(Semester semester, String year){
+		int count = 0;
+		for(Map.Entry<Term, Counts> entry:terms.entrySet()){
+			if(matches(entry.getKey(), semester, year)){
+				count += entry.getValue().total;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of classes of each subject in the semester and year,
+	 * sorted by subject. Either may be null to count every semester or year.
+	 */
+	public Map<String, Integer> getBySubject(Semester semester, String year){
+		TreeMap<String, Integer> counts = new TreeMap<String, Integer>();
+		for(Map.Entry<Term, Counts> entry:terms.entrySet()){
+			if(matches(entry.getKey(), semester, year)){
+				addAll(counts, entry.getValue().subjects);
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns the number of classes of each instructor in the semester and
+	 * year, sorted by name. Either may be null to count every semester or year.
+	 */
+	public Map<String, Integer> getByInstructor(Semester semester, String year){
+		TreeMap<String, Integer> counts = new TreeMap<String, Integer>();
+		for(Map.Entry<Term, Counts> entry:terms.entrySet()){
+			if(matches(entry.getKey(), semester, year)){
+				addAll(counts, entry.getValue().instructors);
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns the number of classes in each semester, over every year.
+	 */
+	public Map<Semester, Integer> getBySemester(){
+		EnumMap<Semester, Integer> counts = new EnumMap<Semester, Integer>(Semester.class);
+		for(Map.Entry<Term, Counts> entry:terms.entrySet()){
+			Integer count = counts.get(entry.getKey().semester);
+			counts.put(entry.getKey().semester, (count == null ? 0 : count) + entry.getValue().total);
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns the number of classes in each year, in order.
+	 */
+	public Map<String, Integer> getByYear(){
+		TreeMap<String, Integer> counts = new TreeMap<String, Integer>();
+		for(Map.Entry<Term, Counts> entry:terms.entrySet()){
+			Integer count = counts.get(entry.getKey().year);
+			counts.put(entry.getKey().year, (count == null ? 0 : count) + entry.getValue().total);
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns a printable summary of the semester and year: the number of
+	 * classes, then the count per subject and per instructor. Either may be
+	 * null, and without both a line per semester is printed first.
+	 */
+	public String format(Semester semester, String year){
+		year = year != null && !year.trim().isEmpty() ? year.trim() : null;
+		StringBuilder text = new StringBuilder();
+		String title = (semester != null ? semester.toString() : "All semesters") + " "
+				+ (year != null ? year : "(all years)");
+		text.append(title).append(": ").append(getCount(semester, year)).append(" classes\n");
+
+		if(semester == null || year == null){
+			text.append("\nBy semester\n");
+			for(Map.Entry<Term, Counts> entry:terms.entrySet()){
+				if(matches(entry.getKey(), semester, year)){
+					appendCount(text, entry.getKey().toString(), entry.getValue().total);
+				}
+			}
+		}
+		text.append("\nBy subject\n");
+		for(Map.Entry<String, Integer> entry:getBySubject(semester, year).entrySet()){
+			appendCount(text, entry.getKey(), entry.getValue());
+		}
+		text.append("\nBy instructor\n");
+		for(Map.Entry<String, Integer> entry:getByInstructor(semester, year).entrySet()){
+			appendCount(text, entry.getKey(), entry.getValue());
+		}
+		return text.toString();
+	}
+
+	@Override
+	public String toString(){
+		return format(null, null);
+	}
+
+	//******************* PACKAGE METHODS *******************
+	/**
+	 * Returns the summary file of a spreadsheet.
+	 */
+	static File summaryFile(File spreadsheet){
+		return new File(spreadsheet.getPath() + EXTENSION);
+	}
+
+	/**
+	 * Reads the summary of a spreadsheet, rebuilding it in memory if it is
+	 * missing or out of date. Must hold the spreadsheet's lock.
+	 * @param csv Channel of the locked CSV, used to read it if a rebuild is needed
+	 */
+	static SpreadsheetSummary open(File spreadsheet, FileChannel csv) throws IOException{
+		SpreadsheetSummary summary = read(summaryFile(spreadsheet));
+		if(summary == null || summary.csvLength != csv.size()){
+			summary = rebuild(csv);
+		}
+		return summary;
+	}
+
+	/**
+	 * Counts a class.
+	 */
+	void add(DocInfo info){
+		if(info.getSemester() == null){
+			return;
+		}
+		Term term = new Term(info.getSemester(), clean(info.getYear()));
+		Counts counts = terms.get(term);
+		if(counts == null){
+			counts = new Counts();
+			terms.put(term, counts);
+		}
+		counts.total++;
+		increment(counts.subjects, clean(info.getSubject()).toUpperCase(Locale.ENGLISH), 1);
+		increment(counts.instructors, clean(info.getInstFName()) + " " + clean(info.getInstLName()), 1);
+	}
+
+	/**
+	 * Writes the summary for a CSV of the given length. Call after the rows
+	 * counted have been written to the CSV, while holding its lock.
+	 */
+	void commit(File spreadsheet, long newCsvLength) throws IOException{
+		csvLength = newCsvLength;
+		File file = summaryFile(spreadsheet);
+		File temp = new File(file.getPath() + ".tmp");
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(temp), StreamingDocxRenderer.UTF_8));
+		try{
+			writer.write(MAGIC + "\t" + csvLength);
+			writer.newLine();
+			for(Map.Entry<Term, Counts> entry:terms.entrySet()){
+				String prefix = entry.getKey().year + "\t" + entry.getKey().semester + "\t";
+				for(Map.Entry<String, Integer> subject:entry.getValue().subjects.entrySet()){
+					writer.write(prefix + SUBJECT + "\t" + subject.getKey() + "\t" + subject.getValue());
+					writer.newLine();
+				}
+				for(Map.Entry<String, Integer> instructor:entry.getValue().instructors.entrySet()){
+					writer.write(prefix + INSTRUCTOR + "\t" + instructor.getKey() + "\t" + instructor.getValue());
+					writer.newLine();
+				}
+			}
+		}
+		finally{
+			writer.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	//******************* PRIVATE METHODS *******************
+	/**
+	 * Reads a summary file, or returns null if it is missing or damaged.
+	 */
+	private static SpreadsheetSummary read(File file) throws IOException{
+		BufferedReader reader;
+		try {
+			reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), StreamingDocxRenderer.UTF_8));
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+
+		try{
+			String header = reader.readLine();
+			if(header == null || !header.startsWith(MAGIC + "\t")){
+				return null;
+			}
+			SpreadsheetSummary summary = new SpreadsheetSummary();
+			summary.csvLength = Long.parseLong(header.substring(MAGIC.length() + 1));
+
+			String line;
+			while((line = reader.readLine()) != null){
+				String[] fields = line.split("\t", -1);
+				if(fields.length != 5){
+					return null;
+				}
+				Term term = new Term(Semester.valueOf(fields[1]), fields[0]);
+				Counts counts = summary.terms.get(term);
+				if(counts == null){
+					counts = new Counts();
+					summary.terms.put(term, counts);
+				}
+				int count = Integer.parseInt(fields[4]);
+				if(fields[2].equals(SUBJECT)){
+					increment(counts.subjects, fields[3], count);
+					counts.total += count;
+				}
+				else{
+					increment(counts.instructors, fields[3], count);
+				}
+			}
+			return summary;
+		} catch (IllegalArgumentException e) {
+			// Damaged, also covers NumberFormatException
+			return null;
+		}
+		finally{
+			reader.close();
+		}
+	}
+
+	/**
+	 * Counts every row of the CSV, read through its locked channel. The header
+	 * and rows that cannot be parsed are not counted.
+	 */
+	private static SpreadsheetSummary rebuild(FileChannel csv) throws IOException{
+		System.out.println("Rebuilding spreadsheet summary");
+		SpreadsheetSummary summary = new SpreadsheetSummary();
+		long length = csv.size();
+
+		ByteBuffer chunk = ByteBuffer.allocate(READ_CHUNK);
+		ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+		long position = 0;
+		while(position < length){
+			chunk.clear();
+			int read = csv.read(chunk, position);
+			if(read <= 0){
+				break;
+			}
+			position += read;
+			for(int i = 0; i < read; i++){
+				byte b = chunk.get(i);
+				if(b == '\n'){
+					summary.addRow(line);
+					line.reset();
+				}
+				else{
+					line.write(b);
+				}
+			}
+		}
+		// A last row without a line break
+		summary.addRow(line);
+
+		summary.csvLength = length;
+		return summary;
+	}
+
+	private void addRow(ByteArrayOutputStream row){
+		String text = new String(row.toByteArray(), StreamingDocxRenderer.UTF_8).trim();
+		if(text.isEmpty() || DocInfoCsv.isHeader(text)){
+			return;
+		}
+		try {
+			add(DocInfoCsv.parse(text));
+		} catch (IllegalArgumentException e) {
+			// Not counted
+		}
+	}
+
+	private static boolean matches(Term term, Semester semester, String year){
+		return (semester == null || term.semester == semester)
+				&& (year == null || term.year.equals(year.trim()));
+	}
+
+	private static int calendarIndex(Semester semester){
+		for(int i = 0; i < CALENDAR_ORDER.length; i++){
+			if(CALENDAR_ORDER[i] == semester){
+				return i;
+			}
+		}
+		return CALENDAR_ORDER.length;
+	}
+
+	private static void increment(Map<String, Integer> counts, String key, int amount){
+		Integer count = counts.get(key);
+		counts.put(key, (count == null ? 0 : count) + amount);
+	}
+
+	private static void addAll(Map<String, Integer> counts, Map<String, Integer> more){
+		for(Map.Entry<String, Integer> entry:more.entrySet()){
+			increment(counts, entry.getKey(), entry.getValue());
+		}
+	}
+
+	private static void appendCount(StringBuilder text, String name, int count){
+		text.append(String.format("  %-30s %6d", name, count)).append('\n');
+	}
+
+	/**
+	 * Trims a field and replaces the characters the summary file uses as
+	 * separators.
+	 */
+	private static String clean(String field){
+		return field == null ? "" : field.trim().replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+	}
+}
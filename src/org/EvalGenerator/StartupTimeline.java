@@ -0,0 +1,123 @@
+/**
+ * Records how long the application takes to start, measured from the start
+ * of the JVM: when the window is first painted, and when it is ready, which
+ * is once it has been painted and every startup task running in the
+ * background has finished. The tasks are timed too, and the whole timeline
+ * is printed when the application is ready, so slow starts can be traced to
+ * the step that caused them.
+ */
+
+package org.EvalGenerator;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class StartupTimeline {
+	//******************* DATA MEMBERS *******************
+	private static final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+	// Milliseconds since the JVM started, -1 until the value is known
+	private static long firstPaintMillis = -1;
+	private static long readyMillis = -1;
+	// Steps in the order they happened, with their time since the JVM started
+	private static final LinkedHashMap<String, Long> marks = new LinkedHashMap<String, Long>();
+	// Start times of the tasks still running
+	private static final LinkedHashMap<String, Long> running = new LinkedHashMap<String, Long>();
+	// How long each finished task took
+	private static final LinkedHashMap<String, Long> tasks = new LinkedHashMap<String, Long>();
+
+	//******************* CONSTRUCTORS *******************
+	private StartupTimeline(){
+	}
+
+	//******************* PUBLIC METHODS *******************
+	/**
+	 * Records that a step of the startup has been reached.
+	 */
+	public static synchronized void mark(String step){
+		if(!marks.containsKey(step)){
+			marks.put(step, now());
+		}
+	}
+
+	/**
+	 * Records that a startup task has started. The application is not ready
+	 * until it has finished.
+	 */
+	public static synchronized void taskStarted(String task){
+		running.put(task, now());
+	}
+
+	/**
+	 * Records that a startup task has finished, successfully or not.
+	 */
+	public static synchronized void taskFinished(String task){
+		Long start = running.remove(task);
+		if(start != null){
+			tasks.put(task, now() - start);
+		}
+		checkReady();
+	}
+
+	/**
+	 * Records the first time the window is painted. Later calls are ignored.
+	 */
+	public static synchronized void firstPaint(){
+		if(firstPaintMillis < 0){
+			firstPaintMillis = now();
+			checkReady();
+		}
+	}
+
+	/**
+	 * Returns the time from the start of the JVM until the window was first
+	 * painted, or -1 if it has not been painted yet.
+	 */
+	public static synchronized long getFirstPaintMillis(){
+		return firstPaintMillis;
+	}
+
+	/**
+	 * Returns the time from the start of the JVM until the application was
+	 * ready, or -1 if it is not ready yet.
+	 */
+	public static synchronized long getReadyMillis(){
+		return readyMillis;
+	}
+
+	/**
+	 * Describes the startup so far.
+	 */
+	public static synchronized String report(){
+		StringBuilder report = new StringBuilder("Startup: first paint ");
+		report.append(firstPaintMillis >= 0 ? firstPaintMillis + " ms" : "not yet");
+		report.append(", ready ").append(readyMillis >= 0 ? readyMillis + " ms" : "not yet");
+		for(Map.Entry<String, Long> mark:marks.entrySet()){
+			report.append("\n  ").append(mark.getKey()).append(" at ").append(mark.getValue()).append(" ms");
+		}
+		for(Map.Entry<String, Long> task:tasks.entrySet()){
+			report.append("\n  ").append(task.getKey()).append(" took ").append(task.getValue()).append(" ms");
+		}
+		for(String task:running.keySet()){
+			report.append("\n  ").append(task).append(" still running");
+		}
+		return report.toString();
+	}
+
+	//******************* PRIVATE METHODS *******************
+	private static long now(){
+		return System.currentTimeMillis() - jvmStartMillis;
+	}
+
+	/**
+	 * Records the application as ready, and prints the timeline, once it has
+	 * been painted and no startup task is running.
+	 */
+	private static void checkReady(){
+		if(readyMillis < 0 && firstPaintMillis >= 0 && running.isEmpty()){
+			readyMillis = now();
+			System.out.println(report());
+		}
+	}
+}
@@ -0,0 +1,459 @@
+/**
+ * Renders the documents by streaming the package parts straight into a zip
+ * with a StAX writer. Produces the same paragraphs and tables as
+ * Docx4jRenderer without building a JAXB object tree or an OPC package, which
+ * makes it much cheaper for large batches.
+ *
+ * Every part other than the main document part, and the page size, are
+ * copied from a package Docx4j creates once per process, so the streamed
+ * documents have the same styles and document properties as the ones
+ * Docx4jRenderer saves. RendererComparison checks that both renderers produce
+ * the same document.
+ */
+
+package org.EvalGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.docx4j.openpackaging.exceptions.Docx4JException;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+
+public class StreamingDocxRenderer implements DocumentRenderer {
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+	static final String W_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+	static final String DOCUMENT_PART = "word/document.xml";
+
+	/**
+	 * The parts of a Docx4j package that are the same in every document,
+	 * and the elements of its section properties.
+	 */
+	static final class PackageDefaults {
+		// Every part but the main document part, in the order they are written
+		final String[] partNames;
+		final byte[][] parts;
+		// Children of sectPr, such as pgSz and pgMar, each with its attributes
+		private final List<String> sectionElements;
+		private final List<String[]> sectionAttributes;
+
+		private PackageDefaults(String[] partNames, byte[][] parts,
+				List<String> sectionElements, List<String[]> sectionAttributes){
+			this.partNames         = partNames;
+			this.parts             = parts;
+			this.sectionElements   = sectionElements;
+			this.sectionAttributes = sectionAttributes;
+		}
+	}
+
+	// Read the first time a package is written
+	private static PackageDefaults packageDefaults;
+
+	//******************* DATA MEMBERS *******************
+	private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+	//******************* PUBLIC METHODS *******************
+	@Override
+	public void renderCommentSheet(DocInfo info, QuestionSet questions, OutputStream out) throws IOException{
+		byte[] section = questionSection(questions);
+		ZipOutputStream zip = startPackage(out);
+		try {
+			XMLStreamWriter xml = createWriter(zip);
+			startDocument(xml);
+			writeParagraph(xml, SheetLayout.COMMENT_SHEET_TITLE);
+			writeInfoTable(xml, SheetLayout.commentHeaderRows(info));
+
+			// Copy the prebuilt question tables. The writer has no open start
+			// tag after the header table, so the bytes can go straight to the zip.
+			xml.flush();
+			zip.write(section);
+
+			endDocument(xml);
+		} catch (XMLStreamException e) {
+			throw new IOException("Unable to create comment sheet", e);
+		}
+		endPackage(zip);
+	}
+
+	@Override
+	public void renderOITSheet(DocInfo info, Date requestDate, OutputStream out) throws IOException{
+		ZipOutputStream zip = startPackage(out);
+		try {
+			XMLStreamWriter xml = createWriter(zip);
+			startDocument(xml);
+			writeParagraph(xml, SheetLayout.OIT_SHEET_TITLE);
+			writeInfoTable(xml, SheetLayout.oitRows(info, requestDate));
+			endDocument(xml);
+		} catch (XMLStreamException e) {
+			throw new IOException("Unable to create OIT scan sheet", e);
+		}
+		endPackage(zip);
+	}
+
+	@Override
+	public void renderOITSheets(List<DocInfo> infos, Date requestDate, OutputStream out) throws IOException{
+		ZipOutputStream zip = startPackage(out);
+		try {
+			XMLStreamWriter xml = createWriter(zip);
+			startDocument(xml);
+			boolean first = true;
+			for(DocInfo info:infos){
+				// Every sheet after the first starts on a new page
+				writeParagraph(xml, SheetLayout.OIT_SHEET_TITLE, !first);
+				writeInfoTable(xml, SheetLayout.oitRows(info, requestDate));
+				first = false;
+			}
+			endDocument(xml);
+		} catch (XMLStreamException e) {
+			throw new IOException("Unable to create OIT scan sheets", e);
+		}
+		endPackage(zip);
+	}
+
+	//******************* PACKAGE METHODS *******************
+	/**
+	 * Returns the serialized spacer paragraphs and question tables for a
+	 * question set, building them the first time the set is used.
+	 */
+	byte[] questionSection(QuestionSet questions) throws IOException{
+		byte[] section = (byte[]) questions.getSection(this);
+		if(section == null){
+			ByteArrayOutputStream fragment = new ByteArrayOutputStream(questions.size() * 512);
+			try {
+				XMLStreamWriter xml = createWriter(fragment);
+				xml.setPrefix("w", W_NS);
+				writeQuestions(xml, questions.getQuestions());
+				xml.flush();
+			} catch (XMLStreamException e) {
+				throw new IOException("Unable to create question tables", e);
+			}
+			section = (byte[]) questions.cacheSection(this, fragment.toByteArray());
+		}
+		return section;
+	}
+
+	/**
+	 * Returns the parts every package shares with a Docx4j package, creating
+	 * and reading that package the first time.
+	 * @throws IOException If Docx4j cannot create the package
+	 */
+	static synchronized PackageDefaults packageDefaults() throws IOException{
+		if(packageDefaults == null){
+			ByteArrayOutputStream saved = new ByteArrayOutputStream();
+			try {
+				// Adding a paragraph of text, as Docx4jRenderer does first, also
+				// adds the document defaults to the styles part
+				WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.createPackage();
+				wordMLPackage.getMainDocumentPart().addParagraphOfText("");
+				wordMLPackage.save(saved);
+			} catch (Docx4JException e) {
+				throw new IOException("Unable to create default package", e);
+			}
+			packageDefaults = readDefaults(saved.toByteArray());
+		}
+		return packageDefaults;
+	}
+
+	/**
+	 * Returns true if a character is allowed in XML text. Characters that are
+	 * not, such as most control characters, are dropped from the documents.
+	 */
+	static boolean isXmlChar(char c){
+		return (c >= 0x20 && c != 0xFFFE && c != 0xFFFF) || c == '\t' || c == '\n' || c == '\r';
+	}
+
+	/**
+	 * Writes the static parts and opens the main document part entry.
+	 */
+	ZipOutputStream startPackage(OutputStream out) throws IOException{
+		PackageDefaults defaults = packageDefaults();
+		ZipOutputStream zip = new ZipOutputStream(out);
+		for(int i = 0; i < defaults.partNames.length; i++){
+			zip.putNextEntry(new ZipEntry(defaults.partNames[i]));
+			zip.write(defaults.parts[i]);
+			zip.closeEntry();
+		}
+		zip.putNextEntry(new ZipEntry(DOCUMENT_PART));
+		return zip;
+	}
+
+	/**
+	 * Closes the main document part and finishes the zip without closing
+	 * the caller's stream.
+	 */
+	void endPackage(ZipOutputStream zip) throws IOException{
+		zip.closeEntry();
+		zip.finish();
+	}
+
+	/**
+	 * XMLOutputFactory is not guaranteed to be thread safe, but the writers
+	 * it creates are independent of each other.
+	 */
+	XMLStreamWriter createWriter(OutputStream out) throws XMLStreamException{
+		synchronized(outputFactory){
+			return outputFactory.createXMLStreamWriter(out, "UTF-8");
+		}
+	}
+
+	void startDocument(XMLStreamWriter xml) throws XMLStreamException{
+		xml.writeStartDocument("UTF-8", "1.0");
+		xml.setPrefix("w", W_NS);
+		xml.writeStartElement(W_NS, "document");
+		xml.writeNamespace("w", W_NS);
+		xml.writeStartElement(W_NS, "body");
+	}
+
+	/**
+	 * Writes the section properties of the default package and closes the
+	 * body and document. The writer is flushed but the underlying stream is
+	 * left open.
+	 * @throws IOException If the default package cannot be read
+	 */
+	void endDocument(XMLStreamWriter xml) throws XMLStreamException, IOException{
+		PackageDefaults defaults = packageDefaults();
+		xml.writeStartElement(W_NS, "sectPr");
+		for(int i = 0; i < defaults.sectionElements.size(); i++){
+			xml.writeEmptyElement(W_NS, defaults.sectionElements.get(i));
+			String[] attributes = defaults.sectionAttributes.get(i);
+			for(int j = 0; j < attributes.length; j += 2){
+				xml.writeAttribute(W_NS, attributes[j], attributes[j + 1]);
+			}
+		}
+		xml.writeEndElement();
+
+		xml.writeEndElement();
+		xml.writeEndElement();
+		xml.writeEndDocument();
+		xml.flush();
+	}
+
+	/**
+	 * Writes a plain paragraph with a single run, like addParagraphOfText.
+	 */
+	void writeParagraph(XMLStreamWriter xml, String text) throws XMLStreamException{
+		writeParagraph(xml, text, false);
+	}
+
+	/**
+	 * Writes a plain paragraph with a single run.
+	 * @param pageBreak If true, the run starts with a page break so the
+	 * paragraph begins a new page
+	 */
+	void writeParagraph(XMLStreamWriter xml, String text, boolean pageBreak) throws XMLStreamException{
+		xml.writeStartElement(W_NS, "p");
+		xml.writeStartElement(W_NS, "r");
+		if(pageBreak){
+			xml.writeEmptyElement(W_NS, "br");
+			xml.writeAttribute(W_NS, "type", "page");
+		}
+		writeText(xml, text);
+		xml.writeEndElement();
+		xml.writeEndElement();
+	}
+
+	/**
+	 * Writes a bordered table with a bold label cell and a plain value cell
+	 * for each row.
+	 */
+	void writeInfoTable(XMLStreamWriter xml, List<SheetLayout.Row> rows) throws XMLStreamException{
+		xml.writeStartElement(W_NS, "tbl");
+		writeBorders(xml);
+		for(SheetLayout.Row row:rows){
+			xml.writeStartElement(W_NS, "tr");
+			writeCell(xml, row.getLabel(), true, row.getLabelWidth());
+			writeCell(xml, row.getValue(), false, row.getValueWidth());
+			xml.writeEndElement();
+		}
+		xml.writeEndElement();
+	}
+
+	/**
+	 * Writes a spacer paragraph and a two row table for each question.
+	 */
+	void writeQuestions(XMLStreamWriter xml, List<String> questions) throws XMLStreamException{
+		for(String question:questions){
+			writeParagraph(xml, SheetLayout.QUESTION_SPACER);
+
+			xml.writeStartElement(W_NS, "tbl");
+			writeBorders(xml);
+
+			// Row with question
+			xml.writeStartElement(W_NS, "tr");
+			writeCell(xml, question, true, SheetLayout.QUESTION_WIDTH);
+			xml.writeEndElement();
+
+			// Row with blank line for input
+			xml.writeStartElement(W_NS, "tr");
+			writeCell(xml, "", true, SheetLayout.QUESTION_WIDTH);
+			xml.writeEndElement();
+
+			xml.writeEndElement();
+		}
+	}
+
+	//******************* PRIVATE METHODS *******************
+	private void writeCell(XMLStreamWriter xml, String content, boolean bold, int width) throws XMLStreamException{
+		xml.writeStartElement(W_NS, "tc");
+		if(width > 0){
+			xml.writeStartElement(W_NS, "tcPr");
+			xml.writeEmptyElement(W_NS, "tcW");
+			xml.writeAttribute(W_NS, "w", Integer.toString(width));
+			xml.writeEndElement();
+		}
+
+		xml.writeStartElement(W_NS, "p");
+		xml.writeStartElement(W_NS, "r");
+		xml.writeStartElement(W_NS, "rPr");
+		if(bold){
+			xml.writeEmptyElement(W_NS, "b");
+		}
+		xml.writeEmptyElement(W_NS, "sz");
+		xml.writeAttribute(W_NS, "val", SheetLayout.FONT_SIZE);
+		xml.writeEmptyElement(W_NS, "szCs");
+		xml.writeAttribute(W_NS, "val", SheetLayout.FONT_SIZE);
+		xml.writeEndElement();
+		writeText(xml, content);
+		xml.writeEndElement();
+		xml.writeEndElement();
+
+		xml.writeEndElement();
+	}
+
+	/**
+	 * Writes a text element. A carriage return is written as a character
+	 * reference, as Docx4j does, since a parser reads a literal one as a line
+	 * feed. Characters not allowed in XML are dropped.
+	 */
+	private void writeText(XMLStreamWriter xml, String text) throws XMLStreamException{
+		xml.writeStartElement(W_NS, "t");
+		int start = 0;
+		for(int i = 0; i < text.length(); i++){
+			char c = text.charAt(i);
+			if(c == '\r' || !isXmlChar(c)){
+				xml.writeCharacters(text.substring(start, i));
+				if(c == '\r'){
+					xml.writeEntityRef("#13");
+				}
+				start = i + 1;
+			}
+		}
+		xml.writeCharacters(text.substring(start));
+		xml.writeEndElement();
+	}
+
+	/**
+	 * Keeps every part of a saved package but the main document part, and the
+	 * elements of the section properties in the main document part.
+	 */
+	private static PackageDefaults readDefaults(byte[] docx) throws IOException{
+		ArrayList<String> partNames = new ArrayList<String>();
+		ArrayList<byte[]> parts = new ArrayList<byte[]>();
+		ArrayList<String> sectionElements = new ArrayList<String>();
+		ArrayList<String[]> sectionAttributes = new ArrayList<String[]>();
+
+		ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(docx));
+		try{
+			ZipEntry entry;
+			while((entry = zip.getNextEntry()) != null){
+				if(entry.getName().equals(DOCUMENT_PART)){
+					// The parser closes the stream it reads, so not the zip itself
+					readSection(new ByteArrayInputStream(readAll(zip)), sectionElements, sectionAttributes);
+				}
+				else{
+					partNames.add(entry.getName());
+					parts.add(readAll(zip));
+				}
+			}
+		}
+		finally{
+			zip.close();
+		}
+		if(sectionElements.isEmpty()){
+			throw new IOException("No section properties in default package");
+		}
+		return new PackageDefaults(partNames.toArray(new String[partNames.size()]),
+				parts.toArray(new byte[parts.size()][]), sectionElements, sectionAttributes);
+	}
+
+	private static void readSection(InputStream document, List<String> elements,
+			List<String[]> attributes) throws IOException{
+		try {
+			XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(document);
+			boolean inSection = false;
+			while(xml.hasNext()){
+				int event = xml.next();
+				if(event == XMLStreamConstants.START_ELEMENT && W_NS.equals(xml.getNamespaceURI())){
+					if(xml.getLocalName().equals("sectPr")){
+						inSection = true;
+					}
+					else if(inSection){
+						String[] values = new String[xml.getAttributeCount() * 2];
+						for(int i = 0; i < xml.getAttributeCount(); i++){
+							values[i * 2]     = xml.getAttributeLocalName(i);
+							values[i * 2 + 1] = xml.getAttributeValue(i);
+						}
+						elements.add(xml.getLocalName());
+						attributes.add(values);
+					}
+				}
+				else if(event == XMLStreamConstants.END_ELEMENT && xml.getLocalName().equals("sectPr")){
+					inSection = false;
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Unable to read default section properties", e);
+		}
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while((read = in.read(buffer)) > 0){
+			bytes.write(buffer, 0, read);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Single line border around the table and between all cells, the same
+	 * border Docx4jRenderer uses.
+	 */
+	private void writeBorders(XMLStreamWriter xml) throws XMLStreamException{
+		xml.writeStartElement(W_NS, "tblPr");
+		xml.writeStartElement(W_NS, "tblBorders");
+		writeBorder(xml, "top");
+		writeBorder(xml, "left");
+		writeBorder(xml, "bottom");
+		writeBorder(xml, "right");
+		writeBorder(xml, "insideH");
+		writeBorder(xml, "insideV");
+		xml.writeEndElement();
+		xml.writeEndElement();
+	}
+
+	private void writeBorder(XMLStreamWriter xml, String side) throws XMLStreamException{
+		xml.writeEmptyElement(W_NS, side);
+		xml.writeAttribute(W_NS, "val", "single");
+		xml.writeAttribute(W_NS, "sz", "4");
+		xml.writeAttribute(W_NS, "space", "0");
+		xml.writeAttribute(W_NS, "color", "auto");
+	}
+}
@@ -0,0 +1,184 @@
+/**
+ * Shows classes from the course history under a text field while the user
+ * types in it. The arrow keys move through the list, Enter or a click fills
+ * in the chosen class, and Escape hides the list. The list never takes the
+ * focus, so typing carries on in the field.
+ */
+
+package org.EvalGenerator;
+
+import java.awt.Component;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JList;
+import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+import org.EvalGenerator.DocInfoValidator.Field;
+
+final class SuggestionPopup {
+	private static final int MAX_SUGGESTIONS = 8;
+
+	/**
+	 * Receives the class the user chose.
+	 */
+	interface Listener {
+		void suggestionChosen(DocInfo info);
+	}
+
+	//******************* DATA MEMBERS *******************
+	private final JTextField textField;
+	private final Field field;
+	private final CourseHistory history;
+	private final Listener listener;
+
+	private final JPopupMenu popup = new JPopupMenu();
+	private final JList<DocInfo> list = new JList<DocInfo>();
+	// Set while the chosen class is filled in, which changes this field too
+	private boolean choosing;
+
+	//******************* CONSTRUCTORS *******************
+	private SuggestionPopup(JTextField textField, Field field, CourseHistory history, Listener listener){
+		this.textField = textField;
+		this.field     = field;
+		this.history   = history;
+		this.listener  = listener;
+	}
+
+	//******************* PACKAGE METHODS *******************
+	/**
+	 * Adds suggestions to a text field.
+	 * @param field The field of the class that is typed in the text field
+	 */
+	static void attach(JTextField textField, Field field, CourseHistory history, Listener listener){
+		new SuggestionPopup(textField, field, history, listener).install();
+	}
+
+	//******************* PRIVATE METHODS *******************
+	private void install(){
+		list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		list.setFocusable(false);
+		list.setCellRenderer(new DefaultListCellRenderer(){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+					boolean isSelected, boolean cellHasFocus){
+				DocInfo info = (DocInfo) value;
+				String text = ProfileStore.nameOf(info) + " (" + info.getSemester() + " " + info.getYear() + ")";
+				return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+			}
+		});
+		list.addMouseListener(new MouseAdapter(){
+			@Override
+			public void mouseClicked(MouseEvent e){
+				int index = list.locationToIndex(e.getPoint());
+				if(index >= 0){
+					choose(list.getModel().getElementAt(index));
+				}
+			}
+		});
+
+		JScrollPane scrollPane = new JScrollPane(list);
+		scrollPane.setBorder(null);
+		popup.add(scrollPane);
+		popup.setFocusable(false);
+
+		textField.getDocument().addDocumentListener(new DocumentListener(){
+			public void insertUpdate(DocumentEvent e){
+				update();
+			}
+			public void removeUpdate(DocumentEvent e){
+				update();
+			}
+			public void changedUpdate(DocumentEvent e){
+			}
+		});
+
+		// Handled before the key bindings, so Enter does not press the default button
+		textField.addKeyListener(new KeyAdapter(){
+			@Override
+			public void keyPressed(KeyEvent e){
+				if(!popup.isVisible()){
+					return;
+				}
+				int size = list.getModel().getSize();
+				switch(e.getKeyCode()){
+				case KeyEvent.VK_DOWN:
+					list.setSelectedIndex(Math.min(size - 1, list.getSelectedIndex() + 1));
+					list.ensureIndexIsVisible(list.getSelectedIndex());
+					e.consume();
+					break;
+				case KeyEvent.VK_UP:
+					list.setSelectedIndex(Math.max(0, list.getSelectedIndex() - 1));
+					list.ensureIndexIsVisible(list.getSelectedIndex());
+					e.consume();
+					break;
+				case KeyEvent.VK_ENTER:
+					if(list.getSelectedValue() != null){
+						choose(list.getSelectedValue());
+						e.consume();
+					}
+					break;
+				case KeyEvent.VK_ESCAPE:
+					popup.setVisible(false);
+					e.consume();
+					break;
+				}
+			}
+		});
+
+		textField.addFocusListener(new FocusAdapter(){
+			@Override
+			public void focusLost(FocusEvent e){
+				popup.setVisible(false);
+			}
+		});
+	}
+
+	/**
+	 * Shows the classes that start with the text typed, or hides the list if
+	 * there are none. Only the field the user is typing in shows suggestions,
+	 * not fields filled in by the program.
+	 */
+	private void update(){
+		if(choosing || !textField.isFocusOwner()){
+			return;
+		}
+		List<DocInfo> suggestions = history.suggest(field, textField.getText(), MAX_SUGGESTIONS);
+		if(suggestions.isEmpty()){
+			popup.setVisible(false);
+			return;
+		}
+
+		list.setListData(suggestions.toArray(new DocInfo[suggestions.size()]));
+		list.setVisibleRowCount(suggestions.size());
+		list.clearSelection();
+		popup.pack();
+		if(!popup.isVisible()){
+			popup.show(textField, 0, textField.getHeight());
+		}
+	}
+
+	private void choose(DocInfo info){
+		popup.setVisible(false);
+		choosing = true;
+		try{
+			listener.suggestionChosen(info);
+		}
+		finally{
+			choosing = false;
+		}
+	}
+}
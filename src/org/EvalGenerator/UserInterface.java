@@ -15,6 +15,7 @@ import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.EventQueue;
 import java.awt.Font;
+import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.Toolkit;
 
@@ -29,7 +30,14 @@ import javax.swing.JOptionPane;
 import javax.swing.JTextField;
 import javax.swing.JButton;
 import javax.swing.JComboBox;
+import javax.swing.JProgressBar;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 import java.awt.Color;
 
@@ -38,11 +46,24 @@ import javax.swing.border.LineBorder;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.prefs.Preferences;
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 import javax.swing.border.TitledBorder;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -65,9 +86,10 @@ public class UserInterface extends JFrame {
 	private static final int EXIST_SPRDSHT_INDEX = 0;
 	private static final String SAVE_LOC_LABEL_DEFAULT_MESSAGE = NEW_SPRDSHT_LBL_DEFAULT_MESSAGE;
 	private static final int SAVE_LOCATION_LABEL_WIDTH = 182;
-	private static final int WINDOW_HEIGHT = 900;
+	private static final int WINDOW_HEIGHT = 915;
 	private static final int WINDOW_WIDTH = 366;
 	private static final String ICON_FILE_PATH = "files/images/logo.png";
+	private static final String SPREADSHEET_ERROR_MESSAGE = "The spreadsheet could not be updated.";
 	private static final String PREFKEY_INSTFNAME       ="key1";
 	private static final String PREFKEY_INSTLNAME       ="key2";
 	private static final String PREFKEY_SUB             ="key3";
@@ -83,6 +105,18 @@ public class UserInterface extends JFrame {
 	private static final String PREFKEY_DEFPRINTCHCK    ="key13";
 	private static final String PREFKEY_EXISTFCHOOSE    ="key14";
 	private static final String PREFKEY_EXISTLABEL      ="key15";
+	private static final String SETTING_COMSHT_FILEPICK = "commentSheetLocation";
+	private static final String SETTING_COMSHT_LABEL    = "commentSheetLabel";
+	private static final String SETTING_DEFPRINTCHCK    = "printOITSheet";
+	private static final String SETTING_EXISTFCHOOSE    = "spreadsheetLocation";
+	private static final String SETTING_EXISTLABEL      = "spreadsheetLabel";
+	private static final String PROFILE_COMBO_PROMPT    = "Saved courses...";
+	private static final String PROFILES_TASK           = "Profile loading";
+	private static final String WORD_GENERATOR_TASK     = "Document generator setup";
+	// How long the form must be left unchanged before its documents are rendered
+	private static final int SPECULATION_DELAY_MILLIS   = 750;
+	private static final DocInfoValidator CLASS_VALIDATOR = new DocInfoValidator(false);
+	private static final DocInfoValidator OIT_VALIDATOR   = new DocInfoValidator(true);
 
 	//******************* DATA MEMBERS *******************
 	private JPanel contentPane;
@@ -103,6 +137,9 @@ public class UserInterface extends JFrame {
 	private JTextField fldNewSprdshtFileName;
 	
 	private JComboBox<Object> semesterComboBox;
+	private JComboBox<String> profileComboBox;
+	// Set while the saved courses are listed again, so no course is filled in
+	private boolean updatingProfiles;
 	
 	private JCheckBox chckbxGenerateCommentSheet;
 	private JCheckBox chckbxGenerateOitScan;
@@ -117,19 +154,73 @@ public class UserInterface extends JFrame {
 	private JLabel lblExistSprdshtSaveLoc;
 	private JLabel lblNewSprdshtSaveLoc;
 	
-	private WordTemplateGenerator wordGenerator = new WordTemplateGenerator();
-	private SpreadsheetManager sprdshtManager = new SpreadsheetManager();
+	// Reading the questions and finding the desktop are left to a background
+	// thread, see startBackgroundTasks()
+	private FutureTask<WordTemplateGenerator> wordGenerator = new FutureTask<WordTemplateGenerator>(
+			new Callable<WordTemplateGenerator>(){
+		public WordTemplateGenerator call(){
+			return new WordTemplateGenerator();
+		}
+	});
+	// Created on first use
+	private SpreadsheetManager sprdshtManager;
+	
+	private JButton btnGenerateDocuments;
+	// Enabled once the document generator is ready, see startBackgroundTasks()
+	private JButton btnPreview;
+	// Set on the Event Dispatch Thread once the generator started without errors
+	private boolean wordGeneratorReady;
+	private JButton btnCancelGeneration;
+	private JProgressBar generationProgressBar;
+	
+	// Runs the generation steps. The threads are daemons so a step that is
+	// stuck, such as a print job, does not keep the program open.
+	private ExecutorService generationExecutor = Executors.newCachedThreadPool(new ThreadFactory(){
+		public Thread newThread(Runnable r){
+			Thread thread = new Thread(r, "Document generation");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private GenerationWorker generationWorker;
 		
 	private JTabbedPane spreadsheetTabbedPane;
 	
 	private Dimension screenSize;
 	
+	// Only read to bring the data of older versions into the profile store
 	private Preferences prefs = Preferences.userRoot().node(this.getClass().getName());
+	private FutureTask<ProfileStore> profileStore = new FutureTask<ProfileStore>(new Callable<ProfileStore>(){
+		public ProfileStore call(){
+			return ProfileStore.load(new File(ProfileStore.PROFILE_FILE_PATH));
+		}
+	});
+	private CourseHistory courseHistory = new CourseHistory();
+	private boolean courseHistoryLoading;
+	private JTextField[] suggestionFields;
+	private Timer speculationTimer;
 
 	/**
 	 * Launch the application.
 	 */
 	public static void main(String[] args) {
+		StartupTimeline.mark("Main started");
+		
+		// Load Docx4j in the background while the window opens and the
+		// user fills in the form
+		RendererWarmup.start();
+		
+		// Add classes left in spreadsheet journals by a run that was killed
+		Thread recovery = new Thread(new Runnable(){
+			public void run(){
+				int added = SpreadsheetJournal.recoverAll();
+				if(added > 0){
+					System.out.println("Recovered " + added + " classes from spreadsheet journals");
+				}
+			}
+		}, "Spreadsheet journal recovery");
+		recovery.setDaemon(true);
+		recovery.start();
 		
 		// Change look and feel of application
 		try {
@@ -137,11 +228,13 @@ public class UserInterface extends JFrame {
 		}catch(Exception ex) {
 			ex.printStackTrace();
 		}
+		StartupTimeline.mark("Look and feel set");
 		
 		EventQueue.invokeLater(new Runnable() {
 			public void run() {
 				try {
 					UserInterface frame = new UserInterface();
+					StartupTimeline.mark("Window created");
 					frame.setVisible(true);
 				} catch (Exception e) {
 					e.printStackTrace();
@@ -157,13 +250,6 @@ public class UserInterface extends JFrame {
 	public UserInterface() {
 		// Store size of screen
 		screenSize = Toolkit.getDefaultToolkit().getScreenSize();
-		
-		// Change look and feel of application
-		try {
-			UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-		}catch(Exception ex) {
-			ex.printStackTrace();
-		}
 			
 		// Create GUI
 		setWindowSettings();
@@ -172,71 +258,427 @@ public class UserInterface extends JFrame {
 		createSpreadsheetTabbedPane();
 		createChkboxAndButton();
 		
-		retrieveDataFromPrefs();
+		addSuggestions();
+		addSpeculativeRendering();
+		
+		// Write any profile changes still waiting when the window is closed
+		addWindowListener(new WindowAdapter(){
+			@Override
+			public void windowClosing(WindowEvent e){
+				if(!profileStore.isDone()){
+					return;
+				}
+				try {
+					getProfileStore().close();
+				} catch (IOException ex) {
+					System.out.println("Unable to save profiles: " + ex.getMessage());
+				}
+			}
+		});
+		
+		startBackgroundTasks();
 	}
 	
 	//******************* PUBLIC METHODS *******************
+	@Override
+	public void paint(Graphics g){
+		super.paint(g);
+		StartupTimeline.firstPaint();
+	}
+	
 	//******************* PRIVATE METHODS *******************
-	private void retrieveDataFromPrefs(){		
-		fldInstFName.setText(prefs.get(PREFKEY_INSTFNAME, ""));
-		fldInstLName.setText(prefs.get(PREFKEY_INSTLNAME, ""));
-		fldSubject.setText(prefs.get(PREFKEY_SUB, ""));
-		fldCourseNum.setText(prefs.get(PREFKEY_CNUM, ""));
-		fldSection.setText(prefs.get(PREFKEY_SEC, ""));
-		semesterComboBox.setSelectedIndex(prefs.getInt(PREFKEY_SEM, 0));
-		fldYear.setText(prefs.get(PREFKEY_YEAR, ""));
-		
-		commentSheetFileChooser.setSelectedFile(new File(prefs.get(PREFKEY_COMSHT_FILEPICK, "")));
-		
-		lblCommentSaveLoc.setText(prefs.get(PREFKEY_COMSHT_LABEL, SAVE_LOC_LABEL_DEFAULT_MESSAGE));
-		fldFacSuppName.setText(prefs.get(PREFKEY_FACSUPNAME, ""));
-		fldFacSuppExten.setText(prefs.get(PREFKEY_EXTEN, ""));
-		fldFacSuppMailbox.setText(prefs.get(PREFKEY_MAILBOX, ""));
-		chckboxPrintOITSheet.setSelected(prefs.getBoolean(PREFKEY_DEFPRINTCHCK, true));
-		existSprdshtFileChooser.setSelectedFile(new File(prefs.get(PREFKEY_EXISTFCHOOSE, "")));
-		lblExistSprdshtSaveLoc.setText(prefs.get(PREFKEY_EXISTLABEL, EXIST_SPRDSHT_LBL_DEFAULT_MESSAGE));
+	/**
+	 * Loads the saved courses and creates the document generator on background
+	 * threads, so the window is shown without waiting for them. The fields are
+	 * filled in once the saved courses are loaded. Anything that needs one of
+	 * them before it is ready waits for it.
+	 */
+	private void startBackgroundTasks(){
+		StartupTimeline.taskStarted(PROFILES_TASK);
+		startBackgroundThread(PROFILES_TASK, new Runnable(){
+			public void run(){
+				profileStore.run();
+				SwingUtilities.invokeLater(new Runnable(){
+					public void run(){
+						try{
+							retrieveSavedData();
+							// The history waits for the saved spreadsheet location
+							for(JTextField field:suggestionFields){
+								if(field.isFocusOwner()){
+									loadCourseHistory();
+								}
+							}
+						}
+						finally{
+							StartupTimeline.taskFinished(PROFILES_TASK);
+						}
+					}
+				});
+			}
+		});
+		
+		StartupTimeline.taskStarted(WORD_GENERATOR_TASK);
+		startBackgroundThread(WORD_GENERATOR_TASK, new Runnable(){
+			public void run(){
+				wordGenerator.run();
+				StartupTimeline.taskFinished(WORD_GENERATOR_TASK);
+				Throwable failure = null;
+				try {
+					wordGenerator.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					failure = e;
+				} catch (ExecutionException e) {
+					failure = e.getCause();
+				}
+				final Throwable error = failure;
+				SwingUtilities.invokeLater(new Runnable(){
+					public void run(){
+						// Preview and speculation would fail on every use
+						if(error != null){
+							error.printStackTrace();
+							JOptionPane.showMessageDialog(null, "Unable to start the document generator: "
+									+ error.getMessage());
+							return;
+						}
+						wordGeneratorReady = true;
+						btnPreview.setEnabled(true);
+						// The fields were probably filled in before it was ready
+						speculationTimer.restart();
+					}
+				});
+			}
+		});
+	}
+	
+	private static void startBackgroundThread(String name, Runnable runnable){
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		thread.start();
 	}
 	
 	/**
-	 * Stores data from all GUI fields using the Java Preferences class. This allows
-	 * the program to have the fields pre-filled with the previous data when the it
-	 * opens.
+	 * Returns the result of a startup task, running it now if it has not
+	 * started yet and otherwise waiting for it to finish.
 	 */
-	private void storeDataInPrefs(){
-		System.out.println("Storing preferences");
-
+	private static <T> T await(FutureTask<T> task){
+		task.run();
 		try {
-			prefs.put(PREFKEY_INSTFNAME, fldInstFName.getText());
-			prefs.put(PREFKEY_INSTLNAME, fldInstLName.getText());
-			prefs.put(PREFKEY_SUB, fldSubject.getText());
-			prefs.put(PREFKEY_CNUM, fldCourseNum.getText());
-			prefs.put(PREFKEY_SEC, fldSection.getText());
-			prefs.putInt(PREFKEY_SEM, semesterComboBox.getSelectedIndex());
-			prefs.put(PREFKEY_YEAR, fldYear.getText());
-			prefs.put(PREFKEY_COMSHT_FILEPICK, commentSheetFileChooser.getSelectedFile().getAbsolutePath());
-			prefs.put(PREFKEY_COMSHT_LABEL, lblCommentSaveLoc.getText());
-			prefs.put(PREFKEY_FACSUPNAME, fldFacSuppName.getText());
-			prefs.put(PREFKEY_EXTEN, fldFacSuppExten.getText());
-			prefs.put(PREFKEY_MAILBOX, fldFacSuppMailbox.getText());
-			prefs.putBoolean(PREFKEY_DEFPRINTCHCK, chckboxPrintOITSheet.isSelected());
-			prefs.put(PREFKEY_EXISTFCHOOSE, existSprdshtFileChooser.getSelectedFile().getAbsolutePath());
-			prefs.put(PREFKEY_EXISTLABEL, lblExistSprdshtSaveLoc.getText());
-		} catch (NullPointerException e) {
-			// Do nothing
-			System.out.println("File not chosen.");
-		}
-		System.out.println("done");
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while starting", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Unable to start", e.getCause());
+		}
+	}
+	
+	private ProfileStore getProfileStore(){
+		return await(profileStore);
+	}
+	
+	private WordTemplateGenerator getWordGenerator(){
+		return await(wordGenerator);
+	}
+	
+	/**
+	 * Returns the spreadsheet manager, creating it on first use. Called from
+	 * the generation threads.
+	 */
+	private synchronized SpreadsheetManager getSpreadsheetManager(){
+		if(sprdshtManager == null){
+			sprdshtManager = new SpreadsheetManager(Integer.getInteger(SpreadsheetManager.DAEMON_PORT_PROPERTY, 0));
+		}
+		return sprdshtManager;
+	}
+	
+	/**
+	 * Fills in the fields with the most recently used course and the settings
+	 * saved in the profile store. The first time, the data saved in Java
+	 * Preferences by older versions is brought into the store.
+	 */
+	private void retrieveSavedData(){
+		ProfileStore profiles = getProfileStore();
+		if(profiles.isEmpty() && prefs.get(PREFKEY_INSTFNAME, null) != null){
+			importPreferences();
+		}
+		
+		// Unless the user has already started typing
+		DocInfo info = profiles.getLastUsed();
+		if(info != null && fldInstFName.getText().isEmpty() && fldInstLName.getText().isEmpty()){
+			fillFields(info);
+		}
+		String commentLocation = profiles.getSetting(SETTING_COMSHT_FILEPICK, null);
+		if(commentLocation != null){
+			commentSheetFileChooser.setSelectedFile(new File(commentLocation));
+		}
+		lblCommentSaveLoc.setText(profiles.getSetting(SETTING_COMSHT_LABEL, SAVE_LOC_LABEL_DEFAULT_MESSAGE));
+		chckboxPrintOITSheet.setSelected(Boolean.parseBoolean(profiles.getSetting(SETTING_DEFPRINTCHCK, "true")));
+		String spreadsheetLocation = profiles.getSetting(SETTING_EXISTFCHOOSE, null);
+		if(spreadsheetLocation != null){
+			existSprdshtFileChooser.setSelectedFile(new File(spreadsheetLocation));
+		}
+		lblExistSprdshtSaveLoc.setText(profiles.getSetting(SETTING_EXISTLABEL, EXIST_SPRDSHT_LBL_DEFAULT_MESSAGE));
+		
+		updateProfileComboBox();
+	}
+	
+	/**
+	 * Copies the data saved in Java Preferences by older versions into the
+	 * profile store.
+	 */
+	private void importPreferences(){
+		ProfileStore profiles = getProfileStore();
+		System.out.println("Importing preferences into profile store");
+		
+		Semester[] semesters = Semester.values();
+		int semester = prefs.getInt(PREFKEY_SEM, 0);
+		profiles.save(new DocInfo(prefs.get(PREFKEY_INSTFNAME, ""),
+				prefs.get(PREFKEY_INSTLNAME, ""),
+				prefs.get(PREFKEY_SUB, ""),
+				prefs.get(PREFKEY_CNUM, ""),
+				prefs.get(PREFKEY_SEC, ""),
+				prefs.get(PREFKEY_YEAR, ""),
+				prefs.get(PREFKEY_FACSUPNAME, ""),
+				prefs.get(PREFKEY_EXTEN, ""),
+				prefs.get(PREFKEY_MAILBOX, ""),
+				semesters[semester >= 0 && semester < semesters.length ? semester : 0]));
+		
+		profiles.putSetting(SETTING_COMSHT_FILEPICK, prefs.get(PREFKEY_COMSHT_FILEPICK, null));
+		profiles.putSetting(SETTING_COMSHT_LABEL, prefs.get(PREFKEY_COMSHT_LABEL, null));
+		profiles.putSetting(SETTING_DEFPRINTCHCK, String.valueOf(prefs.getBoolean(PREFKEY_DEFPRINTCHCK, true)));
+		profiles.putSetting(SETTING_EXISTFCHOOSE, prefs.get(PREFKEY_EXISTFCHOOSE, null));
+		profiles.putSetting(SETTING_EXISTLABEL, prefs.get(PREFKEY_EXISTLABEL, null));
+	}
+	
+	/**
+	 * Saves the course that was generated as the most recently used profile,
+	 * along with the save locations and print setting, so the fields are
+	 * pre-filled the next time the program opens. The profile store writes
+	 * its file in the background, so this does not wait for the disk.
+	 * @param info The class the documents were generated for, the fields may
+	 * have been edited since
+	 */
+	private void storeSavedData(DocInfo info){
+		ProfileStore profiles = getProfileStore();
+		profiles.save(info);
+		courseHistory.add(info);
+		
+		File commentLocation = commentSheetFileChooser.getSelectedFile();
+		profiles.putSetting(SETTING_COMSHT_FILEPICK, commentLocation != null ? commentLocation.getAbsolutePath() : null);
+		profiles.putSetting(SETTING_COMSHT_LABEL, lblCommentSaveLoc.getText());
+		profiles.putSetting(SETTING_DEFPRINTCHCK, String.valueOf(chckboxPrintOITSheet.isSelected()));
+		File spreadsheetLocation = existSprdshtFileChooser.getSelectedFile();
+		profiles.putSetting(SETTING_EXISTFCHOOSE, spreadsheetLocation != null ? spreadsheetLocation.getAbsolutePath() : null);
+		profiles.putSetting(SETTING_EXISTLABEL, lblExistSprdshtSaveLoc.getText());
+		
+		updateProfileComboBox();
+	}
+	
+	/**
+	 * Lists the saved courses in the profile combo box, most recently used first.
+	 */
+	private void updateProfileComboBox(){
+		updatingProfiles = true;
+		profileComboBox.removeAllItems();
+		profileComboBox.addItem(PROFILE_COMBO_PROMPT);
+		for(String name:getProfileStore().getNames()){
+			profileComboBox.addItem(name);
+		}
+		profileComboBox.setSelectedIndex(0);
+		updatingProfiles = false;
+	}
+	
+	/**
+	 * Suggests classes generated before while the user types in the course and
+	 * faculty support fields. Choosing one fills in the whole form. The history
+	 * is loaded the first time one of the fields gets the focus.
+	 */
+	private void addSuggestions(){
+		SuggestionPopup.Listener fill = new SuggestionPopup.Listener(){
+			public void suggestionChosen(DocInfo info){
+				fillFields(info);
+			}
+		};
+		FocusAdapter load = new FocusAdapter(){
+			@Override
+			public void focusGained(FocusEvent e){
+				loadCourseHistory();
+			}
+		};
+		
+		// In the order of CourseHistory.SUGGESTED_FIELDS
+		suggestionFields = new JTextField[]{ fldInstFName, fldInstLName, fldSubject, fldCourseNum, fldSection, fldFacSuppName };
+		int i = 0;
+		for(DocInfoValidator.Field field:CourseHistory.SUGGESTED_FIELDS){
+			SuggestionPopup.attach(suggestionFields[i], field, courseHistory, fill);
+			suggestionFields[i++].addFocusListener(load);
+		}
+	}
+	
+	/**
+	 * Renders the selected documents in the background once the form has been
+	 * left unchanged for a moment and is valid, so that generating them only
+	 * has to save the result. Any change drops what was rendered and starts
+	 * the wait again.
+	 */
+	private void addSpeculativeRendering(){
+		speculationTimer = new Timer(SPECULATION_DELAY_MILLIS, new ActionListener(){
+			public void actionPerformed(ActionEvent e){
+				speculate();
+			}
+		});
+		speculationTimer.setRepeats(false);
+		
+		DocumentListener edited = new DocumentListener(){
+			public void insertUpdate(DocumentEvent e){
+				formEdited();
+			}
+			public void removeUpdate(DocumentEvent e){
+				formEdited();
+			}
+			public void changedUpdate(DocumentEvent e){
+			}
+		};
+		JTextField[] fields = { fldInstFName, fldInstLName, fldSubject, fldCourseNum, fldSection, fldYear,
+				fldFacSuppName, fldFacSuppExten, fldFacSuppMailbox };
+		for(JTextField field:fields){
+			field.getDocument().addDocumentListener(edited);
+		}
+		
+		ActionListener changed = new ActionListener(){
+			public void actionPerformed(ActionEvent e){
+				formEdited();
+			}
+		};
+		semesterComboBox.addActionListener(changed);
+		chckbxGenerateCommentSheet.addActionListener(changed);
+		chckbxGenerateOitScan.addActionListener(changed);
+	}
+	
+	private void formEdited(){
+		if(wordGeneratorReady){
+			getWordGenerator().cancelSpeculation();
+		}
+		speculationTimer.restart();
+	}
+	
+	/**
+	 * Starts rendering the documents of the form if it passes validation.
+	 */
+	private void speculate(){
+		// Waiting for the generator here would hold up the window
+		if(!wordGeneratorReady || generationWorker != null){
+			return;
+		}
+		boolean commentSheet = chckbxGenerateCommentSheet.isSelected();
+		boolean oitSheet = chckbxGenerateOitScan.isSelected();
+		if(!commentSheet && !oitSheet){
+			return;
+		}
+		
+		// The same class isValid() passes on when the button is clicked
+		DocInfo info = retrieveDataFromFields();
+		DocInfoValidator.normalizeCase(info);
+		if((oitSheet ? OIT_VALIDATOR : CLASS_VALIDATOR).check(info).isEmpty()){
+			getWordGenerator().speculate(info, commentSheet, oitSheet);
+		}
+	}
+	
+	/**
+	 * Shows the documents of the form laid out as they will be generated,
+	 * without rendering them or starting Word. The user can go on to generate
+	 * them from the preview.
+	 */
+	private void showPreview(){
+		DocInfo info = retrieveDataFromFields();
+		DocInfoValidator.normalizeCase(info);
+		QuestionSet questions = getWordGenerator().getQuestionBank().getIndex().resolve(info);
+		
+		JTabbedPane previewTabbedPane = new JTabbedPane();
+		previewTabbedPane.addTab("Comment Sheet", previewScrollPane(SheetPreview.commentSheet(info, questions)));
+		previewTabbedPane.addTab("OIT Scan Sheet", previewScrollPane(SheetPreview.oitSheet(info, new Date())));
+		if(chckbxGenerateOitScan.isSelected() && !chckbxGenerateCommentSheet.isSelected()){
+			previewTabbedPane.setSelectedIndex(1);
+		}
+		
+		Object[] options = {"Generate Documents", "Close"};
+		int choice = JOptionPane.showOptionDialog(this, previewTabbedPane, "Preview",
+				JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, options, options[1]);
+		if(choice == 0 && btnGenerateDocuments.isEnabled()){
+			btnGenerateDocuments.doClick();
+		}
+	}
+	
+	private static JScrollPane previewScrollPane(SheetPreview preview){
+		JScrollPane scrollPane = new JScrollPane(preview);
+		scrollPane.setPreferredSize(new Dimension(Math.min(preview.getPreferredSize().width + 20, 600), 600));
+		scrollPane.getVerticalScrollBar().setUnitIncrement(16);
+		return scrollPane;
+	}
+	
+	/**
+	 * Loads the course history in the background from the tracking spreadsheet
+	 * that is selected and the saved courses. Does nothing after the first call,
+	 * or before the saved courses are loaded.
+	 */
+	private void loadCourseHistory(){
+		// Started again once the saved courses are loaded
+		if(courseHistoryLoading || !profileStore.isDone()){
+			return;
+		}
+		courseHistoryLoading = true;
+		
+		final List<DocInfo> profiles = getProfileStore().getAll();
+		final File spreadsheet = existSprdshtFileChooser.getSelectedFile();
+		Thread loader = new Thread(new Runnable(){
+			public void run(){
+				CourseHistory loaded = new CourseHistory();
+				if(spreadsheet != null && spreadsheet.isFile()){
+					try {
+						loaded.addSpreadsheet(spreadsheet);
+					} catch (IOException e) {
+						System.out.println("Unable to read course history from " + spreadsheet + ": " + e.getMessage());
+					}
+				}
+				// Oldest first, so the most recent version of each class is kept
+				Collections.reverse(profiles);
+				loaded.addAll(profiles);
+				
+				courseHistory.merge(loaded);
+				System.out.println("Course history loaded, " + courseHistory.size() + " classes");
+			}
+		}, "Course history loader");
+		loader.setDaemon(true);
+		loader.start();
+	}
+	
+	/**
+	 * Fills in the course and faculty support fields from a class.
+	 */
+	private void fillFields(DocInfo info){
+		fldInstFName.setText(info.getInstFName());
+		fldInstLName.setText(info.getInstLName());
+		fldSubject.setText(info.getSubject());
+		fldCourseNum.setText(info.getCourseNum());
+		fldSection.setText(info.getSection());
+		semesterComboBox.setSelectedItem(info.getSemester());
+		fldYear.setText(info.getYear());
+		fldFacSuppName.setText(info.getFacSuppName());
+		fldFacSuppExten.setText(info.getFacSuppExten());
+		fldFacSuppMailbox.setText(info.getMailbox());
 	}
 	
 	/**
 	 * Generates documents based on which checkboxes have been checked on the GUI. Assumes
-	 * all data validation has already been done. 
+	 * all data validation has already been done. Dialogs that need an answer from the
+	 * user are shown first, then the documents are generated in the background so the
+	 * window stays responsive. The steps run at the same time and any that fail are
+	 * listed in one dialog when they have all finished.
 	 * @param info Data used to generate documents
 	 */
-	private void generateDocuments(DocInfo info){
-		
-		// Spinning cursor to show that work is being done
-		contentPane.setCursor(new Cursor(Cursor.WAIT_CURSOR));
+	private void generateDocuments(final DocInfo info){
+		ArrayList<GenerationWorker.Task> tasks = new ArrayList<GenerationWorker.Task>();
 		
 		// Spreadsheet
 		if( chckbxSpreadsheet.isSelected() ){
@@ -246,8 +688,13 @@ public class UserInterface extends JFrame {
 
 			// Use existing CSV file
 			if(index == EXIST_SPRDSHT_INDEX){
-				File saveLoc = existSprdshtFileChooser.getSelectedFile();
-				sprdshtManager.addClassToSpreadsheet(saveLoc, info);
+				final File saveLoc = existSprdshtFileChooser.getSelectedFile();
+				tasks.add(new GenerationWorker.Task(SPREADSHEET_ERROR_MESSAGE, new Callable<Void>(){
+					public Void call() throws IOException{
+						getSpreadsheetManager().addClassToSpreadsheet(saveLoc, info);
+						return null;
+					}
+				}));
 			}
 			// Create new CSV file. Confirmation dialog is shown when this is chosen
 			else{
@@ -258,27 +705,202 @@ public class UserInterface extends JFrame {
 
 				// If user clicks yes
 				if(choice == JOptionPane.YES_OPTION){
-					File saveLoc = newSprdshtFileChooser.getSelectedFile();
-					sprdshtManager.createNewSpreadsheet(saveLoc, fldNewSprdshtFileName.getText(), info);
+					final File saveLoc = newSprdshtFileChooser.getSelectedFile();
+					final String fileName = fldNewSprdshtFileName.getText();
+					tasks.add(new GenerationWorker.Task(SPREADSHEET_ERROR_MESSAGE, new Callable<Void>(){
+						public Void call() throws IOException{
+							getSpreadsheetManager().createNewSpreadsheet(saveLoc, fileName, info);
+							return null;
+						}
+					}));
 				}				
 			}
 		}
 		
-		// Eval comment sheet
+		// Eval comment sheet. The overwrite prompt is answered before anything is generated.
 		if( chckbxGenerateCommentSheet.isSelected() ){
-			wordGenerator.generateCommentTemplate(info, commentSheetFileChooser.getSelectedFile());
+			final WordTemplateGenerator generator = getWordGenerator();
+			final File wordDoc = generator.getCommentTemplateFile(info, commentSheetFileChooser.getSelectedFile());
+			if( generator.confirmOverwrite(info, wordDoc) ){
+				tasks.add(new GenerationWorker.Task(WordTemplateGenerator.COMMENT_SHEET_ERROR_MESSAGE, new Callable<Void>(){
+					public Void call() throws IOException{
+						generator.writeCommentTemplate(info, wordDoc);
+						return null;
+					}
+				}));
+			}
 		}
 		// Oit Scan Sheet
 		if( chckbxGenerateOitScan.isSelected() ){
-			wordGenerator.generateOITSheet(info, chckboxPrintOITSheet.isSelected());
+			final boolean print = chckboxPrintOITSheet.isSelected();
+			final WordTemplateGenerator generator = getWordGenerator();
+			tasks.add(new GenerationWorker.Task(WordTemplateGenerator.OIT_SHEET_ERROR_MESSAGE, new Callable<Void>(){
+				public Void call() throws IOException{
+					generator.writeOITSheet(info, print);
+					return null;
+				}
+			}));
 		}
 		
+		if(tasks.isEmpty()){
+			storeSavedData(info);
+			return;
+		}
 		
-		// Store data in preferences for the next time the program is opened.
-		storeDataInPrefs();
+		// Spinning cursor to show that work is being done
+		contentPane.setCursor(new Cursor(Cursor.WAIT_CURSOR));
+		setGenerationRunning(true);
 		
-		// Switch back to normal cursor
-		contentPane.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+		generationWorker = new GenerationWorker(generationExecutor, tasks, generationProgressBar){
+			@Override
+			protected void done(){
+				generationWorker = null;
+				setGenerationRunning(false);
+				
+				// Switch back to normal cursor
+				contentPane.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+				
+				if(isStopped()){
+					System.out.println("Generation cancelled");
+				}
+				
+				// Save the course for the next time the program is opened,
+				// unless its documents were not all generated
+				if(showGenerationErrors(this) && !isStopped()){
+					storeSavedData(info);
+				}
+			}
+		};
+		generationWorker.execute();
+	}
+	
+	/**
+	 * Shows the failure messages of a finished generation, if there are any.
+	 * @return True if the worker ran to the end, false if it was cancelled or
+	 * threw
+	 */
+	private boolean showGenerationErrors(GenerationWorker worker){
+		if(worker.isCancelled()){
+			return false;
+		}
+		List<String> errors;
+		boolean finished = true;
+		try {
+			errors = worker.get();
+		} catch (InterruptedException e) {
+			return false;
+		} catch (ExecutionException e) {
+			e.getCause().printStackTrace();
+			errors = Collections.singletonList("Documents could not be generated.");
+			finished = false;
+		}
+		
+		if(!errors.isEmpty()){
+			String message = "<html>The following problems occurred:<ul>";
+			for(String error:errors){
+				message += "<li>" + error + "</li>";
+			}
+			message += "</ul></html>";
+			JOptionPane.showMessageDialog(this, message);
+		}
+		return finished;
+	}
+	
+	/**
+	 * Shows the class counts of the chosen spreadsheet for the semester and
+	 * year in the form, or for every year if the year is blank. Read in the
+	 * background because an out of date summary is rebuilt from the whole
+	 * spreadsheet.
+	 */
+	private void showSpreadsheetSummary(){
+		final File spreadsheet = existSprdshtFileChooser.getSelectedFile();
+		if(spreadsheet == null || !spreadsheet.isFile()){
+			JOptionPane.showMessageDialog(this, "Spreadsheet must be chosen");
+			return;
+		}
+		final Semester semester = (Semester) semesterComboBox.getSelectedItem();
+		final String year = fldYear.getText().trim();
+		
+		contentPane.setCursor(new Cursor(Cursor.WAIT_CURSOR));
+		new SwingWorker<SpreadsheetSummary, Void>(){
+			protected SpreadsheetSummary doInBackground() throws IOException{
+				return SpreadsheetSummary.load(spreadsheet);
+			}
+			
+			protected void done(){
+				contentPane.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+				try {
+					JTextArea text = new JTextArea(get().format(semester, year.isEmpty() ? null : year));
+					text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+					text.setEditable(false);
+					JScrollPane scrollPane = new JScrollPane(text);
+					scrollPane.setPreferredSize(new Dimension(420, 400));
+					JOptionPane.showMessageDialog(UserInterface.this, scrollPane, "Spreadsheet Summary",
+							JOptionPane.PLAIN_MESSAGE);
+				} catch (InterruptedException e) {
+					return;
+				} catch (ExecutionException e) {
+					e.getCause().printStackTrace();
+					JOptionPane.showMessageDialog(UserInterface.this, "The spreadsheet summary could not be read.");
+				}
+			}
+		}.execute();
+	}
+	
+	/**
+	 * Asks where to save an Excel workbook and exports the chosen spreadsheet
+	 * to it in the background.
+	 */
+	private void exportSpreadsheet(){
+		final File spreadsheet = existSprdshtFileChooser.getSelectedFile();
+		if(spreadsheet == null || !spreadsheet.isFile()){
+			JOptionPane.showMessageDialog(this, "Spreadsheet must be chosen");
+			return;
+		}
+		
+		JFileChooser workbookChooser = new JFileChooser(spreadsheet.getParentFile());
+		workbookChooser.setFileFilter(new FileNameExtensionFilter("Excel Workbook", "xlsx"));
+		String name = spreadsheet.getName().replaceFirst("\\.csv$", "");
+		workbookChooser.setSelectedFile(new File(spreadsheet.getParentFile(), name + SpreadsheetExporter.EXTENSION));
+		if(workbookChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION){
+			return;
+		}
+		File chosen = workbookChooser.getSelectedFile();
+		if(!chosen.getName().toLowerCase().endsWith(SpreadsheetExporter.EXTENSION)){
+			chosen = new File(chosen.getPath() + SpreadsheetExporter.EXTENSION);
+		}
+		final File workbook = chosen;
+		
+		contentPane.setCursor(new Cursor(Cursor.WAIT_CURSOR));
+		new SwingWorker<Integer, Void>(){
+			protected Integer doInBackground() throws IOException{
+				return new SpreadsheetExporter().threads(Runtime.getRuntime().availableProcessors())
+						.export(spreadsheet, workbook);
+			}
+			
+			protected void done(){
+				contentPane.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+				try {
+					JOptionPane.showMessageDialog(UserInterface.this, get() + " classes exported to " + workbook.getName());
+				} catch (InterruptedException e) {
+					return;
+				} catch (ExecutionException e) {
+					e.getCause().printStackTrace();
+					JOptionPane.showMessageDialog(UserInterface.this, "The spreadsheet could not be exported.");
+				}
+			}
+		}.execute();
+	}
+	
+	/**
+	 * Shows the progress bar and cancel button while documents are being generated
+	 * and prevents starting another generation at the same time.
+	 */
+	private void setGenerationRunning(boolean running){
+		btnGenerateDocuments.setEnabled(!running);
+		btnCancelGeneration.setVisible(running);
+		btnCancelGeneration.setEnabled(running);
+		generationProgressBar.setVisible(running);
 	}
 
 	/**
@@ -330,7 +952,7 @@ public class UserInterface extends JFrame {
 	 * Course info is always checked for validation because it is used for all 
 	 * generated documents. Support staff info is only checked if an OIT 
 	 * scan sheet is being generated. Save location is only checked if comment
-	 * sheet is generated.
+	 * sheet is generated. The fields themselves are checked by DocInfoValidator.
 	 * 
 	 * <html>Checks for:<ul>
 	 *  <li>Blank fields</li>
@@ -350,45 +972,11 @@ public class UserInterface extends JFrame {
 	private boolean isValid(DocInfo info, boolean genOITSheet, boolean genCommentSheet, int spreadsheetChoice){		
 		ArrayList<String> error = new ArrayList<String>();
 		
-		// Instructor first name
-		if( info.getInstFName().isEmpty() ){
-			error.add("Instructor first name field blank");
-		}
-
-		// Instructor last name
-		if( info.getInstLName().isEmpty() ){
-			error.add("Instructor last name field blank");
-		}
-		
-		// Subject
-		info.setSubject(info.getSubject().toUpperCase());
-		if( info.getSubject().isEmpty() ){
-			error.add("Subject field blank");
-		}
-		else if (containsNumbers( info.getSubject() )) {
-			error.add("Subject field contains numbers");
-		}
-		
-		// Course Number
-		if( info.getCourseNum().isEmpty() ){
-			error.add("Course number field blank");
-		}
-		else if(containsLetters( info.getCourseNum() )){
-			error.add("Course number field contains letters");
-		}
-		
-		// Section
-		info.setSection(info.getSection().toUpperCase());
-		if( info.getSection().isEmpty() ){
-			error.add("Section field blank");
-		}
+		DocInfoValidator.normalizeCase(info);
 		
-		// Year
-		if( info.getYear().isEmpty() ){
-			error.add("Year field blank");
-		}
-		else if(containsLetters( info.getYear() )){
-			error.add("Year field contains letters");
+		// Class fields, and the OIT sheet fields if OIT checkbox was checked when button was pushed
+		for(ValidationReport.Problem problem:(genOITSheet ? OIT_VALIDATOR : CLASS_VALIDATOR).check(info)){
+			error.add(problem.getMessage());
 		}
 
 		if (genCommentSheet) {
@@ -398,22 +986,6 @@ public class UserInterface extends JFrame {
 				error.add("Invalid comment sheet save location");
 			}
 		}
-		// Check OIT sheet fields if OIT checkbox was checked when button was pushed
-		if (genOITSheet){
-			// Faculty Support Name
-			if( info.getFacSuppName().isEmpty() ){
-				error.add("Faculty support name field blank");
-			}
-			// Support extension
-			if( info.getFacSuppExten().isEmpty() ){
-				error.add("Extension field blank");
-			}
-			
-			// Mailbox
-			if( info.getMailbox().isEmpty() ){
-				error.add("Mailbox field blank");
-			}
-		}
 		
 		switch(spreadsheetChoice){
 		case(SPREADSHEET_NONE):	// Do nothing
@@ -531,30 +1103,6 @@ public class UserInterface extends JFrame {
 	}
 
 	
-	/**
-	 * Returns true if a string contains any letters. Otherwise returns false.
-	 */
-	private boolean containsLetters(String string){
-		for(int i = 0; i < string.length(); i++){
-			if(Character.isAlphabetic(string.charAt(i))){
-				return true;
-			}
-		}
-		return false;
-	}
-	
-	/**
-	 * Returns true if a string contains any numbers. Otherwise returns false.
-	 */
-	private boolean containsNumbers(String string){
-		for(int i = 0; i < string.length(); i++){
-			if(Character.isDigit(string.charAt(i))){
-				return true;
-			}
-		}
-		return false;
-	}
-	
 	/**
 	 * Adjusts various settings of GUI such as title banner,
 	 * window size, and launch location.
@@ -573,27 +1121,25 @@ public class UserInterface extends JFrame {
 		contentPane.setLayout(null);
 		setResizable(false);
 		
-		// Change application icon from default Java icon to logo
-		try {
-	           Image logo = ImageIO.read(new File(ICON_FILE_PATH));
-	           setIconImage(logo);
-	       } catch (IOException e) {
-	    	   e.printStackTrace();
-	    }
+		// Change application icon from default Java icon to logo. Read once
+		// and also used in the title banner.
+		Image logo = null;
 		try {
-			Image img = ImageIO.read(new File(ICON_FILE_PATH));
-			// Title banner at top of window
-			JLabel lblTitle = new JLabel("Evaluation Template Generator");
-			lblTitle.setHorizontalAlignment(SwingConstants.LEFT);
-			lblTitle.setBounds(20, 13, 320, 61);
-			lblTitle.setFont(new Font("Arial Bold", Font.PLAIN, 15));
-	   		lblTitle.setIcon(new ImageIcon(img));
-	   		contentPane.add(lblTitle);
-	       } catch (IOException e) {
-	    	   e.printStackTrace();
-	    }
-		
+			logo = ImageIO.read(new File(ICON_FILE_PATH));
+			setIconImage(logo);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 		
+		// Title banner at top of window
+		JLabel lblTitle = new JLabel("Evaluation Template Generator");
+		lblTitle.setHorizontalAlignment(SwingConstants.LEFT);
+		lblTitle.setBounds(20, 13, 320, 61);
+		lblTitle.setFont(new Font("Arial Bold", Font.PLAIN, 15));
+		if(logo != null){
+			lblTitle.setIcon(new ImageIcon(logo));
+		}
+		contentPane.add(lblTitle);
 	}
 
 	/**
@@ -736,9 +1282,26 @@ public class UserInterface extends JFrame {
 		JLabel lblCourseInformation = new JLabel("Course Information");
 		lblCourseInformation.setHorizontalAlignment(SwingConstants.CENTER);
 		lblCourseInformation.setFont(new Font("Arial", Font.BOLD | Font.ITALIC, 10));
-		lblCourseInformation.setBounds(105, 13, 110, 16);
+		lblCourseInformation.setBounds(12, 13, 110, 16);
 		courseInfoPanel.add(lblCourseInformation);
 		
+		// Filling in a saved course replaces the course and faculty support fields
+		profileComboBox = new JComboBox<String>();
+		profileComboBox.setToolTipText("Fill in a course generated before");
+		profileComboBox.setBounds(130, 10, 178, 22);
+		profileComboBox.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent arg0) {
+				if(updatingProfiles || profileComboBox.getSelectedIndex() <= 0){
+					return;
+				}
+				DocInfo info = getProfileStore().get((String) profileComboBox.getSelectedItem());
+				if(info != null){
+					fillFields(info);
+				}
+			}
+		});
+		courseInfoPanel.add(profileComboBox);
+		
 		JPanel saveLocPanel = new JPanel();
 		saveLocPanel.setBorder(new TitledBorder(UIManager.getBorder("TitledBorder.border"), "Save Location", TitledBorder.LEADING, TitledBorder.TOP, null, new Color(0, 0, 0)));
 		saveLocPanel.setBounds(12, 230, 296, 50);
@@ -899,6 +1462,26 @@ public class UserInterface extends JFrame {
 		lblExistSprdshtSaveLoc.setBounds(102, 19, 182, 22);
 		existSaveLocPanel.add(lblExistSprdshtSaveLoc);
 		
+		JButton btnSprdshtSummary = new JButton("Summary...");
+		btnSprdshtSummary.setToolTipText("Number of classes in the spreadsheet for the semester and year above, by subject and instructor.");
+		btnSprdshtSummary.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				showSpreadsheetSummary();
+			}
+		});
+		btnSprdshtSummary.setBounds(16, 64, 91, 25);
+		existSprdshtPanel.add(btnSprdshtSummary);
+		
+		JButton btnSprdshtExport = new JButton("Export...");
+		btnSprdshtExport.setToolTipText("Save the spreadsheet as an Excel workbook with one sheet per semester.");
+		btnSprdshtExport.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				exportSpreadsheet();
+			}
+		});
+		btnSprdshtExport.setBounds(112, 64, 91, 25);
+		existSprdshtPanel.add(btnSprdshtExport);
+		
 
 		spreadsheetTabbedPane.addTab("New Spreadsheet", null, newSprdshtPanel,
 		                  "Generate new spreadsheet");
@@ -977,7 +1560,7 @@ public class UserInterface extends JFrame {
 		chckbxSpreadsheet.setBounds(30, 117, 230, 25);
 		contentPane.add(chckbxSpreadsheet);
 		
-		JButton btnGenerateDocuments = new JButton("Generate Documents");
+		btnGenerateDocuments = new JButton("Generate Documents");
 		btnGenerateDocuments.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent arg0) {
 				DocInfo info = retrieveDataFromFields();
@@ -1011,6 +1594,40 @@ public class UserInterface extends JFrame {
 		btnGenerateDocuments.setBounds(99, 792, 161, 45);
 		contentPane.add(btnGenerateDocuments);
 		
+		// Shows the documents without generating them or opening Word. The
+		// questions come from the generator, so it waits until that is ready
+		// rather than holding up the window.
+		btnPreview = new JButton("Preview");
+		btnPreview.setEnabled(false);
+		btnPreview.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent arg0) {
+				showPreview();
+			}
+		});
+		btnPreview.setBounds(20, 802, 75, 25);
+		contentPane.add(btnPreview);
+		
+		// Only shown while documents are being generated
+		btnCancelGeneration = new JButton("Cancel");
+		btnCancelGeneration.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent arg0) {
+				// Steps already writing are left to finish, Generate stays
+				// disabled until they have
+				if(generationWorker != null){
+					btnCancelGeneration.setEnabled(false);
+					generationWorker.cancelPendingSteps();
+				}
+			}
+		});
+		btnCancelGeneration.setBounds(265, 802, 75, 25);
+		btnCancelGeneration.setVisible(false);
+		contentPane.add(btnCancelGeneration);
+		
+		generationProgressBar = new JProgressBar();
+		generationProgressBar.setBounds(20, 845, 320, 14);
+		generationProgressBar.setVisible(false);
+		contentPane.add(generationProgressBar);
+		
 		// Make button default, allowing user to hit enter to generate documents
 		this.getRootPane().setDefaultButton(btnGenerateDocuments);
 		
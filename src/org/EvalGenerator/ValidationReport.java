@@ -0,0 +1,97 @@
+/**
+ * Result of checking one class with DocInfoValidator. Holds the class, its
+ * position in the list or roster it came from, and every problem found.
+ */
+
+package org.EvalGenerator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ValidationReport {
+	//******************* DATA MEMBERS *******************
+	private final int record;
+	private final DocInfo info;
+	private final List<Problem> problems;
+
+	/**
+	 * A field of the class that breaks a rule.
+	 */
+	public static class Problem {
+		private final DocInfoValidator.Field field;
+		private final String message;
+
+		public Problem(DocInfoValidator.Field field, String message){
+			this.field   = field;
+			this.message = message;
+		}
+
+		public DocInfoValidator.Field getField(){
+			return field;
+		}
+		public String getMessage(){
+			return message;
+		}
+
+		public String toString(){
+			return message;
+		}
+	}
+
+	//******************* CONSTRUCTORS *******************
+	/**
+	 * @param record Position of the class in the list or roster it came from
+	 * @param info The class that was checked
+	 * @param problems Problems found, empty if it is valid
+	 */
+	public ValidationReport(int record, DocInfo info, List<Problem> problems){
+		this.record   = record;
+		this.info     = info;
+		this.problems = Collections.unmodifiableList(new ArrayList<Problem>(problems));
+	}
+
+	//******************* PUBLIC METHODS *******************
+	public int getRecord(){
+		return record;
+	}
+	public DocInfo getInfo(){
+		return info;
+	}
+	public List<Problem> getProblems(){
+		return problems;
+	}
+
+	/**
+	 * Returns true if no problems were found.
+	 */
+	public boolean isValid(){
+		return problems.isEmpty();
+	}
+
+	/**
+	 * Returns the message of every problem, in field order.
+	 */
+	public List<String> getMessages(){
+		ArrayList<String> messages = new ArrayList<String>(problems.size());
+		for(Problem problem:problems){
+			messages.add(problem.getMessage());
+		}
+		return messages;
+	}
+
+	public String toString(){
+		StringBuilder text = new StringBuilder();
+		text.append("Record ").append(record).append(" (").append(DocInfoCsv.format(info)).append("): ");
+		if(problems.isEmpty()){
+			return text.append("valid").toString();
+		}
+		for(int i = 0; i < problems.size(); i++){
+			if(i > 0){
+				text.append("; ");
+			}
+			text.append(problems.get(i).getMessage());
+		}
+		return text.toString();
+	}
+}
@@ -1,71 +1,55 @@
 /**
  * This class is responsible for generating the template Word
- * documents. It uses Docx4j, a Java library designed to create
- * .docx documents. It also opens the files after they are created using
- * the Desktop class, which is part of the default JDK.
- * 
- * Some of the table generation code was taken from:
- * http://blog.iprofs.nl/2012/09/06/creating-word-documents-with-docx4j/
+ * documents. The documents are rendered by a DocumentRenderer, which uses
+ * Docx4j, a Java library designed to create .docx documents. It also opens
+ * the files after they are created using the Desktop class, which is part
+ * of the default JDK.
  */
 
 package org.EvalGenerator;
 
 import java.awt.Desktop;
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.math.BigInteger;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.io.OutputStream;
 import java.util.Date;
-import javax.swing.JFrame;
 import javax.swing.JOptionPane;
-import org.docx4j.jaxb.Context;
-import org.docx4j.openpackaging.exceptions.Docx4JException;
-import org.docx4j.openpackaging.exceptions.InvalidFormatException;
-import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
-import org.docx4j.wml.BooleanDefaultTrue;
-import org.docx4j.wml.CTBorder;
-import org.docx4j.wml.HpsMeasure;
-import org.docx4j.wml.ObjectFactory;
-import org.docx4j.wml.P;
-import org.docx4j.wml.R;
-import org.docx4j.wml.RPr;
-import org.docx4j.wml.STBorder;
-import org.docx4j.wml.Tbl;
-import org.docx4j.wml.TblBorders;
-import org.docx4j.wml.TblPr;
-import org.docx4j.wml.TblWidth;
-import org.docx4j.wml.Tc;
-import org.docx4j.wml.TcPr;
-import org.docx4j.wml.Text;
-import org.docx4j.wml.Tr;
+import javax.swing.SwingUtilities;
 
 
 public class WordTemplateGenerator {
-	private static final int TABLE_SHORT_FIELD_LENGTH = 2000;
-	private static final String OIT_SCAN_SHEET_SAVE_LOC = "files/textDocs/OITScanSheet.docx";
-	private static final String COMMENT_SHEET_QUESTION_SAVE_PATH = "files/textDocs/evalQuestions.txt";
-	private static final int TABLE_LONG_FIELD_LENGTH = 6250;
-	private static final String NEW_LINE = "\n\r";
+	public static final String COMMENT_SHEET_QUESTION_SAVE_PATH = "files/textDocs/evalQuestions.txt";
+	public static final String COMMENT_SHEET_ERROR_MESSAGE = "The comment sheet could not be saved. "
+			+ "Make sure the document is not already open in Word.";
+	public static final String OIT_SHEET_ERROR_MESSAGE = "Unable to open the OIT scan sheet. "
+			+ "Make sure the document is not open.";
 	//******************* DATA MEMBERS *******************
 	// Used to open files with Word after they are saved.
 	private Desktop desktop;
 	
-	// Used for Word doc creation
-	private WordprocessingMLPackage  wordMLPackage;
-    private ObjectFactory factory;
+	// Used for Word doc creation. Keeps no state, so it is safe to share.
+	private DocumentRenderer renderer = new Docx4jRenderer();
+	
+	// Documents of the class being filled in, rendered before they are asked for
+	private SpeculativeRenderer speculation = new SpeculativeRenderer(renderer);
     
-    // Stores questions for comments sheet that are read from a file.
-    private ArrayList<String> evalQuestions = new ArrayList<String>();
+    // Stores questions for comments sheet that are read from the default question
+    // file and the subject and course question files. Reloaded whenever they change.
+    private QuestionBank questionBank = new QuestionBank(new File(COMMENT_SHEET_QUESTION_SAVE_PATH),
+    		new File(QuestionSetIndex.QUESTION_DIRECTORY));
 	
 	//******************* CONSTRUCTORS *******************
 	public WordTemplateGenerator(){
-		// Read and store course evaluation questions
+		// Read and store course evaluation questions, then keep them current
 		readQuestionsFromFile();
+		try {
+			questionBank.startWatching();
+		} catch (IOException e) {
+			System.out.println("Unable to watch question file for changes: " + e.getMessage());
+		}
 		
 		// Used to open files
 		desktop = Desktop.getDesktop();
@@ -79,340 +63,200 @@ public class WordTemplateGenerator {
 	 * the location specified with a name generated by the program based on the course info.
 	 */
 	public void generateCommentTemplate(DocInfo info, File saveLoc){
+		// Check if file exists. If it does exist, give the user the option
+		// to cancel. 
+		File wordDoc = getCommentTemplateFile(info, saveLoc);
+		if( !confirmOverwrite(info, wordDoc) ){
+			return;
+		}
+		
 		try {
-			// Check if file exists. If it does exist, give the user the option
-			// to cancel. 
-			File wordDoc = new File(saveLoc, generateSaveFileName(info));
-			if( wordDoc.exists() ){
-				String message = "The comment template sheet already exists. By selecting "
-						+ "yes, the file will be overwritten. Are you sure you want to overwrite "
-						+ "the file?";
-				int response = JOptionPane.showConfirmDialog(null, message);
-				if(response != JOptionPane.YES_OPTION){
-					return;
-				}
-			}
-			
-			wordMLPackage = WordprocessingMLPackage.createPackage();
-			factory = Context.getWmlObjectFactory();
-			
-			// Add title to top of document
-			wordMLPackage.getMainDocumentPart().addParagraphOfText("Student Feedback to Instructor");
-
-			//Create table for header information
-		    Tbl courseInfoTable = factory.createTbl();
-	 
-	        // Create instructor name row
-	        Tr instNameRow = factory.createTr();
-	        addStyledTableCellWithWidth(instNameRow, "Instructor Name:", true, "20", TABLE_SHORT_FIELD_LENGTH);
-	        addStyledTableCellWithWidth(instNameRow, info.getInstFName() + " " 
-	        		+ info.getInstLName(), false, "20", TABLE_LONG_FIELD_LENGTH);
-	        
-	        // Create subject/course number row
-	        Tr courseInfoRow = factory.createTr();
-	        addStyledTableCellWithWidth(courseInfoRow, "Course Subject & Number:", true, "20", 3000);
-	        addStyledTableCellWithWidth(courseInfoRow, info.getSubject() + " " 
-	        		+ info.getCourseNum(), false, "20", TABLE_LONG_FIELD_LENGTH);
-	        
-	        // Create section row
-	        Tr sectionRow = factory.createTr();
-	        addStyledTableCellWithWidth(sectionRow, "Section:", true, "20", TABLE_SHORT_FIELD_LENGTH);
-	        addStyledTableCellWithWidth(sectionRow, info.getSection(), false, "20", TABLE_LONG_FIELD_LENGTH);
-	        
-	        // Semester/Year row
-	        Tr semesterRow = factory.createTr();
-	        addStyledTableCellWithWidth(semesterRow, "Semester:", true, "20", TABLE_SHORT_FIELD_LENGTH);
-	        addStyledTableCellWithWidth(semesterRow, info.getSemester().toString() 
-	        		+ " " + info.getYear(), false, "20", TABLE_LONG_FIELD_LENGTH);
-	        
-	        // Add rows to table
-	        courseInfoTable.getContent().add(instNameRow);
-	        courseInfoTable.getContent().add(courseInfoRow);
-	        courseInfoTable.getContent().add(sectionRow);
-	        courseInfoTable.getContent().add(semesterRow);
-	        
-	        // Add border around entire table
-	        addBorders(courseInfoTable);
-	        
-	        // Place tables on document
-	        wordMLPackage.getMainDocumentPart().addObject(courseInfoTable);
-	        
-	        // Create a new table for each evaluation question
-	        for(String question:evalQuestions){
-	        	// Add empty paragraph so there is a space between questions
-	        	wordMLPackage.getMainDocumentPart().addParagraphOfText(NEW_LINE);
-	        	
-	        	// Create table and add to doc 
-	        	Tbl questionTable = factory.createTbl();
-	        	
-	        	// Row with question
-	        	Tr questionRow = factory.createTr();
-	        	addStyledTableCellWithWidth(questionRow, question, true, "20", 10000);
-	        	questionTable.getContent().add(questionRow);
-	        	
-	        	// Row with blank line for input
-	        	Tr blankRow = factory.createTr();
-	        	addStyledTableCellWithWidth(blankRow, "", true, "20", 10000);
-	        	questionTable.getContent().add(blankRow); 
-	        	
-	        	addBorders(questionTable);
-	        	
-	        	// Add table to document
-	        	wordMLPackage.getMainDocumentPart().addObject(questionTable);
-	        }
-	        
-		    
-		    wordMLPackage.save(wordDoc);
-		    openFile(wordDoc);
-		} catch (InvalidFormatException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (Docx4JException e) {
-			JOptionPane.showMessageDialog(null, "The comment sheet could not be saved. Make sure the document is not already open in Word.");
+			writeCommentTemplate(info, wordDoc);
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(null, COMMENT_SHEET_ERROR_MESSAGE);
 			e.printStackTrace();
 		}
 	}
 	
+	/**
+	 * Returns the file the comment sheet for a DocInfo object is saved as.
+	 * @param saveLoc Directory the comment sheet is saved in
+	 */
+	public File getCommentTemplateFile(DocInfo info, File saveLoc){
+		return new File(saveLoc, generateSaveFileName(info));
+	}
 	
 	/**
-	 * Generates an OIT scan sheet. If checkbox for print is open, uses a Desktop
-	 * object to print to the default printer. The current system date is used as the date. 
-	 * @param info Course inform
-	 * @param print If true, the document will be sent to default printer
+	 * If the comment sheet already exists, asks the user whether to overwrite it.
+	 * There is no prompt if the existing sheet was generated from the same course
+	 * info and questions, since it would not be changed. Must be called on the
+	 * Event Dispatch Thread.
+	 * @param info Course info for the header table
+	 * @param wordDoc Comment sheet file
+	 * @return True if the file does not exist, is current, or the user chose to overwrite it
 	 */
-	public void generateOITSheet(DocInfo info, boolean print){
-		try {		
-			// Create new doc
-			wordMLPackage = WordprocessingMLPackage.createPackage();
-			factory = Context.getWmlObjectFactory();
-			
-			// Add title to top of document
-			wordMLPackage.getMainDocumentPart().addParagraphOfText("OIT Scan Cover Sheet");
-
-			//Create table for header information
-			Tbl infoTable = factory.createTbl();
-
-			// Create instructor name row
-			Tr instNameRow = factory.createTr();
-			addStyledTableCellWithWidth(instNameRow, "Instructor Name:", true, "20", TABLE_SHORT_FIELD_LENGTH);
-			addStyledTableCellWithWidth(instNameRow, info.getInstFName() + " " 
-					+ info.getInstLName(), false, "20", TABLE_LONG_FIELD_LENGTH);
-
-			// Create subject/course number row
-			Tr courseInfoRow = factory.createTr();
-			addStyledTableCellWithWidth(courseInfoRow, "Course Subject & Number:", true, "20", 3000);
-			addStyledTableCellWithWidth(courseInfoRow, info.getSubject() + " " 
-					+ info.getCourseNum(), false, "20", TABLE_LONG_FIELD_LENGTH);
-
-			// Create section row
-			Tr sectionRow = factory.createTr();
-			addStyledTableCellWithWidth(sectionRow, "Section:", true, "20", TABLE_SHORT_FIELD_LENGTH);
-			addStyledTableCellWithWidth(sectionRow, info.getSection(), false, "20", TABLE_LONG_FIELD_LENGTH);
-
-			// Semester/Year row
-			Tr semesterRow = factory.createTr();
-			addStyledTableCellWithWidth(semesterRow, "Semester:", true, "20", TABLE_SHORT_FIELD_LENGTH);
-			addStyledTableCellWithWidth(semesterRow, info.getSemester().toString() 
-					+ " " + info.getYear(), false, "20", TABLE_LONG_FIELD_LENGTH);
-			
-			// Faculty supp name row
-			Tr facSuppNameRow = factory.createTr();
-			addStyledTableCellWithWidth(facSuppNameRow, "Faculty Support Name:", true, "20", TABLE_SHORT_FIELD_LENGTH);
-			addStyledTableCellWithWidth(facSuppNameRow, info.getFacSuppName(), false, "20", TABLE_LONG_FIELD_LENGTH);
-
-			// Faculty supp name row
-			Tr facSuppExtenRow = factory.createTr();
-			addStyledTableCellWithWidth(facSuppExtenRow, "Faculty Support Extension:", true, "20", TABLE_SHORT_FIELD_LENGTH);
-			addStyledTableCellWithWidth(facSuppExtenRow, info.getFacSuppExten(), false, "20", TABLE_LONG_FIELD_LENGTH);
-			
-			// Mailbox row
-			Tr mailboxRow = factory.createTr();
-			addStyledTableCellWithWidth(mailboxRow, "I would like the results delivered to mailbox:", true, "20", TABLE_SHORT_FIELD_LENGTH);
-			addStyledTableCellWithWidth(mailboxRow, info.getMailbox(), false, "20", TABLE_LONG_FIELD_LENGTH);
-			
-			Tr dateRow = factory.createTr();
-			DateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy");
-			Date date = new Date();
-			System.out.println(dateFormat.format(date));
-			addStyledTableCellWithWidth(dateRow, "Date of Request:", true, "20", TABLE_SHORT_FIELD_LENGTH);
-			addStyledTableCellWithWidth(dateRow, dateFormat.format(date), false, "20", TABLE_LONG_FIELD_LENGTH);
-			
-			// Add rows to table
-			infoTable.getContent().add(instNameRow);
-			infoTable.getContent().add(courseInfoRow);
-			infoTable.getContent().add(sectionRow);
-			infoTable.getContent().add(semesterRow);
-			infoTable.getContent().add(facSuppNameRow);
-			infoTable.getContent().add(facSuppExtenRow);
-			infoTable.getContent().add(mailboxRow);
-			infoTable.getContent().add(dateRow);
-
-			// Add border around entire table
-			addBorders(infoTable);
-
-			// Place tables on document
-			wordMLPackage.getMainDocumentPart().addObject(infoTable);
-			
-			// Save in project files
-			wordMLPackage.save(new File(OIT_SCAN_SHEET_SAVE_LOC));
-			
-			// Print or open file based on user decision
-			if(print){
-				desktop.print(new File(OIT_SCAN_SHEET_SAVE_LOC));
-			}
-			else{
-				desktop.open(new File(OIT_SCAN_SHEET_SAVE_LOC));
-			}
-			
-			
-			System.out.println("OIT Scan sheet generated.");
-			
-		} catch (InvalidFormatException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (Docx4JException e) {
-			// TODO Auto-generated catch block
-			JOptionPane.showMessageDialog(null, "Unable to open the OIT scan sheet. Make sure the document is not open.");
-			e.printStackTrace();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+	public boolean confirmOverwrite(DocInfo info, File wordDoc){
+		if( wordDoc.exists() && !isCommentTemplateCurrent(info, wordDoc) ){
+			String message = "The comment template sheet already exists. By selecting "
+					+ "yes, the file will be overwritten. Are you sure you want to overwrite "
+					+ "the file?";
+			int response = JOptionPane.showConfirmDialog(null, message);
+			return response == JOptionPane.YES_OPTION;
 		}
+		return true;
 	}
 	
-	//******************* PRIVATE METHODS *******************
 	/**
-	 * Read questions for comment sheet from file and store.
+	 * Returns true if the comment sheet exists and was generated from the same
+	 * course info and questions, according to the manifest in its directory.
 	 */
-	private void readQuestionsFromFile(){
+	public boolean isCommentTemplateCurrent(DocInfo info, File wordDoc){
 		try {
-			// Open file
-			BufferedReader reader = new BufferedReader(new FileReader(new File(COMMENT_SHEET_QUESTION_SAVE_PATH)));
-			
-			// Loop until all lines of the file are stored in the array.
-			while(reader.ready()){
-				evalQuestions.add(reader.readLine());
-			}
-			
-			reader.close();
-						
-		} catch (FileNotFoundException e) {
-			JOptionPane.showMessageDialog(new JFrame(), "Unable to open questions for evaluation sheet.");
-			e.printStackTrace();
+			GenerationManifest manifest = GenerationManifest.load(wordDoc.getAbsoluteFile().getParentFile());
+			return manifest.isCurrent(wordDoc, GenerationManifest.commentSheetHash(info, questionsFor(info)));
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
 			e.printStackTrace();
+			return false;
 		}
 	}
+	
 	/**
-	 *  In this method we create a cell and add the given content to it.
-	 *  If the given width is greater than 0, we set the width on the cell.
-	 *  Finally, we add the cell to the row.
+	 * Saves and opens the comment sheet without any dialogs, so it can be called
+	 * from a background thread. The user should already have confirmed overwriting.
+	 * A sheet that is already current is opened without being generated again.
+	 * @param info Course info for the header table
+	 * @param wordDoc File the document is saved to
+	 * @throws IOException If the document could not be created or saved
 	 */
-	private void addStyledTableCellWithWidth(Tr row, String content, 
-			boolean bold, String fontSize, int width){
-	    Tc tableCell = factory.createTc();
-	    addStyling(tableCell, content, bold, fontSize);
+	public void writeCommentTemplate(DocInfo info, File wordDoc) throws IOException{
+		// The hash and the document must use the same questions
+		QuestionSet questions = questionsFor(info);
+		String hash = GenerationManifest.commentSheetHash(info, questions);
+		
+		GenerationManifest manifest = GenerationManifest.load(wordDoc.getAbsoluteFile().getParentFile());
+		if( manifest.isCurrent(wordDoc, hash) ){
+			System.out.println("Comment sheet is unchanged, opening existing file.");
+		}
+		else{
+			saveCommentTemplate(info, questions, wordDoc);
+			GenerationManifest.update(wordDoc, hash);
+		}
+		openFile(wordDoc);
+	}
 	
-	    if (width > 0) {
-	        setCellWidth(tableCell, width);
-	    }
-	    row.getContent().add(tableCell);
+	/**
+	 * Renders the comment sheet for a DocInfo object and saves it to the given file
+	 * without prompting or opening it.
+	 * @param info Course info for the header table
+	 * @param wordDoc File the document is saved to. Overwritten if it exists.
+	 * @throws IOException If the document could not be created or saved
+	 */
+	public void saveCommentTemplate(DocInfo info, File wordDoc) throws IOException{
+		saveCommentTemplate(info, questionsFor(info), wordDoc);
 	}
-
+	
 	/**
-     *  This is where we add the actual styling information. In order to do this
-     *  we first create a paragraph. Then we create a text with the content of
-     *  the cell as the value. Thirdly, we create a so-called run, which is a
-     *  container for one or more pieces of text having the same set of
-     *  properties, and add the text to it. We then add the run to the content
-     *  of the paragraph.
-     *  So far what we've done still doesn't add any styling. To accomplish that,
-     *  we'll create run properties and add the styling to it. These run
-     *  properties are then added to the run. Finally the paragraph is added
-     *  to the content of the table cell.
-     */
-    private void addStyling(Tc tableCell, String content,
-                    boolean bold, String fontSize) {
-        P paragraph = factory.createP();
- 
-        Text text = factory.createText();
-        text.setValue(content);
- 
-        R run = factory.createR();
-        run.getContent().add(text);
- 
-        paragraph.getContent().add(run);
- 
-        RPr runProperties = factory.createRPr();
-        if (bold) {
-            addBoldStyle(runProperties);
-        }
- 
-        if (fontSize != null && !fontSize.isEmpty()) {
-            setFontSize(runProperties, fontSize);
-        }
- 
-        run.setRPr(runProperties);
- 
-        tableCell.getContent().add(paragraph);
-    }
- 
-    /**
-     *  In this method we're going to add the font size information to the run
-     *  properties. First we'll create a half-point measurement. Then we'll
-     *  set the fontSize as the value of this measurement. Finally we'll set
-     *  the non-complex and complex script font sizes, sz and szCs respectively.
-     */
-    private void setFontSize(RPr runProperties, String fontSize) {
-        HpsMeasure size = new HpsMeasure();
-        size.setVal(new BigInteger(fontSize));
-        runProperties.setSz(size);
-        runProperties.setSzCs(size);
-    }
- 
-    /**
-     *  In this method we'll add the bold property to the run properties.
-     *  BooleanDefaultTrue is the Docx4j object for the b property.
-     *  Technically we wouldn't have to set the value to true, as this is
-     *  the default.
-     */
-    private void addBoldStyle(RPr runProperties) {
-        BooleanDefaultTrue b = new BooleanDefaultTrue();
-        b.setVal(true);
-        runProperties.setB(b);
-    }
+	 * Starts rendering the documents of a class in the background, so saving
+	 * them later only has to write the file. Documents already rendered for
+	 * the same class and questions are kept. Can be called on the Event
+	 * Dispatch Thread.
+	 * @param info Class the documents are for. Must not be changed afterwards.
+	 * @param commentSheet If true, the comment sheet is rendered
+	 * @param oitSheet If true, the OIT scan sheet is rendered
+	 */
+	public void speculate(DocInfo info, boolean commentSheet, boolean oitSheet){
+		speculation.speculate(info, commentSheet ? questionsFor(info) : null, oitSheet);
+	}
+	
 	/**
-     *  In this method we create a table cell properties object and a table width
-     *  object. We set the given width on the width object and then add it to
-     *  the properties object. Finally we set the properties on the table cell.
-     */
-    private void setCellWidth(Tc tableCell, int width) {
-        TcPr tableCellProperties = new TcPr();
-        TblWidth tableWidth = new TblWidth();
-        tableWidth.setW(BigInteger.valueOf(width));
-        tableCellProperties.setTcW(tableWidth);
-        tableCell.setTcPr(tableCellProperties);
-    }
+	 * Drops the documents rendered by speculate().
+	 */
+	public void cancelSpeculation(){
+		speculation.cancel();
+	}
+	
 	/**
-	 * Opens designated file with default program 
-	 * @param file File to be opened
+	 * Returns the question bank used for comment sheets.
 	 */
-	private void openFile(File file) {      
-		try {
-			desktop.open(file);
-		} catch (Exception e) {
+	public QuestionBank getQuestionBank(){
+		return questionBank;
+	}
+	
+	/**
+	 * Generates an OIT scan sheet. If checkbox for print is open, uses a Desktop
+	 * object to print to the default printer. The current system date is used as the date. 
+	 * @param info Course inform
+	 * @param print If true, the document will be sent to default printer
+	 */
+	public void generateOITSheet(DocInfo info, boolean print){
+		try {		
+			writeOITSheet(info, print);
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(null, OIT_SHEET_ERROR_MESSAGE);
 			e.printStackTrace();
 		}
 	}
 	
+	/**
+	 * Generates an OIT scan sheet and prints or opens it without any dialogs,
+	 * so it can be called from a background thread.
+	 * @param info Course info for the table
+	 * @param print If true, the document will be sent to default printer
+	 * @throws IOException If the document could not be created, saved, or opened
+	 */
+	public void writeOITSheet(DocInfo info, boolean print) throws IOException{
+		// Create new doc in its own temporary file so that generating a sheet
+		// never collides with one that is still open or printing
+		File oitSheet = File.createTempFile("OITScanSheet", ".docx");
+		oitSheet.deleteOnExit();
+		saveOITSheet(info, oitSheet);
+		
+		// Print or open file based on user decision
+		if(print){
+			desktop.print(oitSheet);
+		}
+		else{
+			desktop.open(oitSheet);
+		}
+		
+		System.out.println("OIT Scan sheet generated.");
+	}
+	
+	/**
+	 * Renders the OIT scan sheet for a DocInfo object and saves it to the given file
+	 * without opening or printing it. The current system date is used as the date.
+	 * @param info Course info for the table
+	 * @param file File the document is saved to. Overwritten if it exists.
+	 * @throws IOException If the document could not be created or saved
+	 */
+	public void saveOITSheet(DocInfo info, File file) throws IOException{
+		Date requestDate = new Date();
+		byte[] rendered = speculation.getOITSheet(info, requestDate);
+		if(rendered != null){
+			System.out.println("OIT scan sheet was rendered ahead of time.");
+			writeFile(rendered, file);
+			return;
+		}
+		
+		boolean warm = RendererWarmup.isComplete();
+		long start = System.nanoTime();
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		try{
+			renderer.renderOITSheet(info, requestDate, out);
+		}
+		finally{
+			out.close();
+		}
+		RendererWarmup.recordGeneration(start, warm);
+	}
+	
 	/** 
 	 * Takes a DocInfo object and converts it to a string that the file
 	 * will be named as.
 	 * @param info Course info to be converted
 	 * @return String of a DocInfo object in the form: lname_fname subject courseNum-section semester year
 	 */
-	private String generateSaveFileName(DocInfo info){
+	public static String generateSaveFileName(DocInfo info){
 		return info.getInstLName()    + "_" 
 				+ info.getInstFName() + " "
 				+ info.getSubject()   + " "
@@ -422,21 +266,93 @@ public class WordTemplateGenerator {
 				+ info.getYear() + ".docx";
 	}
 	
-	private void addBorders(Tbl table) {
-        table.setTblPr(new TblPr());
-        CTBorder border = new CTBorder();
-        border.setColor("auto");
-        border.setSz(new BigInteger("4"));
-        border.setSpace(new BigInteger("0"));
-        border.setVal(STBorder.SINGLE);
- 
-        TblBorders borders = new TblBorders();
-        borders.setBottom(border);
-        borders.setLeft(border);
-        borders.setRight(border);
-        borders.setTop(border);
-        borders.setInsideH(border);
-        borders.setInsideV(border);
-        table.getTblPr().setTblBorders(borders);
-    }
+	/**
+	 * Name used for the OIT scan sheet of a DocInfo object when one sheet is
+	 * saved per class, as in batch generation.
+	 * @return String in the form: lname_fname subject courseNum-section semester year OIT
+	 */
+	public static String generateOITSaveFileName(DocInfo info){
+		String name = generateSaveFileName(info);
+		return name.substring(0, name.length() - ".docx".length()) + " OIT.docx";
+	}
+	
+	//******************* PRIVATE METHODS *******************
+	/**
+	 * Returns the current questions for the subject and course of a class.
+	 */
+	private QuestionSet questionsFor(DocInfo info){
+		return questionBank.getIndex().resolve(info);
+	}
+	
+	/**
+	 * Renders the comment sheet with the given questions and saves it.
+	 */
+	private void saveCommentTemplate(DocInfo info, QuestionSet questions, File wordDoc) throws IOException{
+		byte[] rendered = speculation.getCommentSheet(info, questions);
+		if(rendered != null){
+			System.out.println("Comment sheet was rendered ahead of time.");
+			writeFile(rendered, wordDoc);
+			return;
+		}
+		
+		boolean warm = RendererWarmup.isComplete();
+		long start = System.nanoTime();
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(wordDoc));
+		try{
+			renderer.renderCommentSheet(info, questions, out);
+		}
+		finally{
+			out.close();
+		}
+		RendererWarmup.recordGeneration(start, warm);
+	}
+	
+	/**
+	 * Saves a document that was rendered ahead of time.
+	 */
+	private static void writeFile(byte[] document, File file) throws IOException{
+		OutputStream out = new FileOutputStream(file);
+		try{
+			out.write(document);
+		}
+		finally{
+			out.close();
+		}
+	}
+	
+	/**
+	 * Read questions for comment sheet from file and store. The generator is
+	 * created on a background thread, so a file that is missing or cannot be
+	 * read is reported on the Event Dispatch Thread.
+	 */
+	private void readQuestionsFromFile(){
+		try {
+			questionBank.reload();
+		} catch (FileNotFoundException e) {
+			showQuestionsError("Unable to open questions for evaluation sheet.");
+			e.printStackTrace();
+		} catch (IOException e) {
+			showQuestionsError("Unable to read questions for evaluation sheet: " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+	private static void showQuestionsError(final String message){
+		SwingUtilities.invokeLater(new Runnable(){
+			public void run(){
+				JOptionPane.showMessageDialog(null, message);
+			}
+		});
+	}
+	/**
+	 * Opens designated file with default program 
+	 * @param file File to be opened
+	 */
+	private void openFile(File file) {      
+		try {
+			desktop.open(file);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
 }